@@ -8,6 +8,7 @@
 package com.fiorano.openesb.amq;
 
 import com.fiorano.openesb.transport.impl.jms.AbstractJMSConnectionProvider;
+import com.fiorano.openesb.transport.impl.jms.TransportConfig;
 import org.apache.activemq.ActiveMQConnectionFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,6 +29,15 @@ public class AMQConnectionProvider extends AbstractJMSConnectionProvider {
         ActiveMQConnectionFactory activeMQConnectionFactory = new ActiveMQConnectionFactory();
         activeMQConnectionFactory.setClientID(name);
         activeMQConnectionFactory.buildFromProperties(properties);
+        // the producer window bounds what an asynchronous send connection leaves unacknowledged
+        String producerWindowSize = TransportConfig.getInstance().getValue("PRODUCER_WINDOW_SIZE", null);
+        if (producerWindowSize != null) {
+            activeMQConnectionFactory.setProducerWindowSize(Integer.valueOf(producerWindowSize));
+        }
         return activeMQConnectionFactory;
     }
+
+    static boolean isAsyncSend() {
+        return Boolean.valueOf(TransportConfig.getInstance().getValue("ASYNC_SEND", "false"));
+    }
 }
@@ -10,13 +10,24 @@ import com.fiorano.openesb.transport.ConnectionProvider;
 import com.fiorano.openesb.transport.PortConfiguration;
 import com.fiorano.openesb.transport.TransportService;
 import com.fiorano.openesb.transport.impl.jms.AbstractJMSTransportService;
+import com.fiorano.openesb.transport.impl.jms.JMSConsumerConfiguration;
 import com.fiorano.openesb.transport.impl.jms.JMSMessage;
 import com.fiorano.openesb.transport.impl.jms.JMSPort;
 import com.fiorano.openesb.transport.impl.jms.JMSPortConfiguration;
+import org.apache.activemq.ActiveMQConnection;
+import org.apache.activemq.ActiveMQMessageConsumer;
 import org.apache.activemq.broker.jmx.BrokerViewMBean;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ActiveMQTopic;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.jms.Connection;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.MessageConsumer;
+import javax.jms.Queue;
+import javax.jms.Topic;
 import javax.management.*;
 import javax.management.remote.JMXConnector;
 import javax.management.remote.JMXConnectorFactory;
@@ -60,8 +71,70 @@ public class AMQTransportService extends AbstractJMSTransportService implements
         return new AMQConnectionProvider(properties);
     }
 
+    @Override
+    protected boolean isProviderAsyncSend() {
+        return AMQConnectionProvider.isAsyncSend();
+    }
+
+    /**
+     * Only the connection of send(message, listener) sends without waiting, route connections are left
+     * synchronous as a route acknowledges or spools a message based on its send returning.
+     */
+    @Override
+    protected void configureAsyncSend(Connection connection) throws JMSException {
+        ((ActiveMQConnection) connection).setUseAsyncSend(true);
+    }
+
+    /**
+     * ActiveMQ takes prefetch, dispatch and pending message limits per consumer as options of the destination
+     * it is created on, e.g. queue?consumer.prefetchSize=1
+     */
+    @Override
+    protected Destination getConsumerDestination(JMSPort port, JMSConsumerConfiguration configuration) throws JMSException {
+        StringBuilder options = new StringBuilder();
+        if (configuration.getPrefetchSize() >= 0) {
+            appendOption(options, "consumer.prefetchSize", configuration.getPrefetchSize());
+        }
+        if (configuration.getDispatchAsync() != null) {
+            appendOption(options, "consumer.dispatchAsync", configuration.getDispatchAsync());
+        }
+        if (configuration.getMaxPendingMessages() >= 0) {
+            appendOption(options, "consumer.maximumPendingMessageLimit", configuration.getMaxPendingMessages());
+        }
+        Destination destination = port.getDestination();
+        if (options.length() == 0) {
+            return destination;
+        }
+        if (destination instanceof Queue) {
+            return new ActiveMQQueue(((Queue) destination).getQueueName() + "?" + options);
+        }
+        if (destination instanceof Topic) {
+            return new ActiveMQTopic(((Topic) destination).getTopicName() + "?" + options);
+        }
+        return destination;
+    }
+
+    private static void appendOption(StringBuilder options, String name, Object value) {
+        if (options.length() > 0) {
+            options.append('&');
+        }
+        options.append(name).append('=').append(value);
+    }
+
+    /**
+     * Optimized acknowledgement is a setting of the ActiveMQ consumer rather than a destination option.
+     */
+    @Override
+    protected void configureConsumer(MessageConsumer consumer, JMSConsumerConfiguration configuration) throws JMSException {
+        if (configuration.getOptimizeAcknowledge() != null && !configuration.isTransacted()
+                && consumer instanceof ActiveMQMessageConsumer) {
+            ((ActiveMQMessageConsumer) consumer).setOptimizeAcknowledge(configuration.getOptimizeAcknowledge());
+        }
+    }
+
     public void disablePort(PortConfiguration portConfiguration) throws Exception {
         JMSPortConfiguration jmsPortConfiguration = (JMSPortConfiguration) portConfiguration;
+        removePort(portConfiguration);
         if (jmsPortConfiguration.getPortType() == JMSPortConfiguration.PortType.QUEUE) {
             adminMBean.removeQueue(jmsPortConfiguration.getName());
         } else {
@@ -69,7 +142,9 @@ public class AMQTransportService extends AbstractJMSTransportService implements
         }
     }
 
+    @Override
     public void stop() {
+        super.stop();
         try {
             if (adminMBean != null) {
                 try {
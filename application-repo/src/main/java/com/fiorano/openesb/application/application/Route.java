@@ -589,6 +589,321 @@ public class Route extends InflatableDMIObject implements NamedObject{
         this.ignoreAbsenceOfTransformation = ignoreAbsenceOfTransformation;
     }
 
+    /*-------------------------------------------------[ Concurrency ]---------------------------------------------------*/
+    /**
+     * Attribute concurrency
+     */
+    public static final String ATTR_CONCURRENCY = "concurrency";
+
+    private int concurrency = 1;
+
+    /**
+     * Returns the number of messages this route processes in parallel
+     * @return int - number of concurrent consumers of the route
+     */
+    public int getConcurrency(){
+        return concurrency;
+    }
+
+    /**
+     * Sets the number of messages this route processes in parallel. Messages from a topic, or ordered by a key
+     * other than JMSXGroupID, are queued by the route and acknowledged before they are processed, up to 256 for
+     * each concurrent consumer, and those still queued are lost if the server stops
+     * @param concurrency number of concurrent consumers, 1 processes messages strictly in order
+     */
+    public void setConcurrency(int concurrency){
+        this.concurrency = concurrency;
+    }
+
+    /*-------------------------------------------------[ Ordering Key ]---------------------------------------------------*/
+    /**
+     * Attribute orderingKey
+     */
+    public static final String ATTR_ORDERING_KEY = "orderingKey";
+
+    private String orderingKey;
+
+    /**
+     * Returns the message property whose value identifies messages that must be processed in order
+     * when the route is concurrent
+     * @return String - JMS property name, null if the order of messages need not be kept
+     */
+    public String getOrderingKey(){
+        return orderingKey;
+    }
+
+    /**
+     * Sets the message property whose value identifies messages that must be processed in order
+     * when the route is concurrent, for example JMSXGroupID
+     * @param orderingKey JMS property name
+     */
+    public void setOrderingKey(String orderingKey){
+        this.orderingKey = orderingKey;
+    }
+
+    /*-------------------------------------------------[ Transacted ]---------------------------------------------------*/
+    /**
+     * Attribute transacted
+     */
+    public static final String ATTR_TRANSACTED = "transacted";
+
+    /**
+     * Attribute batchSize
+     */
+    public static final String ATTR_BATCH_SIZE = "batchSize";
+
+    /**
+     * Attribute batchTimeout
+     */
+    public static final String ATTR_BATCH_TIMEOUT = "batchTimeout";
+
+    private boolean transacted = false;
+
+    private int batchSize = 100;
+
+    private long batchTimeout = 100;
+
+    /**
+     * Returns true if this route forwards messages in local transactions, false otherwise
+     * @return boolean - true if the route is transacted
+     */
+    public boolean isTransacted(){
+        return transacted;
+    }
+
+    /**
+     * Sets a boolean specifying whether this route forwards messages in local transactions
+     * @param transacted true if messages are to be consumed and forwarded in batches committed together
+     */
+    public void setTransacted(boolean transacted){
+        this.transacted = transacted;
+    }
+
+    /**
+     * Returns the maximum number of messages committed in one transaction
+     * @return int - batch size
+     */
+    public int getBatchSize(){
+        return batchSize;
+    }
+
+    /**
+     * Sets the maximum number of messages committed in one transaction
+     * @param batchSize batch size
+     */
+    public void setBatchSize(int batchSize){
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Returns the time in milliseconds after which a partially filled batch is committed
+     * @return long - batch timeout
+     */
+    public long getBatchTimeout(){
+        return batchTimeout;
+    }
+
+    /**
+     * Sets the time in milliseconds after which a partially filled batch is committed
+     * @param batchTimeout batch timeout
+     */
+    public void setBatchTimeout(long batchTimeout){
+        this.batchTimeout = batchTimeout;
+    }
+
+    /*-------------------------------------------------[ Consumer Tuning ]---------------------------------------------------*/
+    /**
+     * Attribute prefetchSize
+     */
+    public static final String ATTR_PREFETCH_SIZE = "prefetchSize";
+
+    /**
+     * Attribute dispatchAsync
+     */
+    public static final String ATTR_DISPATCH_ASYNC = "dispatchAsync";
+
+    /**
+     * Attribute optimizeAcknowledge
+     */
+    public static final String ATTR_OPTIMIZE_ACKNOWLEDGE = "optimizeAcknowledge";
+
+    /**
+     * Attribute maxPendingMessages
+     */
+    public static final String ATTR_MAX_PENDING_MESSAGES = "maxPendingMessages";
+
+    private int prefetchSize = -1;
+
+    private Boolean dispatchAsync;
+
+    private Boolean optimizeAcknowledge;
+
+    private int maxPendingMessages = -1;
+
+    /**
+     * Returns the number of messages the broker pushes to a consumer of this route ahead of processing,
+     * -1 if the transport default applies
+     * @return int - prefetch size
+     */
+    public int getPrefetchSize(){
+        return prefetchSize;
+    }
+
+    /**
+     * Sets the number of messages the broker pushes to a consumer of this route ahead of processing
+     * @param prefetchSize prefetch size, -1 for the transport default
+     */
+    public void setPrefetchSize(int prefetchSize){
+        this.prefetchSize = prefetchSize;
+    }
+
+    /**
+     * Returns whether the broker dispatches messages to this route asynchronously, null if the transport default applies
+     * @return Boolean - dispatch async
+     */
+    public Boolean getDispatchAsync(){
+        return dispatchAsync;
+    }
+
+    /**
+     * Sets whether the broker dispatches messages to this route asynchronously
+     * @param dispatchAsync dispatch async, null for the transport default
+     */
+    public void setDispatchAsync(Boolean dispatchAsync){
+        this.dispatchAsync = dispatchAsync;
+    }
+
+    /**
+     * Returns whether consumers of this route acknowledge messages in batches, null if the transport default applies
+     * @return Boolean - optimize acknowledge
+     */
+    public Boolean getOptimizeAcknowledge(){
+        return optimizeAcknowledge;
+    }
+
+    /**
+     * Sets whether consumers of this route acknowledge messages in batches
+     * @param optimizeAcknowledge optimize acknowledge, null for the transport default
+     */
+    public void setOptimizeAcknowledge(Boolean optimizeAcknowledge){
+        this.optimizeAcknowledge = optimizeAcknowledge;
+    }
+
+    /**
+     * Returns the number of messages kept for a slow consumer of this route on a topic, -1 if the transport default applies
+     * @return int - maximum pending messages
+     */
+    public int getMaxPendingMessages(){
+        return maxPendingMessages;
+    }
+
+    /**
+     * Sets the number of messages kept for a slow consumer of this route on a topic
+     * @param maxPendingMessages maximum pending messages, -1 for the transport default
+     */
+    public void setMaxPendingMessages(int maxPendingMessages){
+        this.maxPendingMessages = maxPendingMessages;
+    }
+
+    /*-------------------------------------------------[ Error Handling ]---------------------------------------------------*/
+    /**
+     * Attribute errorRetryCount
+     */
+    public static final String ATTR_ERROR_RETRY_COUNT = "errorRetryCount";
+
+    /**
+     * Attribute errorRetryInterval
+     */
+    public static final String ATTR_ERROR_RETRY_INTERVAL = "errorRetryInterval";
+
+    /**
+     * Attribute errorDestination
+     */
+    public static final String ATTR_ERROR_DESTINATION = "errorDestination";
+
+    private int errorRetryCount = 0;
+
+    private long errorRetryInterval = 1000;
+
+    private String errorDestination;
+
+    /**
+     * Returns the number of times an operation of this route that failed on a message is tried again. Only
+     * selectors and transformations without a jms xsl are tried again, as running them twice does no harm
+     * @return int - error retry count
+     */
+    public int getErrorRetryCount(){
+        return errorRetryCount;
+    }
+
+    /**
+     * Sets the number of times an operation of this route that failed on a message is tried again. Only
+     * selectors and transformations without a jms xsl are tried again, as running them twice does no harm
+     * @param errorRetryCount error retry count
+     */
+    public void setErrorRetryCount(int errorRetryCount){
+        this.errorRetryCount = errorRetryCount;
+    }
+
+    /**
+     * Returns the time in milliseconds before the first retry, doubled for each further retry
+     * @return long - error retry interval
+     */
+    public long getErrorRetryInterval(){
+        return errorRetryInterval;
+    }
+
+    /**
+     * Sets the time in milliseconds before the first retry, doubled for each further retry
+     * @param errorRetryInterval error retry interval
+     */
+    public void setErrorRetryInterval(long errorRetryInterval){
+        this.errorRetryInterval = errorRetryInterval;
+    }
+
+    /**
+     * Returns the queue messages go to when an operation of this route still fails after the retries,
+     * null if such messages are discarded, or forwarded untransformed when a transformation failed
+     * @return String - error destination
+     */
+    public String getErrorDestination(){
+        return errorDestination;
+    }
+
+    /**
+     * Sets the queue messages go to when an operation of this route still fails after the retries
+     * @param errorDestination error destination, null to discard such messages
+     */
+    public void setErrorDestination(String errorDestination){
+        this.errorDestination = errorDestination;
+    }
+
+    /*-------------------------------------------------[ Sender Selector Pushdown ]---------------------------------------------------*/
+    /**
+     * Attribute senderSelectorPushdown
+     */
+    public static final String ATTR_SENDER_SELECTOR_PUSHDOWN = "senderSelectorPushdown";
+
+    private boolean senderSelectorPushdown;
+
+    /**
+     * Returns whether the sender selector of this route is also evaluated by the broker
+     * @return boolean - true if the broker evaluates the sender selector
+     */
+    public boolean isSenderSelectorPushdown(){
+        return senderSelectorPushdown;
+    }
+
+    /**
+     * Sets whether the sender selector of this route is also evaluated by the broker, on the source contexts
+     * property routes write next to the carry forward context. Only to be set when every producer of the source
+     * keeps that property in step with the carry forward context, the broker drops messages on which it is stale
+     * @param senderSelectorPushdown true to let the broker evaluate the sender selector
+     */
+    public void setSenderSelectorPushdown(boolean senderSelectorPushdown){
+        this.senderSelectorPushdown = senderSelectorPushdown;
+    }
+
     /*-------------------------------------------------[ To XML ]---------------------------------------------------*/
 
     protected void toJXMLString(XMLStreamWriter writer) throws XMLStreamException, FioranoException{
@@ -596,7 +911,9 @@ public class Route extends InflatableDMIObject implements NamedObject{
     }
 
     /*
-     * <route name="string">
+     * <route name="string" concurrency="int"? orderingKey="string"? transacted="boolean"? batchSize="int"? batchTimeout="long"?
+     *        prefetchSize="int"? dispatchAsync="boolean"? optimizeAcknowledge="boolean"? maxPendingMessages="int"?
+     *        errorRetryCount="int"? errorRetryInterval="long"? errorDestination="string"? senderSelectorPushdown="boolean"?>
      *      <source inst="string" port="string"/>
      *      <target inst="string" port="string"/>
      *      <short-description>string</short-description>?
@@ -616,6 +933,31 @@ public class Route extends InflatableDMIObject implements NamedObject{
             if(ignoreAbsenceOfTransformation){//write only if true
                 writer.writeAttribute(ATTR_IGNORE_ABSENCE_TRANSFORMATION, String.valueOf(ignoreAbsenceOfTransformation));
             }
+            if(concurrency > 1)
+                writer.writeAttribute(ATTR_CONCURRENCY, String.valueOf(concurrency));
+            if(orderingKey != null)
+                writer.writeAttribute(ATTR_ORDERING_KEY, orderingKey);
+            if(transacted){
+                writer.writeAttribute(ATTR_TRANSACTED, String.valueOf(true));
+                writer.writeAttribute(ATTR_BATCH_SIZE, String.valueOf(batchSize));
+                writer.writeAttribute(ATTR_BATCH_TIMEOUT, String.valueOf(batchTimeout));
+            }
+            if(prefetchSize >= 0)
+                writer.writeAttribute(ATTR_PREFETCH_SIZE, String.valueOf(prefetchSize));
+            if(dispatchAsync != null)
+                writer.writeAttribute(ATTR_DISPATCH_ASYNC, String.valueOf(dispatchAsync));
+            if(optimizeAcknowledge != null)
+                writer.writeAttribute(ATTR_OPTIMIZE_ACKNOWLEDGE, String.valueOf(optimizeAcknowledge));
+            if(maxPendingMessages >= 0)
+                writer.writeAttribute(ATTR_MAX_PENDING_MESSAGES, String.valueOf(maxPendingMessages));
+            if(errorRetryCount > 0) {
+                writer.writeAttribute(ATTR_ERROR_RETRY_COUNT, String.valueOf(errorRetryCount));
+                writer.writeAttribute(ATTR_ERROR_RETRY_INTERVAL, String.valueOf(errorRetryInterval));
+            }
+            if(errorDestination != null)
+                writer.writeAttribute(ATTR_ERROR_DESTINATION, errorDestination);
+            if(senderSelectorPushdown)
+                writer.writeAttribute(ATTR_SENDER_SELECTOR_PUSHDOWN, String.valueOf(true));
             writer.writeStartElement(ELEM_SOURCE);
             {
                 writer.writeAttribute(ATTR_SOURCE_SERVICE_INSTANCE, sourceServiceInstance);
@@ -695,6 +1037,21 @@ public class Route extends InflatableDMIObject implements NamedObject{
         if(cursor.markCursor(ELEM_ROUTE)){
             name = cursor.getAttributeValue(null,ATTR_NAME);
             ignoreAbsenceOfTransformation = getBooleanAttribute(cursor, ATTR_IGNORE_ABSENCE_TRANSFORMATION,  false);
+            concurrency = getIntegerAttribute(cursor, ATTR_CONCURRENCY, 1);
+            orderingKey = cursor.getAttributeValue(null, ATTR_ORDERING_KEY);
+            transacted = getBooleanAttribute(cursor, ATTR_TRANSACTED, false);
+            batchSize = getIntegerAttribute(cursor, ATTR_BATCH_SIZE, 100);
+            batchTimeout = getLongAttribute(cursor, ATTR_BATCH_TIMEOUT, 100);
+            prefetchSize = getIntegerAttribute(cursor, ATTR_PREFETCH_SIZE, -1);
+            String dispatchAsyncValue = cursor.getAttributeValue(null, ATTR_DISPATCH_ASYNC);
+            dispatchAsync = dispatchAsyncValue != null ? Boolean.valueOf(dispatchAsyncValue) : null;
+            String optimizeAcknowledgeValue = cursor.getAttributeValue(null, ATTR_OPTIMIZE_ACKNOWLEDGE);
+            optimizeAcknowledge = optimizeAcknowledgeValue != null ? Boolean.valueOf(optimizeAcknowledgeValue) : null;
+            maxPendingMessages = getIntegerAttribute(cursor, ATTR_MAX_PENDING_MESSAGES, -1);
+            errorRetryCount = getIntegerAttribute(cursor, ATTR_ERROR_RETRY_COUNT, 0);
+            errorRetryInterval = getLongAttribute(cursor, ATTR_ERROR_RETRY_INTERVAL, 1000);
+            errorDestination = cursor.getAttributeValue(null, ATTR_ERROR_DESTINATION);
+            senderSelectorPushdown = getBooleanAttribute(cursor, ATTR_SENDER_SELECTOR_PUSHDOWN, false);
 
             if(DmiObject.INVALID_INPUT_CHARS_REGEX.matcher(name).find()){
                 StringBuffer nameBuff = new StringBuffer(name);
@@ -872,6 +1229,20 @@ public class Route extends InflatableDMIObject implements NamedObject{
         targetServiceInstance = null;
         messageTransformation = null;
 
+        concurrency = 1;
+        orderingKey = null;
+        transacted = false;
+        batchSize = 100;
+        batchTimeout = 100;
+        prefetchSize = -1;
+        dispatchAsync = null;
+        optimizeAcknowledge = null;
+        maxPendingMessages = -1;
+        errorRetryCount = 0;
+        errorRetryInterval = 1000;
+        errorDestination = null;
+        senderSelectorPushdown = false;
+
         selectors.clear();
     }
 
@@ -63,6 +63,8 @@ public class ApplicationController {
     private CCPEventManager ccpEventManager;
     private ApplicationLogManager applicationLogManager;
     private ChainLaunchHelper chainLaunchHelper;
+    // an hour of samples at the default push interval of 10 seconds
+    private final ComponentStatisticsStore componentStatistics = new ComponentStatisticsStore(360, 10000);
 
     public ApplicationController(ApplicationRepository applicationRepository, BundleContext context) throws Exception {
         logger.info("Initializing Application Controller.");
@@ -80,6 +82,7 @@ public class ApplicationController {
         namedConfigRepository = context.getService(context.getServiceReference(NamedConfigRepository.class));
         microServiceRepoManager = context.getService(context.getServiceReference(MicroServiceRepoManager.class));
         registerConfigRequestListener(ccpEventManager);
+        registerStatisticsListener(ccpEventManager);
         transport = context.getService(context.getServiceReference(TransportService.class));
         securityManager = context.getService(context.getServiceReference(SecurityManager.class));
         chainLaunchHelper = new ChainLaunchHelper(this);
@@ -169,6 +172,51 @@ public class ApplicationController {
         }, CCPEventType.DATA_REQUEST);
     }
 
+    private void registerStatisticsListener(CCPEventManager ccpEventManager) throws Exception {
+        ccpEventManager.registerListener(new IEventListener() {
+            @Override
+            public void onEvent(ComponentCCPEvent event) throws Exception {
+                ControlEvent controlEvent = event.getControlEvent();
+                if (controlEvent instanceof DataEvent) {
+                    Data data = ((DataEvent) controlEvent).getData().get(DataRequestEvent.DataIdentifier.COMPONENT_STATISTICS);
+                    if (data instanceof ComponentStatistics) {
+                        // the version is stored as the float version formats it, which readers look it up with
+                        String version = String.valueOf(Float.parseFloat(ApplicationUtil.getAppVersion(event)));
+                        componentStatistics.add(ApplicationUtil.getAppName(event), version,
+                                ApplicationUtil.getInstanceName(event), (ComponentStatistics) data);
+                    }
+                }
+            }
+
+            @Override
+            public String getId() {
+                return "Components' Statistics Listener";
+            }
+        }, CCPEventType.DATA);
+    }
+
+    /**
+     * @return the last statistics the service pushed, null if it does not push statistics or has not pushed for
+     * twice its push interval, {@link #getComponentStats} then asks the service
+     */
+    public ComponentStatistics getComponentStatistics(String appGuid, float version, String serviceName) {
+        return componentStatistics.getLatest(appGuid, String.valueOf(version), serviceName);
+    }
+
+    /**
+     * @return the statistics the service pushed recently, oldest first
+     */
+    public List<ComponentStatistics> getComponentStatisticsSeries(String appGuid, float version, String serviceName) {
+        return componentStatistics.getSeries(appGuid, String.valueOf(version), serviceName);
+    }
+
+    /**
+     * @return the last statistics pushed by each service of the application that still pushes, by service name
+     */
+    public Map<String, ComponentStatistics> getComponentStatistics(String appGuid, float version) {
+        return componentStatistics.getLatest(appGuid, String.valueOf(version));
+    }
+
     public String getComponentStats(String appGuid, float version, String serviceName, String handleId) throws FioranoException {
         ApplicationHandle applicationHandle = getApplicationHandle(appGuid, version, handleId);
         if(applicationHandle!=null){
@@ -461,6 +509,7 @@ public class ApplicationController {
                 ApplicationHandle applicationHandle = getApplicationHandle(currentGUID, currentVersion, handleID);
                 applicationHandle.stopApplication();
                 removeApplicationHandleFromMap(currentGUID, String.valueOf(currentVersion));
+                componentStatistics.remove(currentGUID, String.valueOf(currentVersion));
                 ApplicationEventRaiser.generateApplicationEvent(ApplicationEvent.ApplicationEventType.APPLICATION_STOPPED, Event.EventCategory.INFORMATION,
                         currentGUID, applicationHandle.getApplication().getDisplayName(), String.valueOf(currentVersion), "Application stopped Successfully");
             }
@@ -9,6 +9,7 @@ package com.fiorano.openesb.applicationcontroller;
 import com.fiorano.openesb.application.BreakpointMetaData;
 import com.fiorano.openesb.application.ServerConfig;
 import com.fiorano.openesb.application.application.*;
+import com.fiorano.openesb.application.service.Execution;
 import com.fiorano.openesb.application.service.RuntimeArgument;
 import com.fiorano.openesb.events.ApplicationEvent;
 import com.fiorano.openesb.events.Event;
@@ -27,6 +28,8 @@ import com.fiorano.openesb.microservice.launch.MicroServiceRuntimeHandle;
 import com.fiorano.openesb.microservice.launch.impl.MicroServiceLauncher;
 import com.fiorano.openesb.route.*;
 import com.fiorano.openesb.route.impl.*;
+import com.fiorano.openesb.route.metrics.RouteMetricsRegistry;
+import com.fiorano.openesb.route.trace.MessageTracer;
 import com.fiorano.openesb.schemarepo.SchemaRepoConstants;
 import com.fiorano.openesb.transport.TransportService;
 import com.fiorano.openesb.transport.impl.jms.JMSPortConfiguration;
@@ -221,6 +224,19 @@ public class ApplicationHandle {
             }
 
             JMSRouteConfiguration routeConfiguration = new JMSRouteConfiguration(sourceConfiguration, destinationConfiguration, route.getJMSSelector());
+            routeConfiguration.setConcurrency(route.getConcurrency());
+            routeConfiguration.setOrderingKey(route.getOrderingKey());
+            routeConfiguration.setTransacted(route.isTransacted());
+            routeConfiguration.setBatchSize(route.getBatchSize());
+            routeConfiguration.setBatchTimeout(route.getBatchTimeout());
+            routeConfiguration.setPrefetchSize(route.getPrefetchSize());
+            routeConfiguration.setDispatchAsync(route.getDispatchAsync());
+            routeConfiguration.setOptimizeAcknowledge(route.getOptimizeAcknowledge());
+            routeConfiguration.setMaxPendingMessages(route.getMaxPendingMessages());
+            routeConfiguration.setErrorRetryCount(route.getErrorRetryCount());
+            routeConfiguration.setErrorRetryInterval(route.getErrorRetryInterval());
+            routeConfiguration.setErrorDestination(route.getErrorDestination());
+            routeConfiguration.setSenderSelectorPushdown(route.isSenderSelectorPushdown());
 
             MessageCreationConfiguration messageCreationConfiguration = new MessageCreationConfiguration();
             messageCreationConfiguration.setTransportService(transport);
@@ -285,6 +301,7 @@ public class ApplicationHandle {
             routeConfiguration.getRouteOperationConfigurations().add(targetCFC);
 
             com.fiorano.openesb.route.Route route1 = routeService.createRoute(route.getName(), routeConfiguration);
+            RouteMetricsRegistry.register(appGUID, String.valueOf(version), route1.getMetrics());
             route1.start();
             routeMap.put(route.getName(), route1);
         }
@@ -372,6 +389,7 @@ public class ApplicationHandle {
         stopAllMicroServices();
         stopAllRoutes();
         disableAllPorts();
+        MessageTracer.removeTrace(appGUID, String.valueOf(version));
     }
 
     public void stopAllRoutes() {
@@ -554,6 +572,7 @@ public class ApplicationHandle {
         }
 
         com.fiorano.openesb.route.Route routeToC = routeService.createRoute(bpSourceDestName, routeToCConfiguration);
+        RouteMetricsRegistry.register(appGUID, String.valueOf(version), routeToC.getMetrics());
         routeToC.start();
         breakPointRoutes.put(bpSourceDestName, routeToC);
         //create route from D to inport and start
@@ -611,6 +630,7 @@ public class ApplicationHandle {
         targetCFC.setRouteOperationType(RouteOperationType.TGT_CARRY_FORWARD_CONTEXT);
         routeFromDConfiguration.getRouteOperationConfigurations().add(targetCFC);
         com.fiorano.openesb.route.Route routeFromD = routeService.createRoute(bpTargetdDestName, routeFromDConfiguration);
+        RouteMetricsRegistry.register(appGUID, String.valueOf(version), routeFromD.getMetrics());
         routeFromD.start();
         breakPointRoutes.put(bpTargetdDestName, routeFromD);
         //stop original route
@@ -632,18 +652,13 @@ public class ApplicationHandle {
         //remove breakpoint routes C and D
         String bpSourceDestName = getBPSourceDestName(routeName);
         String bpTargetdDestName = getBPTargetDestinationName(routeName);
-        Route routeToC = breakPointRoutes.remove(bpSourceDestName);
-        if(routeToC!=null){
-            routeToC.stop();
-        }
+        // delete also drops the metrics of the route
+        stopRoute(breakPointRoutes.remove(bpSourceDestName));
         JMSPortConfiguration portConfiguration = new JMSPortConfiguration();
         portConfiguration.setPortType(JMSPortConfiguration.PortType.QUEUE);
         portConfiguration.setName(bpSourceDestName);
         transport.disablePort(portConfiguration);
-        Route routeFromD = breakPointRoutes.remove(bpTargetdDestName);
-        if(routeFromD!=null){
-            routeFromD.stop();
-        }
+        stopRoute(breakPointRoutes.remove(bpTargetdDestName));
         portConfiguration.setName(bpTargetdDestName);
         transport.disablePort(portConfiguration);
         breakpoints.remove(routeName);
@@ -678,8 +693,14 @@ public class ApplicationHandle {
         RuntimeArgument java_home = instance.getRuntimeArgument("JAVA_HOME");
         String instanceValue = java_home == null ? null : (String) java_home.getValue();
         String value =  instanceValue != null ? instanceValue : transportConfig.getValue(LaunchConstants.USER_DEFINED_JAVA_HOME);
+        String providerURL = transportConfig.getProviderURL();
+        // a service in the server JVM can reach a broker embedded in it in process, e.g. vm://amq-broker?create=false
+        String inMemoryProviderURL = transportConfig.getValue("IN_MEMORY_PROVIDER_URL", null);
+        if (instance.getLaunchType() == Execution.LAUNCH_TYPE_IN_MEMORY && inMemoryProviderURL != null) {
+            providerURL = inMemoryProviderURL;
+        }
         JavaLaunchConfiguration javaLaunchConfiguration = new JavaLaunchConfiguration(instance.isDebugMode(),
-                instance.getDebugPort(), transportConfig.getProviderURL(), System.getProperty("user.dir"), MicroServiceRepoManager.getInstance().getRepositoryLocation(), ServerConfig.getConfig().getRepositoryPath() + File.separator + SchemaRepoConstants.SCHEMA_REPOSITORY_NAME,
+                instance.getDebugPort(), providerURL, System.getProperty("user.dir"), MicroServiceRepoManager.getInstance().getRepositoryLocation(), ServerConfig.getConfig().getRepositoryPath() + File.separator + SchemaRepoConstants.SCHEMA_REPOSITORY_NAME,
                 ServerConfig.getConfig().getJettyUrl(), ServerConfig.getConfig().getJettySSLUrl(),
                 Boolean.valueOf(transportConfig.getValue("WatchForControlEvents")), transportConfig.getValue("MS_JAVA_HOME"),
                 value, transportConfig.getValue("java.naming.factory.initial"));
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) Fiorano Software and affiliates. All rights reserved. http://www.fiorano.com
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.fiorano.openesb.applicationcontroller;
+
+import com.fiorano.openesb.microservice.ccp.event.common.data.ComponentStatistics;
+import com.fiorano.openesb.utils.Constants;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps the statistics components push, the last samples of each service in a ring buffer, so that they are read
+ * locally instead of being requested from the component on every call. The last sample of a service is current
+ * until twice its push interval has passed without a new one, the interval being the time between the last two
+ * samples received; a service that stopped pushing is then asked again.
+ */
+public class ComponentStatisticsStore {
+    private final int capacity;
+    private final long defaultInterval;
+    private final ConcurrentMap<String, Series> series = new ConcurrentHashMap<>();
+
+    /**
+     * @param defaultInterval push interval in milliseconds assumed until a service has pushed twice
+     */
+    public ComponentStatisticsStore(int capacity, long defaultInterval) {
+        this.capacity = Math.max(1, capacity);
+        this.defaultInterval = Math.max(1, defaultInterval);
+    }
+
+    /**
+     * Adds a sample pushed by a component. A delta that does not follow the last sample of the service is dropped,
+     * the series goes on with the next full snapshot.
+     */
+    public void add(String appGuid, String version, String serviceName, ComponentStatistics statistics) {
+        String key = getKey(appGuid, version, serviceName);
+        Series serviceSeries = series.get(key);
+        if (serviceSeries == null) {
+            Series created = new Series(capacity, defaultInterval);
+            serviceSeries = series.putIfAbsent(key, created);
+            if (serviceSeries == null) {
+                serviceSeries = created;
+            }
+        }
+        serviceSeries.add(statistics);
+    }
+
+    /**
+     * @return the last sample of the service, null if it has not pushed any or the last one is no longer current
+     */
+    public ComponentStatistics getLatest(String appGuid, String version, String serviceName) {
+        Series serviceSeries = series.get(getKey(appGuid, version, serviceName));
+        return serviceSeries != null ? serviceSeries.getCurrent(System.currentTimeMillis()) : null;
+    }
+
+    /**
+     * @return the samples of the service kept, oldest first
+     */
+    public List<ComponentStatistics> getSeries(String appGuid, String version, String serviceName) {
+        Series serviceSeries = series.get(getKey(appGuid, version, serviceName));
+        return serviceSeries != null ? serviceSeries.getSamples() : new ArrayList<ComponentStatistics>();
+    }
+
+    /**
+     * @return the last sample of each service of the application whose last sample is current, by service name
+     */
+    public Map<String, ComponentStatistics> getLatest(String appGuid, String version) {
+        String prefix = getKey(appGuid, version, "");
+        long now = System.currentTimeMillis();
+        Map<String, ComponentStatistics> latest = new HashMap<>();
+        for (Map.Entry<String, Series> entry : series.entrySet()) {
+            if (entry.getKey().startsWith(prefix)) {
+                ComponentStatistics statistics = entry.getValue().getCurrent(now);
+                if (statistics != null) {
+                    latest.put(entry.getKey().substring(prefix.length()), statistics);
+                }
+            }
+        }
+        return latest;
+    }
+
+    public void remove(String appGuid, String version) {
+        String prefix = getKey(appGuid, version, "");
+        for (Iterator<String> keys = series.keySet().iterator(); keys.hasNext(); ) {
+            if (keys.next().startsWith(prefix)) {
+                keys.remove();
+            }
+        }
+    }
+
+    private static String getKey(String appGuid, String version, String serviceName) {
+        return appGuid + Constants.NAME_DELIMITER + version + Constants.NAME_DELIMITER + serviceName;
+    }
+
+    private static class Series {
+        private final ComponentStatistics[] samples;
+        private int next;
+        private int size;
+        // times on this server, the clock of the component may differ
+        private long lastReceived;
+        private long interval;
+
+        private Series(int capacity, long defaultInterval) {
+            this.samples = new ComponentStatistics[capacity];
+            this.interval = defaultInterval;
+        }
+
+        private synchronized void add(ComponentStatistics statistics) {
+            ComponentStatistics resolved = statistics.resolve(getLatest());
+            if (resolved == null) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            if (size > 0 && now > lastReceived) {
+                interval = now - lastReceived;
+            }
+            lastReceived = now;
+            samples[next] = resolved;
+            next = (next + 1) % samples.length;
+            size = Math.min(size + 1, samples.length);
+        }
+
+        private synchronized ComponentStatistics getCurrent(long now) {
+            return now - lastReceived <= 2 * interval ? getLatest() : null;
+        }
+
+        private synchronized ComponentStatistics getLatest() {
+            return size > 0 ? samples[(next - 1 + samples.length) % samples.length] : null;
+        }
+
+        private synchronized List<ComponentStatistics> getSamples() {
+            List<ComponentStatistics> list = new ArrayList<>(size);
+            for (int i = size; i > 0; i--) {
+                list.add(samples[(next - i + samples.length) % samples.length]);
+            }
+            return list;
+        }
+    }
+}
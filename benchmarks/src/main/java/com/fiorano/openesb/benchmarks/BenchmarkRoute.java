@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) Fiorano Software and affiliates. All rights reserved. http://www.fiorano.com
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.fiorano.openesb.benchmarks;
+
+import com.fiorano.openesb.route.RouteOperationConfiguration;
+import com.fiorano.openesb.route.RouteOperationHandler;
+import com.fiorano.openesb.route.RouteOperationType;
+import com.fiorano.openesb.route.impl.AbstractRouteImpl;
+import com.fiorano.openesb.route.impl.CarryForwardContextCache;
+import com.fiorano.openesb.transport.PortConfiguration;
+import com.fiorano.openesb.transport.impl.jms.JMSMessage;
+
+import java.util.List;
+
+/**
+ * Route running the handlers of the route pipeline, whose send step keeps the message instead of sending it.
+ */
+public class BenchmarkRoute extends AbstractRouteImpl<JMSMessage> {
+
+    private JMSMessage sent;
+    // the route has no destinations, it only keeps the names it is given
+    private String sourceDestinationName = "benchmark.in";
+    private String targetDestinationName = "benchmark.out";
+
+    public BenchmarkRoute(List<RouteOperationConfiguration> operationConfigurations) throws Exception {
+        super("benchmark", operationConfigurations);
+        setHandler(RouteOperationType.SEND, new RouteOperationHandler<JMSMessage>() {
+            public void handleOperation(JMSMessage message) throws Exception {
+                // the route writes the context back to the message before sending it
+                CarryForwardContextCache.get(message).flush();
+                sent = message;
+            }
+        });
+    }
+
+    /**
+     * @return the message sent by the last handleMessage, null if it was filtered out
+     */
+    public JMSMessage takeSent() {
+        JMSMessage message = sent;
+        sent = null;
+        return message;
+    }
+
+    public void start() {
+    }
+
+    public void stop() {
+    }
+
+    public void delete() {
+    }
+
+    public void changeTargetDestination(PortConfiguration portConfiguration) {
+        targetDestinationName = portConfiguration.getName();
+    }
+
+    public void changeSourceDestination(PortConfiguration portConfiguration) {
+        sourceDestinationName = portConfiguration.getName();
+    }
+
+    public String getSourceDestinationName() {
+        return sourceDestinationName;
+    }
+
+    public String getTargetDestinationName() {
+        return targetDestinationName;
+    }
+}
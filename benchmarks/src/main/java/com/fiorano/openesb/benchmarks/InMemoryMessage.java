@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) Fiorano Software and affiliates. All rights reserved. http://www.fiorano.com
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.fiorano.openesb.benchmarks;
+
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageFormatException;
+import javax.jms.MessageNotWriteableException;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * JMS message held in memory, with the read only rules of a received message so that the route pays the
+ * same copy on write costs as with a broker.
+ */
+public class InMemoryMessage implements Message {
+
+    private final Map<String, Object> properties = new HashMap<>();
+    private boolean propertiesReadOnly;
+    protected boolean bodyReadOnly;
+
+    private String messageId;
+    private long timestamp;
+    private String correlationId;
+    private Destination replyTo;
+    private Destination destination;
+    private int deliveryMode;
+    private boolean redelivered;
+    private String type;
+    private long expiration;
+    private int priority;
+
+    /**
+     * Makes the message read only, as it is when a consumer receives it.
+     */
+    public void markReceived() {
+        propertiesReadOnly = true;
+        bodyReadOnly = true;
+    }
+
+    private void checkPropertiesWritable() throws MessageNotWriteableException {
+        if (propertiesReadOnly) {
+            throw new MessageNotWriteableException("Message properties are read only");
+        }
+    }
+
+    public String getJMSMessageID() {
+        return messageId;
+    }
+
+    public void setJMSMessageID(String id) {
+        this.messageId = id;
+    }
+
+    public long getJMSTimestamp() {
+        return timestamp;
+    }
+
+    public void setJMSTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public byte[] getJMSCorrelationIDAsBytes() {
+        return correlationId != null ? correlationId.getBytes() : null;
+    }
+
+    public void setJMSCorrelationIDAsBytes(byte[] correlationID) {
+        this.correlationId = correlationID != null ? new String(correlationID) : null;
+    }
+
+    public void setJMSCorrelationID(String correlationID) {
+        this.correlationId = correlationID;
+    }
+
+    public String getJMSCorrelationID() {
+        return correlationId;
+    }
+
+    public Destination getJMSReplyTo() {
+        return replyTo;
+    }
+
+    public void setJMSReplyTo(Destination replyTo) {
+        this.replyTo = replyTo;
+    }
+
+    public Destination getJMSDestination() {
+        return destination;
+    }
+
+    public void setJMSDestination(Destination destination) {
+        this.destination = destination;
+    }
+
+    public int getJMSDeliveryMode() {
+        return deliveryMode;
+    }
+
+    public void setJMSDeliveryMode(int deliveryMode) {
+        this.deliveryMode = deliveryMode;
+    }
+
+    public boolean getJMSRedelivered() {
+        return redelivered;
+    }
+
+    public void setJMSRedelivered(boolean redelivered) {
+        this.redelivered = redelivered;
+    }
+
+    public String getJMSType() {
+        return type;
+    }
+
+    public void setJMSType(String type) {
+        this.type = type;
+    }
+
+    public long getJMSExpiration() {
+        return expiration;
+    }
+
+    public void setJMSExpiration(long expiration) {
+        this.expiration = expiration;
+    }
+
+    public int getJMSPriority() {
+        return priority;
+    }
+
+    public void setJMSPriority(int priority) {
+        this.priority = priority;
+    }
+
+    public void clearProperties() {
+        properties.clear();
+        propertiesReadOnly = false;
+    }
+
+    public boolean propertyExists(String name) {
+        return properties.containsKey(name);
+    }
+
+    public boolean getBooleanProperty(String name) throws JMSException {
+        Object value = properties.get(name);
+        return value instanceof Boolean ? (Boolean) value : Boolean.valueOf(toString(name, value));
+    }
+
+    public byte getByteProperty(String name) throws JMSException {
+        Object value = properties.get(name);
+        return value instanceof Byte ? (Byte) value : Byte.valueOf(toString(name, value));
+    }
+
+    public short getShortProperty(String name) throws JMSException {
+        Object value = properties.get(name);
+        return value instanceof Short || value instanceof Byte ? ((Number) value).shortValue() : Short.valueOf(toString(name, value));
+    }
+
+    public int getIntProperty(String name) throws JMSException {
+        Object value = properties.get(name);
+        return value instanceof Integer || value instanceof Short || value instanceof Byte ? ((Number) value).intValue()
+                : Integer.valueOf(toString(name, value));
+    }
+
+    public long getLongProperty(String name) throws JMSException {
+        Object value = properties.get(name);
+        return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte
+                ? ((Number) value).longValue() : Long.valueOf(toString(name, value));
+    }
+
+    public float getFloatProperty(String name) throws JMSException {
+        Object value = properties.get(name);
+        return value instanceof Float ? (Float) value : Float.valueOf(toString(name, value));
+    }
+
+    public double getDoubleProperty(String name) throws JMSException {
+        Object value = properties.get(name);
+        return value instanceof Double || value instanceof Float ? ((Number) value).doubleValue() : Double.valueOf(toString(name, value));
+    }
+
+    public String getStringProperty(String name) {
+        Object value = properties.get(name);
+        return value != null ? value.toString() : null;
+    }
+
+    public Object getObjectProperty(String name) {
+        return properties.get(name);
+    }
+
+    private static String toString(String name, Object value) throws MessageFormatException {
+        if (value == null) {
+            throw new MessageFormatException("Property " + name + " is not set");
+        }
+        if (!(value instanceof String)) {
+            throw new MessageFormatException("Property " + name + " of type " + value.getClass().getName() + " cannot be converted");
+        }
+        return (String) value;
+    }
+
+    public Enumeration getPropertyNames() {
+        return Collections.enumeration(properties.keySet());
+    }
+
+    public void setBooleanProperty(String name, boolean value) throws JMSException {
+        setObjectProperty(name, value);
+    }
+
+    public void setByteProperty(String name, byte value) throws JMSException {
+        setObjectProperty(name, value);
+    }
+
+    public void setShortProperty(String name, short value) throws JMSException {
+        setObjectProperty(name, value);
+    }
+
+    public void setIntProperty(String name, int value) throws JMSException {
+        setObjectProperty(name, value);
+    }
+
+    public void setLongProperty(String name, long value) throws JMSException {
+        setObjectProperty(name, value);
+    }
+
+    public void setFloatProperty(String name, float value) throws JMSException {
+        setObjectProperty(name, value);
+    }
+
+    public void setDoubleProperty(String name, double value) throws JMSException {
+        setObjectProperty(name, value);
+    }
+
+    public void setStringProperty(String name, String value) throws JMSException {
+        setObjectProperty(name, value);
+    }
+
+    public void setObjectProperty(String name, Object value) throws JMSException {
+        checkPropertiesWritable();
+        if (value == null) {
+            properties.remove(name);
+        } else {
+            properties.put(name, value);
+        }
+    }
+
+    public void acknowledge() {
+    }
+
+    public void clearBody() {
+        bodyReadOnly = false;
+    }
+}
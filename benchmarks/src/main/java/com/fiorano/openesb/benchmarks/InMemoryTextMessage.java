@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) Fiorano Software and affiliates. All rights reserved. http://www.fiorano.com
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.fiorano.openesb.benchmarks;
+
+import javax.jms.MessageNotWriteableException;
+import javax.jms.TextMessage;
+
+public class InMemoryTextMessage extends InMemoryMessage implements TextMessage {
+
+    private String text;
+
+    public void setText(String text) throws MessageNotWriteableException {
+        if (bodyReadOnly) {
+            throw new MessageNotWriteableException("Message body is read only");
+        }
+        this.text = text;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    @Override
+    public void clearBody() {
+        super.clearBody();
+        text = null;
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) Fiorano Software and affiliates. All rights reserved. http://www.fiorano.com
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.fiorano.openesb.benchmarks;
+
+import com.fiorano.openesb.transport.ConnectionProvider;
+import com.fiorano.openesb.transport.Consumer;
+import com.fiorano.openesb.transport.ConsumerConfiguration;
+import com.fiorano.openesb.transport.MessageConfiguration;
+import com.fiorano.openesb.transport.MessageListener;
+import com.fiorano.openesb.transport.PortConfiguration;
+import com.fiorano.openesb.transport.Producer;
+import com.fiorano.openesb.transport.ProducerConfiguration;
+import com.fiorano.openesb.transport.SendCompletionListener;
+import com.fiorano.openesb.transport.TransportService;
+import com.fiorano.openesb.transport.impl.jms.JMSMessage;
+import com.fiorano.openesb.transport.impl.jms.JMSPort;
+
+import javax.jms.Queue;
+import javax.jms.Topic;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transport service that keeps its destinations in memory, so that routes can be measured without a broker.
+ * <p>
+ * Every destination behaves as a queue, topics included. A message sent to a destination is handed to the
+ * listener of its consumer on the sending thread, or queued for {@link Consumer#receive(long)} if no listener is
+ * attached. Senders block while {@link #CAPACITY} messages are queued. There are no connections and sessions
+ * are not transacted.
+ */
+public class InMemoryTransportService implements TransportService<JMSPort, JMSMessage> {
+
+    // messages queued on a destination before senders are held back
+    public static final int CAPACITY = 10000;
+
+    private final ConcurrentMap<String, InMemoryDestination> destinations = new ConcurrentHashMap<>();
+
+    public ConnectionProvider getConnectionProvider() {
+        return null;
+    }
+
+    public JMSPort enablePort(PortConfiguration portConfiguration) {
+        InMemoryDestination destination = new InMemoryDestination(portConfiguration.getName());
+        InMemoryDestination existing = destinations.putIfAbsent(destination.name, destination);
+        return new JMSPort(existing != null ? existing : destination);
+    }
+
+    public void disablePort(PortConfiguration portConfiguration) {
+        destinations.remove(portConfiguration.getName());
+    }
+
+    public Consumer<JMSMessage> createConsumer(JMSPort port, ConsumerConfiguration consumerConfiguration, String sessionId) {
+        return new InMemoryConsumer((InMemoryDestination) port.getDestination());
+    }
+
+    public Producer<JMSMessage> createProducer(JMSPort port, ProducerConfiguration producerConfiguration, String sessionId) {
+        return new InMemoryProducer((InMemoryDestination) port.getDestination());
+    }
+
+    public JMSMessage createMessage(MessageConfiguration config) {
+        return new JMSMessage(new InMemoryTextMessage());
+    }
+
+    public void closeSession(String sessionId) {
+    }
+
+    public void commit(String sessionId) {
+    }
+
+    public void rollback(String sessionId) {
+    }
+
+    private static class InMemoryDestination implements Queue, Topic {
+        private final String name;
+        private final BlockingQueue<JMSMessage> messages = new LinkedBlockingQueue<>(CAPACITY);
+        private volatile MessageListener<JMSMessage> listener;
+
+        InMemoryDestination(String name) {
+            this.name = name;
+        }
+
+        void deliver(JMSMessage message) throws Exception {
+            MessageListener<JMSMessage> listener = this.listener;
+            if (listener != null) {
+                listener.messageReceived(message);
+            } else {
+                messages.put(message);
+            }
+        }
+
+        public String getQueueName() {
+            return name;
+        }
+
+        public String getTopicName() {
+            return name;
+        }
+
+        public String toString() {
+            return name;
+        }
+    }
+
+    private static class InMemoryConsumer implements Consumer<JMSMessage> {
+        private final InMemoryDestination destination;
+        private MessageListener<JMSMessage> listener;
+
+        InMemoryConsumer(InMemoryDestination destination) {
+            this.destination = destination;
+        }
+
+        public synchronized void attachMessageListener(MessageListener<JMSMessage> messageListener) throws Exception {
+            listener = messageListener;
+            destination.listener = messageListener;
+            // hand over what was sent before the listener was attached
+            JMSMessage message;
+            while ((message = destination.messages.poll()) != null) {
+                messageListener.messageReceived(message);
+            }
+        }
+
+        public JMSMessage receive(long timeout) throws Exception {
+            return destination.messages.poll(timeout, TimeUnit.MILLISECONDS);
+        }
+
+        public synchronized void close() {
+            if (listener != null && destination.listener == listener) {
+                destination.listener = null;
+            }
+            listener = null;
+        }
+    }
+
+    private static class InMemoryProducer implements Producer<JMSMessage> {
+        private final InMemoryDestination destination;
+
+        InMemoryProducer(InMemoryDestination destination) {
+            this.destination = destination;
+        }
+
+        public void send(JMSMessage message) throws Exception {
+            destination.deliver(message);
+        }
+
+        public void send(JMSMessage message, SendCompletionListener<JMSMessage> listener) {
+            try {
+                destination.deliver(message);
+            } catch (Exception e) {
+                listener.onException(message, e);
+                return;
+            }
+            listener.onCompletion(message);
+        }
+
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,423 @@
+/*
+ * Copyright (c) Fiorano Software and affiliates. All rights reserved. http://www.fiorano.com
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.fiorano.openesb.benchmarks;
+
+import com.fiorano.openesb.amq.AMQTransportService;
+import com.fiorano.openesb.jmsroute.impl.JMSRouteConfiguration;
+import com.fiorano.openesb.jmsroute.impl.JMSRouteServiceImpl;
+import com.fiorano.openesb.route.Route;
+import com.fiorano.openesb.route.RouteOperationType;
+import com.fiorano.openesb.route.impl.MessageCreationConfiguration;
+import com.fiorano.openesb.route.impl.TransformationConfiguration;
+import com.fiorano.openesb.route.impl.XmlSelectorConfiguration;
+import com.fiorano.openesb.transport.Consumer;
+import com.fiorano.openesb.transport.MessageListener;
+import com.fiorano.openesb.transport.Producer;
+import com.fiorano.openesb.transport.impl.jms.JMSConsumerConfiguration;
+import com.fiorano.openesb.transport.impl.jms.JMSMessage;
+import com.fiorano.openesb.transport.impl.jms.JMSMessageConfiguration;
+import com.fiorano.openesb.transport.impl.jms.JMSPort;
+import com.fiorano.openesb.transport.impl.jms.JMSPortConfiguration;
+import com.fiorano.openesb.transport.impl.jms.JMSProducerConfiguration;
+import com.fiorano.openesb.transport.impl.jms.TransportConfig;
+import com.owlike.genson.Genson;
+import org.apache.activemq.broker.BrokerService;
+
+import javax.jms.JMSException;
+import javax.jms.TextMessage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load test of routes on an embedded ActiveMQ broker, reached through the same transport service the server uses.
+ * Each route has a producer feeding its source queue and a consumer on its target queue; the producer stamps every
+ * message with the time it was sent, and the consumer measures the latency from it. A warm up run precedes the
+ * measured run, and the results are written as JSON so that builds can be compared.
+ * <p>
+ * Options are given as name=value arguments:
+ * <pre>
+ * routes=4 messages=100000 warmup=10000 payloadSize=1024 rate=0 (messages per second per route, 0 for no limit)
+ * selector=          JMS selector of the routes, messages carry LOAD__KEY = sequence % 10
+ * xmlSelector=false  add a body XPath selector to the routes
+ * transform=false    add a body transformation to the routes
+ * brokerPort=61717 jmxPort=1199 persistent=false idleTimeout=5000 output= (file, standard output if empty)
+ * transport.NAME=VALUE  transport configuration, e.g. transport.CONNECTION_COUNT=4
+ * </pre>
+ * Run with: java -cp benchmarks/target/benchmarks.jar com.fiorano.openesb.benchmarks.RouteLoadHarness routes=8
+ */
+public class RouteLoadHarness {
+
+    private static final String SENT_AT = "LOAD__SENT_AT";
+    private static final String SEQUENCE = "LOAD__SEQUENCE";
+    private static final String KEY = "LOAD__KEY";
+    private static final String WARMUP = "LOAD__WARMUP";
+
+    private final Properties options;
+    private final int routeCount;
+    private final int messageCount;
+    private final int warmupCount;
+    private final long rate;
+    private final long idleTimeout;
+    private final String payload;
+
+    private AMQTransportService transportService;
+    private final List<Route> routes = new ArrayList<>();
+    private final List<Receiver> receivers = new ArrayList<>();
+    private final List<Producer<JMSMessage>> producers = new ArrayList<>();
+    private final List<JMSPort> sourcePorts = new ArrayList<>();
+
+    public RouteLoadHarness(Properties options) {
+        this.options = options;
+        this.routeCount = getInt("routes", 4);
+        this.messageCount = getInt("messages", 100000);
+        this.warmupCount = getInt("warmup", 10000);
+        this.rate = getInt("rate", 0);
+        this.idleTimeout = getInt("idleTimeout", 5000);
+        this.payload = RoutePipelineBenchmark.createPayload(getInt("payloadSize", 1024));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Properties options = new Properties();
+        for (String arg : args) {
+            int index = arg.indexOf('=');
+            if (index < 0) {
+                System.err.println("Options are given as name=value, see the documentation of " + RouteLoadHarness.class.getName());
+                System.exit(1);
+            }
+            options.setProperty(arg.substring(0, index), arg.substring(index + 1));
+        }
+        new RouteLoadHarness(options).run();
+        // the broker and the transport leave non daemon threads behind
+        System.exit(0);
+    }
+
+    public void run() throws Exception {
+        BrokerService broker = startBroker();
+        try {
+            transportService = new AMQTransportService(configureTransport());
+            createRoutes();
+            if (warmupCount > 0) {
+                send(warmupCount, true);
+                awaitDrained();
+            }
+            for (Receiver receiver : receivers) {
+                receiver.reset(messageCount, false);
+            }
+            Map<String, long[]> gcBefore = getGarbageCollection();
+            long start = System.nanoTime();
+            long sent = send(messageCount, false);
+            long end = awaitDrained();
+            Map<String, long[]> gcAfter = getGarbageCollection();
+            writeResults(sent, start, end, gcBefore, gcAfter);
+        } finally {
+            for (Route route : routes) {
+                route.stop();
+                route.delete();
+            }
+            for (Receiver receiver : receivers) {
+                receiver.consumer.close();
+            }
+            for (Producer<JMSMessage> producer : producers) {
+                producer.close();
+            }
+            if (transportService != null) {
+                transportService.stop();
+            }
+            broker.stop();
+        }
+    }
+
+    private BrokerService startBroker() throws Exception {
+        BrokerService broker = new BrokerService();
+        // the transport service administers the broker through JMX under this name
+        broker.setBrokerName("amq-broker");
+        broker.setPersistent(Boolean.parseBoolean(options.getProperty("persistent", "false")));
+        broker.setDataDirectory(options.getProperty("dataDirectory", "target" + File.separator + "load-broker"));
+        broker.setUseJmx(true);
+        broker.getManagementContext().setCreateConnector(true);
+        broker.getManagementContext().setConnectorPort(getInt("jmxPort", 1199));
+        broker.addConnector("tcp://localhost:" + getInt("brokerPort", 61717));
+        broker.start();
+        broker.waitUntilStarted();
+        return broker;
+    }
+
+    private Properties configureTransport() {
+        Properties properties = new Properties();
+        properties.setProperty("brokerURL", "tcp://localhost:" + getInt("brokerPort", 61717) + "?wireFormat.maxInactivityDuration=0");
+        properties.setProperty("jmxURL", "service:jmx:rmi:///jndi/rmi://localhost:" + getInt("jmxPort", 1199) + "/jmxrmi");
+        // spooling to disk would hide a slow target from the latency figures
+        properties.setProperty("ROUTE_SPOOL", "false");
+        for (String name : options.stringPropertyNames()) {
+            if (name.startsWith("transport.")) {
+                properties.setProperty(name.substring("transport.".length()), options.getProperty(name));
+            }
+        }
+        TransportConfig.getInstance().setProperties(properties);
+        return properties;
+    }
+
+    private void createRoutes() throws Exception {
+        JMSRouteServiceImpl routeService = new JMSRouteServiceImpl(transportService);
+        String selector = options.getProperty("selector");
+        for (int i = 0; i < routeCount; i++) {
+            JMSPortConfiguration source = queue("LOAD.IN." + i);
+            JMSPortConfiguration target = queue("LOAD.OUT." + i);
+            JMSRouteConfiguration configuration = new JMSRouteConfiguration(source, target,
+                    selector == null || selector.isEmpty() ? null : selector);
+
+            MessageCreationConfiguration messageCreation = new MessageCreationConfiguration();
+            messageCreation.setTransportService(transportService);
+            messageCreation.setRouteOperationType(RouteOperationType.MESSAGE_CREATE);
+            configuration.getRouteOperationConfigurations().add(messageCreation);
+            if (Boolean.parseBoolean(options.getProperty("xmlSelector", "false"))) {
+                XmlSelectorConfiguration xmlSelector = new XmlSelectorConfiguration("Body");
+                xmlSelector.setXpath("/Orders/Order/Item");
+                xmlSelector.setRouteOperationType(RouteOperationType.BODY_XML_SELECTOR);
+                configuration.getRouteOperationConfigurations().add(xmlSelector);
+            }
+            if (Boolean.parseBoolean(options.getProperty("transform", "false"))) {
+                TransformationConfiguration transformation = new TransformationConfiguration();
+                transformation.setXsl(RoutePipelineBenchmark.XSL);
+                transformation.setRouteOperationType(RouteOperationType.ROUTE_TRANSFORM);
+                configuration.getRouteOperationConfigurations().add(transformation);
+            }
+            Route route = routeService.createRoute("LoadRoute" + i, configuration);
+            route.start();
+            routes.add(route);
+
+            Receiver receiver = new Receiver(transportService.createConsumer(transportService.enablePort(target),
+                    new JMSConsumerConfiguration(null), "LoadReceiver" + i));
+            receiver.reset(warmupCount, true);
+            receiver.consumer.attachMessageListener(receiver);
+            receivers.add(receiver);
+
+            JMSPort sourcePort = transportService.enablePort(source);
+            sourcePorts.add(sourcePort);
+            producers.add(transportService.createProducer(sourcePort, new JMSProducerConfiguration(), "LoadProducer" + i));
+        }
+    }
+
+    private static JMSPortConfiguration queue(String name) {
+        JMSPortConfiguration configuration = new JMSPortConfiguration();
+        configuration.setName(name);
+        configuration.setPortType(JMSPortConfiguration.PortType.QUEUE);
+        return configuration;
+    }
+
+    /**
+     * Sends the messages on all routes at once, one thread per route.
+     * @return number of messages sent
+     */
+    private long send(final int count, final boolean warmup) throws Exception {
+        final AtomicLong sent = new AtomicLong();
+        final AtomicInteger failures = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (final Producer<JMSMessage> producer : producers) {
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    long interval = rate > 0 ? TimeUnit.SECONDS.toNanos(1) / rate : 0;
+                    long next = System.nanoTime();
+                    for (int sequence = 0; sequence < count; sequence++) {
+                        if (interval > 0) {
+                            while (System.nanoTime() < next) {
+                                Thread.yield();
+                            }
+                            next += interval;
+                        }
+                        try {
+                            JMSMessage message = transportService.createMessage(new JMSMessageConfiguration(JMSMessageConfiguration.MessageType.Text));
+                            TextMessage textMessage = (TextMessage) message.getMessage();
+                            textMessage.setText(payload);
+                            textMessage.setIntProperty(SEQUENCE, sequence);
+                            textMessage.setIntProperty(KEY, sequence % 10);
+                            textMessage.setBooleanProperty(WARMUP, warmup);
+                            textMessage.setLongProperty(SENT_AT, System.nanoTime());
+                            producer.send(message);
+                            sent.incrementAndGet();
+                        } catch (Exception e) {
+                            if (failures.getAndIncrement() == 0) {
+                                e.printStackTrace();
+                            }
+                        }
+                    }
+                }
+            }, "LoadProducer");
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failures.get() > 0) {
+            System.err.println(failures.get() + " messages could not be sent");
+        }
+        return sent.get();
+    }
+
+    /**
+     * Waits until no message arrived for the idle timeout.
+     * @return time the last message was received
+     */
+    private long awaitDrained() throws InterruptedException {
+        long lastCount = -1;
+        long lastChange = System.nanoTime();
+        while (true) {
+            long count = 0;
+            for (Receiver receiver : receivers) {
+                count += receiver.received.get();
+            }
+            long now = System.nanoTime();
+            if (count != lastCount) {
+                lastCount = count;
+                lastChange = now;
+            } else if (now - lastChange > TimeUnit.MILLISECONDS.toNanos(idleTimeout)) {
+                long last = 0;
+                for (Receiver receiver : receivers) {
+                    last = Math.max(last, receiver.lastReceived);
+                }
+                return last;
+            }
+            Thread.sleep(50);
+        }
+    }
+
+    private static Map<String, long[]> getGarbageCollection() {
+        Map<String, long[]> collections = new LinkedHashMap<>();
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            collections.put(collector.getName(), new long[]{collector.getCollectionCount(), collector.getCollectionTime()});
+        }
+        return collections;
+    }
+
+    private void writeResults(long sent, long start, long end, Map<String, long[]> gcBefore, Map<String, long[]> gcAfter) throws Exception {
+        int received = 0;
+        for (Receiver receiver : receivers) {
+            received += receiver.received.get();
+        }
+        long[] latencies = new long[received];
+        int offset = 0;
+        for (Receiver receiver : receivers) {
+            int count = receiver.received.get();
+            System.arraycopy(receiver.latencies, 0, latencies, offset, count);
+            offset += count;
+        }
+        Arrays.sort(latencies);
+        double seconds = Math.max(1, end - start) / 1e9;
+
+        Map<String, Object> results = new LinkedHashMap<>();
+        Map<String, Object> configuration = new LinkedHashMap<>();
+        for (String name : options.stringPropertyNames()) {
+            configuration.put(name, options.getProperty(name));
+        }
+        configuration.put("routes", routeCount);
+        configuration.put("messages", messageCount);
+        configuration.put("payloadSize", payload.length());
+        results.put("configuration", configuration);
+        results.put("sent", sent);
+        results.put("received", received);
+        results.put("durationMillis", Math.round(seconds * 1000));
+        results.put("throughputPerSecond", Math.round(received / seconds));
+
+        Map<String, Object> latency = new LinkedHashMap<>();
+        latency.put("p50", percentile(latencies, 0.50));
+        latency.put("p99", percentile(latencies, 0.99));
+        latency.put("p999", percentile(latencies, 0.999));
+        latency.put("max", latencies.length > 0 ? toMicros(latencies[latencies.length - 1]) : 0);
+        results.put("latencyMicros", latency);
+
+        List<Map<String, Object>> collections = new ArrayList<>();
+        for (Map.Entry<String, long[]> collector : gcAfter.entrySet()) {
+            long[] before = gcBefore.get(collector.getKey());
+            Map<String, Object> collection = new LinkedHashMap<>();
+            collection.put("collector", collector.getKey());
+            collection.put("count", collector.getValue()[0] - (before != null ? before[0] : 0));
+            collection.put("timeMillis", collector.getValue()[1] - (before != null ? before[1] : 0));
+            collections.add(collection);
+        }
+        results.put("garbageCollection", collections);
+
+        String json = new Genson().serialize(results);
+        String output = options.getProperty("output");
+        if (output == null || output.isEmpty()) {
+            System.out.println(json);
+        } else {
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(output), "UTF-8")) {
+                writer.write(json);
+            }
+        }
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return toMicros(sorted[Math.max(0, Math.min(sorted.length - 1, index))]);
+    }
+
+    private static long toMicros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    private int getInt(String name, int defaultValue) {
+        String value = options.getProperty(name);
+        return value == null || value.isEmpty() ? defaultValue : Integer.parseInt(value);
+    }
+
+    /**
+     * Records the latency of the messages arriving on the target queue of one route. Messages are delivered on
+     * the single session thread of the consumer.
+     */
+    private static class Receiver implements MessageListener<JMSMessage> {
+        private final Consumer<JMSMessage> consumer;
+        private volatile long[] latencies = new long[0];
+        private volatile boolean warmup = true;
+        private final AtomicInteger received = new AtomicInteger();
+        private volatile long lastReceived;
+
+        private Receiver(Consumer<JMSMessage> consumer) {
+            this.consumer = consumer;
+        }
+
+        private void reset(int capacity, boolean warmup) {
+            this.latencies = new long[capacity];
+            this.warmup = warmup;
+            received.set(0);
+        }
+
+        public void messageReceived(JMSMessage message) {
+            long now = System.nanoTime();
+            try {
+                javax.jms.Message jmsMessage = message.getMessage();
+                long[] latencies = this.latencies;
+                int index = received.get();
+                // warm up messages still in flight when the measured run starts are not counted in it
+                if (index < latencies.length && jmsMessage.getBooleanProperty(WARMUP) == warmup) {
+                    latencies[index] = now - jmsMessage.getLongProperty(SENT_AT);
+                    received.set(index + 1);
+                    lastReceived = now;
+                }
+            } catch (JMSException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
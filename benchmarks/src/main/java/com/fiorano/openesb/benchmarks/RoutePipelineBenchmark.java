@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) Fiorano Software and affiliates. All rights reserved. http://www.fiorano.com
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.fiorano.openesb.benchmarks;
+
+import com.fiorano.openesb.application.application.Application;
+import com.fiorano.openesb.application.application.OutputPortInstance;
+import com.fiorano.openesb.route.RouteOperationConfiguration;
+import com.fiorano.openesb.route.RouteOperationType;
+import com.fiorano.openesb.route.impl.CarryForwardContextConfiguration;
+import com.fiorano.openesb.route.impl.MessageCreationConfiguration;
+import com.fiorano.openesb.route.impl.SenderSelectorConfiguration;
+import com.fiorano.openesb.route.impl.TransformationConfiguration;
+import com.fiorano.openesb.route.impl.XmlSelectorConfiguration;
+import com.fiorano.openesb.transport.impl.jms.JMSMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.jms.JMSException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of passing one received message through the route pipeline, for each route handler on its own and for a
+ * route with all of them, over XML payloads from 1 KB to 10 MB. Each invocation routes a new read only message,
+ * as a consumer would hand it to the route.
+ * <p>
+ * Throughput and sample time modes give the rate and the latency percentiles; run with -prof gc for the
+ * allocation rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoutePipelineBenchmark {
+
+    private static final String APPLICATION = "BENCHMARK";
+    private static final String SOURCE_SERVICE = "SOURCE1";
+
+    static final String XSL = "<xsl:stylesheet version=\"1.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">"
+            + "<xsl:template match=\"/\"><Summary>"
+            + "<xsl:for-each select=\"document('body')/Orders/Order\"><Id><xsl:value-of select=\"@id\"/></Id></xsl:for-each>"
+            + "</Summary></xsl:template></xsl:stylesheet>";
+
+    /**
+     * Handlers of the route besides the send, BASELINE has none and measures the pipeline itself.
+     */
+    @Param({"BASELINE", "MESSAGE_CREATE", "CARRY_FORWARD_CONTEXT", "XML_SELECTOR", "SENDER_SELECTOR", "TRANSFORMATION", "ALL"})
+    public String handlers;
+
+    @Param({"1024", "102400", "1048576", "10485760"})
+    public int payloadSize;
+
+    private BenchmarkRoute route;
+    private String payload;
+    // properties of a message sent by a route from the source service, as the next route receives it
+    private Map<String, Object> receivedProperties;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        payload = createPayload(payloadSize);
+        receivedProperties = createReceivedProperties();
+        route = new BenchmarkRoute(createOperations(handlers));
+    }
+
+    @Benchmark
+    public JMSMessage route() throws JMSException {
+        route.handleMessage(new JMSMessage(createReceivedMessage()));
+        return route.takeSent();
+    }
+
+    private InMemoryTextMessage createReceivedMessage() throws JMSException {
+        InMemoryTextMessage message = new InMemoryTextMessage();
+        message.setText(payload);
+        for (Map.Entry<String, Object> property : receivedProperties.entrySet()) {
+            message.setObjectProperty(property.getKey(), property.getValue());
+        }
+        message.markReceived();
+        return message;
+    }
+
+    /**
+     * Sends a message through a route with the carry forward context handler of the source service, which
+     * sets the properties routes downstream of it find on their messages.
+     */
+    private Map<String, Object> createReceivedProperties() throws Exception {
+        List<RouteOperationConfiguration> operations = new ArrayList<>();
+        operations.add(createOperation("CARRY_FORWARD_CONTEXT"));
+        BenchmarkRoute sourceRoute = new BenchmarkRoute(operations);
+        InMemoryTextMessage message = new InMemoryTextMessage();
+        message.setText("<Orders/>");
+        sourceRoute.handleMessage(new JMSMessage(message));
+        javax.jms.Message sent = sourceRoute.takeSent().getMessage();
+        Map<String, Object> properties = new HashMap<>();
+        Enumeration names = sent.getPropertyNames();
+        while (names.hasMoreElements()) {
+            String name = (String) names.nextElement();
+            properties.put(name, sent.getObjectProperty(name));
+        }
+        return properties;
+    }
+
+    private static List<RouteOperationConfiguration> createOperations(String handlers) {
+        List<RouteOperationConfiguration> operations = new ArrayList<>();
+        if ("ALL".equals(handlers)) {
+            for (String handler : new String[]{"MESSAGE_CREATE", "CARRY_FORWARD_CONTEXT", "SENDER_SELECTOR", "XML_SELECTOR", "TRANSFORMATION"}) {
+                operations.add(createOperation(handler));
+            }
+        } else if (!"BASELINE".equals(handlers)) {
+            operations.add(createOperation(handlers));
+        }
+        return operations;
+    }
+
+    private static RouteOperationConfiguration createOperation(String handler) {
+        switch (handler) {
+            case "MESSAGE_CREATE":
+                MessageCreationConfiguration messageCreation = new MessageCreationConfiguration();
+                messageCreation.setTransportService(new InMemoryTransportService());
+                messageCreation.setRouteOperationType(RouteOperationType.MESSAGE_CREATE);
+                return messageCreation;
+            case "CARRY_FORWARD_CONTEXT":
+                Application application = new Application();
+                application.setGUID(APPLICATION);
+                application.setVersion(1.0f);
+                application.setDisplayName(APPLICATION);
+                application.setLabel("development");
+                OutputPortInstance port = new OutputPortInstance();
+                port.setName("OUT_PORT");
+                CarryForwardContextConfiguration carryForwardContext = new CarryForwardContextConfiguration();
+                carryForwardContext.setApplication(application);
+                carryForwardContext.setPortInstance(port);
+                carryForwardContext.setServiceInstanceName(SOURCE_SERVICE);
+                carryForwardContext.setRouteOperationType(RouteOperationType.SRC_CARRY_FORWARD_CONTEXT);
+                return carryForwardContext;
+            case "XML_SELECTOR":
+                XmlSelectorConfiguration selector = new XmlSelectorConfiguration("Body");
+                selector.setXpath("/Orders/Order/Item");
+                selector.setRouteOperationType(RouteOperationType.BODY_XML_SELECTOR);
+                return selector;
+            case "SENDER_SELECTOR":
+                SenderSelectorConfiguration senderSelector = new SenderSelectorConfiguration();
+                senderSelector.setSourceName(SOURCE_SERVICE);
+                senderSelector.setAppID(APPLICATION + ":1.0");
+                senderSelector.setRouteOperationType(RouteOperationType.SENDER_SELECTOR);
+                return senderSelector;
+            case "TRANSFORMATION":
+                TransformationConfiguration transformation = new TransformationConfiguration();
+                transformation.setXsl(XSL);
+                transformation.setRouteOperationType(RouteOperationType.ROUTE_TRANSFORM);
+                return transformation;
+            default:
+                throw new IllegalArgumentException("Unknown handler " + handler);
+        }
+    }
+
+    /**
+     * @return an XML document of orders of about the given size in characters
+     */
+    static String createPayload(int size) {
+        StringBuilder payload = new StringBuilder(size + 128).append("<Orders>");
+        for (int i = 0; payload.length() < size - 9; i++) {
+            payload.append("<Order id=\"").append(i).append("\"><Item>item-").append(i % 1000)
+                    .append("</Item><Quantity>").append(i % 10 + 1).append("</Quantity></Order>");
+        }
+        return payload.append("</Orders>").toString();
+    }
+}
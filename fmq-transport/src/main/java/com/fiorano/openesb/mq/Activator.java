@@ -22,6 +22,7 @@ import java.util.Properties;
 
 public class Activator implements BundleActivator {
 
+    private MQTransportService mqTransportService;
     private Logger logger;
 
     public void start(BundleContext context) {
@@ -39,7 +40,7 @@ public class Activator implements BundleActivator {
             FioranoJNDIContext.class.getCanonicalName();
             TunneledSocket.class.getCanonicalName();
             Thread.currentThread().setContextClassLoader(getClass().getClassLoader());
-            MQTransportService mqTransportService = new MQTransportService(properties);
+            mqTransportService = new MQTransportService(properties);
             context.registerService(TransportService.class, mqTransportService, new Hashtable<String, Object>());
         } catch (Throwable e) {
             logger.error(e.getMessage(), e);
@@ -48,6 +49,13 @@ public class Activator implements BundleActivator {
     }
 
     public void stop(BundleContext context) {
+        if (mqTransportService != null) {
+            try {
+                mqTransportService.stop();
+            } catch (Exception e) {
+                logger.debug("Error stopping Fiorano MQ Transport " + e.getMessage());
+            }
+        }
         logger.trace("Stopped Named Configuration bundle.");
     }
 
@@ -27,4 +27,6 @@ public interface MQDriver {
     ConnectionFactory getConnectionFactory(String name) throws Exception;
 
     void deleteDestination(String name, String type) throws Exception;
+
+    void cleanUp() throws Exception;
 }
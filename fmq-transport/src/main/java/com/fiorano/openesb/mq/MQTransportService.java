@@ -34,16 +34,22 @@ import com.fiorano.openesb.transport.ConnectionProvider;
 import com.fiorano.openesb.transport.PortConfiguration;
 import com.fiorano.openesb.transport.TransportService;
 import com.fiorano.openesb.transport.impl.jms.AbstractJMSTransportService;
+import com.fiorano.openesb.transport.impl.jms.JMSConsumerConfiguration;
 import com.fiorano.openesb.transport.impl.jms.JMSMessage;
 import com.fiorano.openesb.transport.impl.jms.JMSPort;
 import com.fiorano.openesb.transport.impl.jms.JMSPortConfiguration;
 
+import org.slf4j.LoggerFactory;
+
+import javax.jms.MessageConsumer;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class MQTransportService extends AbstractJMSTransportService
         implements TransportService<JMSPort, JMSMessage> {
 
     private final MQDriver mqDriver;
+    private final AtomicBoolean tuningWarned = new AtomicBoolean();
 
     @SuppressWarnings("unchecked")
     protected MQTransportService(Properties properties) throws Exception {
@@ -67,7 +73,30 @@ public class MQTransportService extends AbstractJMSTransportService
     @Override
     public void disablePort(PortConfiguration portConfiguration) throws Exception {
         JMSPortConfiguration jmsPortConfiguration = (JMSPortConfiguration) portConfiguration;
+        removePort(portConfiguration);
         mqDriver.deleteDestination(portConfiguration.getName(), jmsPortConfiguration.getPortType().name());
     }
 
+    /**
+     * FioranoMQ takes prefetch and acknowledgement batching from the connection factory defined on the server,
+     * the client API has no per consumer settings for them.
+     */
+    @Override
+    protected void configureConsumer(MessageConsumer consumer, JMSConsumerConfiguration configuration) {
+        if (tuningWarned.compareAndSet(false, true)) {
+            LoggerFactory.getLogger(Activator.class).warn("Consumer prefetch, dispatch and acknowledgement settings are not "
+                    + "supported per consumer by FioranoMQ, configure them on the connection factory instead");
+        }
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+        try {
+            mqDriver.cleanUp();
+        } catch (Exception e) {
+            //Ignore - could be because FioranoMQ stopped.
+            LoggerFactory.getLogger(Activator.class).trace("Error closing admin connection " + e.getMessage());
+        }
+    }
 }
@@ -9,6 +9,7 @@ package com.fiorano.openesb.jmsroute.impl;
 import com.fiorano.openesb.application.application.Application;
 import com.fiorano.openesb.route.RouteConfiguration;
 import com.fiorano.openesb.route.impl.AbstractRouteConfiguration;
+import com.fiorano.openesb.route.impl.SelectorPlanner;
 import com.fiorano.openesb.transport.PortConfiguration;
 import com.fiorano.openesb.transport.impl.jms.JMSConsumerConfiguration;
 import com.fiorano.openesb.transport.impl.jms.JMSPortConfiguration;
@@ -20,6 +21,19 @@ public class JMSRouteConfiguration extends AbstractRouteConfiguration implements
 
     private JMSPortConfiguration destinationConfiguration;
     private String jmsSelector;
+    private int concurrency = 1;
+    private String orderingKey;
+    private boolean transacted;
+    private int batchSize = 100;
+    private long batchTimeout = 100;
+    private int prefetchSize = -1;
+    private Boolean dispatchAsync;
+    private Boolean optimizeAcknowledge;
+    private int maxPendingMessages = -1;
+    private int errorRetryCount = 0;
+    private long errorRetryInterval = 1000;
+    private String errorDestination;
+    private boolean senderSelectorPushdown;
 
     public JMSRouteConfiguration(JMSPortConfiguration sourceConfiguration, JMSPortConfiguration destinationConfiguration, String jmsSelector) {
         this.sourceConfiguration = sourceConfiguration;
@@ -35,8 +49,18 @@ public class JMSRouteConfiguration extends AbstractRouteConfiguration implements
         return destinationConfiguration;
     }
 
+    /**
+     * @return the consumer configuration of the route, whose selector also holds the conditions of the route
+     * operations that the broker can evaluate
+     */
     public JMSConsumerConfiguration getConsumerConfiguration() {
-        return new JMSConsumerConfiguration(jmsSelector);
+        String selector = SelectorPlanner.plan(jmsSelector, getRouteOperationConfigurations(), senderSelectorPushdown);
+        JMSConsumerConfiguration consumerConfiguration = new JMSConsumerConfiguration(selector, transacted);
+        consumerConfiguration.setPrefetchSize(prefetchSize);
+        consumerConfiguration.setDispatchAsync(dispatchAsync);
+        consumerConfiguration.setOptimizeAcknowledge(optimizeAcknowledge);
+        consumerConfiguration.setMaxPendingMessages(maxPendingMessages);
+        return consumerConfiguration;
     }
 
     public void setSourceConfiguration(PortConfiguration sourceConfiguration) {
@@ -54,4 +78,134 @@ public class JMSRouteConfiguration extends AbstractRouteConfiguration implements
     public void setJmsSelector(String jmsSelector) {
         this.jmsSelector = jmsSelector;
     }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * Sets the number of messages the route processes in parallel, each on its own session. When the broker
+     * cannot spread the messages over the sessions, one consumer hands them to a lane per session and they are
+     * acknowledged once queued, so up to 256 messages per lane are lost if the server stops.
+     */
+    public void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    public String getOrderingKey() {
+        return orderingKey;
+    }
+
+    /**
+     * Sets the message property whose value identifies messages that must be processed in order when the
+     * route is concurrent. JMSXGroupID is left to the broker's message groups, any other property is
+     * used to assign messages to processing lanes.
+     */
+    public void setOrderingKey(String orderingKey) {
+        this.orderingKey = orderingKey;
+    }
+
+    public boolean isTransacted() {
+        return transacted;
+    }
+
+    /**
+     * Sets whether the route consumes and forwards messages in local transactions, committing once
+     * per batch. A batch ends after batchSize messages or batchTimeout milliseconds, whichever comes first.
+     */
+    public void setTransacted(boolean transacted) {
+        this.transacted = transacted;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public long getBatchTimeout() {
+        return batchTimeout;
+    }
+
+    public void setBatchTimeout(long batchTimeout) {
+        this.batchTimeout = batchTimeout;
+    }
+
+    public int getPrefetchSize() {
+        return prefetchSize;
+    }
+
+    /**
+     * Sets the number of messages pushed to each consumer of the route ahead of processing. A large value suits
+     * bulk routes, 1 spreads messages fairly over slow consumers. -1 leaves it to the transport.
+     */
+    public void setPrefetchSize(int prefetchSize) {
+        this.prefetchSize = prefetchSize;
+    }
+
+    public Boolean getDispatchAsync() {
+        return dispatchAsync;
+    }
+
+    public void setDispatchAsync(Boolean dispatchAsync) {
+        this.dispatchAsync = dispatchAsync;
+    }
+
+    public Boolean getOptimizeAcknowledge() {
+        return optimizeAcknowledge;
+    }
+
+    public void setOptimizeAcknowledge(Boolean optimizeAcknowledge) {
+        this.optimizeAcknowledge = optimizeAcknowledge;
+    }
+
+    public int getMaxPendingMessages() {
+        return maxPendingMessages;
+    }
+
+    public void setMaxPendingMessages(int maxPendingMessages) {
+        this.maxPendingMessages = maxPendingMessages;
+    }
+
+    public int getErrorRetryCount() {
+        return errorRetryCount;
+    }
+
+    public void setErrorRetryCount(int errorRetryCount) {
+        this.errorRetryCount = errorRetryCount;
+    }
+
+    public long getErrorRetryInterval() {
+        return errorRetryInterval;
+    }
+
+    public void setErrorRetryInterval(long errorRetryInterval) {
+        this.errorRetryInterval = errorRetryInterval;
+    }
+
+    /**
+     * @return queue messages go to when a route operation fails on them, null if they are discarded
+     */
+    public String getErrorDestination() {
+        return errorDestination;
+    }
+
+    public void setErrorDestination(String errorDestination) {
+        this.errorDestination = errorDestination;
+    }
+
+    public boolean isSenderSelectorPushdown() {
+        return senderSelectorPushdown;
+    }
+
+    /**
+     * Sets whether the sender selector also goes into the selector of the consumer. The broker evaluates it on
+     * the source contexts property, and drops messages on which that property is out of step with the carry
+     * forward context, so it is off unless the route asks for it.
+     */
+    public void setSenderSelectorPushdown(boolean senderSelectorPushdown) {
+        this.senderSelectorPushdown = senderSelectorPushdown;
+    }
 }
@@ -9,22 +9,57 @@ package com.fiorano.openesb.jmsroute.impl;
 import com.fiorano.openesb.jmsroute.Activator;
 import com.fiorano.openesb.route.*;
 import com.fiorano.openesb.route.impl.AbstractRouteImpl;
+import com.fiorano.openesb.route.impl.CarryForwardContextCache;
+import com.fiorano.openesb.route.impl.SelectorPlanner;
+import com.fiorano.openesb.route.metrics.RouteMetricsRegistry;
 import com.fiorano.openesb.transport.*;
 import com.fiorano.openesb.transport.impl.jms.JMSMessage;
 import com.fiorano.openesb.transport.impl.jms.JMSPort;
+import com.fiorano.openesb.transport.impl.jms.JMSPortConfiguration;
 import com.fiorano.openesb.transport.impl.jms.JMSProducerConfiguration;
+import com.fiorano.openesb.utils.MessagePropertyNames;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class JMSRouteImpl extends AbstractRouteImpl<JMSMessage> implements Route<JMSMessage> {
 
-    private Producer<JMSMessage> producer;
+    private static final String JMSX_GROUP_ID = "JMSXGroupID";
+    // messages waiting in each lane before the consumer is held back
+    private static final int LANE_CAPACITY = 256;
+
+    // one producer per session of the route, the consumer of a route with lanes has a session of its own
+    private volatile List<Producer<JMSMessage>> producers = new ArrayList<>();
+    // producers for the error destination on the same sessions, null if the route has no error destination
+    private volatile List<Producer<JMSMessage>> errorProducers;
+    private List<Consumer<JMSMessage>> consumers = new ArrayList<>();
+    private List<MessageLane> lanes = new ArrayList<>();
+    private List<BatchReceiver> receivers = new ArrayList<>();
+    // index of the session, and so of the producer, the current thread handles messages for
+    private final ThreadLocal<Integer> currentSession = new ThreadLocal<>();
+    // batch the current thread forwards messages in, when the route is transacted
+    private final ThreadLocal<BatchReceiver> currentBatch = new ThreadLocal<>();
+    // lane for messages without an ordering key
+    private final AtomicInteger nextLane = new AtomicInteger();
+
     private JMSPort sourcePort;
     private TransportService<JMSPort, JMSMessage> transportService;
     private RouteConfiguration routeConfiguration;
-    private Consumer<JMSMessage> messageConsumer;
     private String sourceDestintaion;
     private String targetDestination;
+    // holds the messages the target did not take, null for transacted routes and when spooling is off
+    private MessageSpool spool;
+    // sends the spooled messages, on a session of its own so that it does not share the consumer sessions
+    private Producer<JMSMessage> spoolProducer;
+    // sends the spooled messages the target keeps refusing to the error destination, on the spool session
+    private Producer<JMSMessage> spoolErrorProducer;
     private boolean isStarted;
     private Logger logger;
 
@@ -33,14 +68,34 @@ public class JMSRouteImpl extends AbstractRouteImpl<JMSMessage> implements Route
         this.transportService = transportService;
         this.routeConfiguration = routeConfiguration;
         logger = LoggerFactory.getLogger(Activator.class);
+        if (routeConfiguration instanceof JMSRouteConfiguration) {
+            JMSRouteConfiguration configuration = (JMSRouteConfiguration) routeConfiguration;
+            setRetryPolicy(configuration.getErrorRetryCount(), configuration.getErrorRetryInterval());
+        }
 
-
-        routeOperationHandlers.put(RouteOperationType.SEND, new RouteOperationHandler<JMSMessage>() {
+        // the send blocks: the consumer acknowledges the message when the handlers return, and a failed send must
+        // be spooled before the messages after it are sent, which a send completing later cannot ensure
+        setHandler(RouteOperationType.SEND, new RouteOperationHandler<JMSMessage>() {
             public void handleOperation(JMSMessage message) throws FilterMessageException {
+                MessageSpool spool = JMSRouteImpl.this.spool;
                 try {
-                    producer.send(message);
+                    CarryForwardContextCache.get(message).flush();
+                    // messages go behind those already spooled, so that the target gets them in order
+                    if (spool != null && !spool.isEmpty()) {
+                        spool.append(message);
+                        return;
+                    }
+                    getProducer().send(message);
                 } catch (Exception e) {
+                    if (spool != null) {
+                        spool(spool, message, e);
+                        return;
+                    }
                     logger.error(e.getMessage(), e);
+                    BatchReceiver batch = currentBatch.get();
+                    if (batch != null) {
+                        batch.setRollbackOnly();
+                    }
                 }
             }
         });
@@ -53,50 +108,371 @@ public class JMSRouteImpl extends AbstractRouteImpl<JMSMessage> implements Route
         }
         this.sourceDestintaion = routeConfiguration.getSourceConfiguration().getName();
         this.targetDestination = routeConfiguration.getDestinationConfiguration().getName();
-        producer = transportService.createProducer(transportService.enablePort(routeConfiguration.getDestinationConfiguration()), new JMSProducerConfiguration(), getSessionId());
-        messageConsumer = transportService.createConsumer(sourcePort, routeConfiguration.getConsumerConfiguration(), getSessionId());
-        messageConsumer.attachMessageListener(new MessageListener<JMSMessage>() {
-            public void messageReceived(JMSMessage message) {
-                    handleMessage(message);
+        JMSPort targetPort = transportService.enablePort(routeConfiguration.getDestinationConfiguration());
+        producers = createProducers(targetPort);
+        String errorDestination = getErrorDestination();
+        JMSPort errorPort = null;
+        if (errorDestination != null) {
+            JMSPortConfiguration errorConfiguration = new JMSPortConfiguration();
+            errorConfiguration.setName(errorDestination);
+            errorConfiguration.setPortType(JMSPortConfiguration.PortType.QUEUE);
+            errorPort = transportService.enablePort(errorConfiguration);
+            errorProducers = createProducers(errorPort);
+        }
+        if (!isTransacted()) {
+            spool = MessageSpool.create(getSessionId(), transportService);
+            if (spool != null) {
+                spoolProducer = createSpoolProducer(targetPort);
+                if (errorPort != null) {
+                    spoolErrorProducer = createSpoolProducer(errorPort);
+                }
+                spool.setRejectHandler(new MessageSpool.RejectHandler() {
+                    public void reject(JMSMessage message, Exception error, int attempts) throws Exception {
+                        rejectSpooled(message, error, attempts);
+                    }
+                });
+                spool.start(spoolProducer);
+                getMetrics().setSpool(spool);
             }
-        });
+        }
+        if (getConcurrency() > 1 && !isPartitionedByBroker()) {
+            for (int i = 0; i < getConcurrency(); i++) {
+                MessageLane lane = new MessageLane(i);
+                lane.start();
+                lanes.add(lane);
+            }
+        }
+        createConsumers();
+        if (isSenderSelectorPushdown()) {
+            SelectorPlanner.addPushdownRoute();
+        }
         isStarted = true;
     }
 
+    private boolean isSenderSelectorPushdown() {
+        return routeConfiguration instanceof JMSRouteConfiguration && ((JMSRouteConfiguration) routeConfiguration).isSenderSelectorPushdown();
+    }
+
     private String getSessionId() {
         return sourceDestintaion + "__" + routeName + "__" + targetDestination;
     }
 
+    private String getSessionId(int index) {
+        return index == 0 ? getSessionId() : getSessionId() + "__" + index;
+    }
+
+    /**
+     * @return the session the single consumer of a route with lanes receives on, apart from the sessions the lanes
+     * send on as the listener thread of a session must be the only thread using it
+     */
+    private String getDispatchSessionId() {
+        return getSessionId() + "__dispatch";
+    }
+
+    private int getConcurrency() {
+        int concurrency = routeConfiguration instanceof JMSRouteConfiguration ?
+                Math.max(1, ((JMSRouteConfiguration) routeConfiguration).getConcurrency()) : 1;
+        // a transaction cannot span the consumer session and the session of a lane
+        return concurrency > 1 && isTransacted() && !isPartitionedByBroker() ? 1 : concurrency;
+    }
+
+    private boolean isTransacted() {
+        return routeConfiguration instanceof JMSRouteConfiguration && ((JMSRouteConfiguration) routeConfiguration).isTransacted();
+    }
+
+    private String getErrorDestination() {
+        String errorDestination = routeConfiguration instanceof JMSRouteConfiguration ?
+                ((JMSRouteConfiguration) routeConfiguration).getErrorDestination() : null;
+        return errorDestination == null || errorDestination.trim().isEmpty() ? null : errorDestination;
+    }
+
+    private String getOrderingKey() {
+        return routeConfiguration instanceof JMSRouteConfiguration ?
+                ((JMSRouteConfiguration) routeConfiguration).getOrderingKey() : null;
+    }
+
+    /**
+     * Messages from a queue can be spread over concurrent consumers by the broker itself, which keeps
+     * messages of one JMSXGroupID on one consumer. Topics deliver every message to every consumer and
+     * other ordering keys are unknown to the broker, so those are spread over lanes by the route.
+     */
+    private boolean isPartitionedByBroker() {
+        JMSPortConfiguration sourceConfiguration = (JMSPortConfiguration) routeConfiguration.getSourceConfiguration();
+        String orderingKey = getOrderingKey();
+        return sourceConfiguration.getPortType() == JMSPortConfiguration.PortType.QUEUE
+                && (orderingKey == null || JMSX_GROUP_ID.equals(orderingKey));
+    }
+
+    private Producer<JMSMessage> getProducer() {
+        Integer session = currentSession.get();
+        return producers.get(session != null ? session : 0);
+    }
+
+    private List<Producer<JMSMessage>> createProducers(JMSPort targetPort) throws Exception {
+        List<Producer<JMSMessage>> producers = new ArrayList<>(getConcurrency());
+        // anonymous producers make retargeting the route a local operation
+        JMSProducerConfiguration producerConfiguration = new JMSProducerConfiguration(isTransacted());
+        producerConfiguration.setAnonymous(true);
+        for (int i = 0; i < getConcurrency(); i++) {
+            producers.add(transportService.createProducer(targetPort, producerConfiguration, getSessionId(i)));
+        }
+        return producers;
+    }
+
+    /**
+     * @return characters of text messages and bytes of bytes messages, the body of other messages is not counted
+     */
+    @Override
+    protected long getMessageSize(JMSMessage message) {
+        javax.jms.Message jmsMessage = message.getMessage();
+        try {
+            if (jmsMessage instanceof javax.jms.TextMessage) {
+                String text = ((javax.jms.TextMessage) jmsMessage).getText();
+                return text != null ? text.length() : 0;
+            } else if (jmsMessage instanceof javax.jms.BytesMessage) {
+                return ((javax.jms.BytesMessage) jmsMessage).getBodyLength();
+            }
+        } catch (javax.jms.JMSException e) {
+            // the size is only for the metrics
+        }
+        return 0;
+    }
+
+    /**
+     * Sends the message to the error destination of the route, with the failure in its properties. On a transacted
+     * route it goes in the same transaction as the messages forwarded with it.
+     */
+    @Override
+    protected boolean onOperationFailure(JMSMessage message, RouteOperationType operationType, Exception error, int attempts) {
+        List<Producer<JMSMessage>> errorProducers = this.errorProducers;
+        if (errorProducers == null) {
+            return super.onOperationFailure(message, operationType, error, attempts);
+        }
+        try {
+            CarryForwardContextCache.get(message).flush();
+            setFailure(message, operationType, error, attempts);
+            Integer session = currentSession.get();
+            errorProducers.get(session != null ? session : 0).send(message);
+            errorLog.error(operationType + ":" + error.getClass().getName(), "Operation " + operationType + " of route " + routeName
+                    + " failed after " + attempts + " attempts, message sent to " + getErrorDestination() + " : " + error.getMessage(), error);
+            return false;
+        } catch (Exception e) {
+            logger.error("Could not send message to the error destination of route " + routeName + " : " + e.getMessage(), e);
+            return super.onOperationFailure(message, operationType, error, attempts);
+        }
+    }
+
+    private void setFailure(JMSMessage message, RouteOperationType operationType, Exception error, int attempts) throws javax.jms.JMSException {
+        javax.jms.Message jmsMessage = message.getWritableMessage();
+        jmsMessage.setStringProperty(MessagePropertyNames.ROUTE_NAME, routeName);
+        jmsMessage.setStringProperty(MessagePropertyNames.ROUTE_ERROR_OPERATION, operationType.name());
+        jmsMessage.setStringProperty(MessagePropertyNames.ROUTE_ERROR_CLASS, error.getClass().getName());
+        jmsMessage.setStringProperty(MessagePropertyNames.ROUTE_ERROR_REASON, String.valueOf(error.getMessage()));
+        jmsMessage.setIntProperty(MessagePropertyNames.ROUTE_ERROR_ATTEMPTS, attempts);
+    }
+
+    /**
+     * Sends a spooled message the target kept refusing to the error destination of the route, or drops it if
+     * the route has none.
+     */
+    private void rejectSpooled(JMSMessage message, Exception error, int attempts) throws Exception {
+        Producer<JMSMessage> spoolErrorProducer = this.spoolErrorProducer;
+        if (spoolErrorProducer == null) {
+            errorLog.error("SPOOL:" + error.getClass().getName(), "Spooled message of route " + routeName + " dropped after "
+                    + attempts + " attempts to send it : " + error.getMessage(), error);
+            return;
+        }
+        setFailure(message, RouteOperationType.SEND, error, attempts);
+        spoolErrorProducer.send(message);
+        errorLog.error("SPOOL:" + error.getClass().getName(), "Spooled message of route " + routeName + " sent to "
+                + getErrorDestination() + " after " + attempts + " attempts to send it : " + error.getMessage(), error);
+    }
+
+    private Producer<JMSMessage> createSpoolProducer(JMSPort targetPort) throws Exception {
+        JMSProducerConfiguration producerConfiguration = new JMSProducerConfiguration(false);
+        producerConfiguration.setAnonymous(true);
+        return transportService.createProducer(targetPort, producerConfiguration, getSpoolSessionId());
+    }
+
+    private String getSpoolSessionId() {
+        return getSessionId() + "__spool";
+    }
+
+    private void spool(MessageSpool spool, JMSMessage message, Exception sendException) {
+        try {
+            spool.append(message);
+            logger.warn("Could not send message on route " + routeName + ", spooled for retry : " + sendException.getMessage());
+        } catch (Exception e) {
+            // once the spool is full this happens for every message
+            errorLog.error("SPOOL_APPEND:" + e.getClass().getName(), "Could not send message on route " + routeName
+                    + " and could not spool it, the message is lost : " + sendException.getMessage() + " / " + e.getMessage(), sendException);
+        }
+    }
+
+    private void createConsumers() throws Exception {
+        int consumerCount = lanes.isEmpty() ? getConcurrency() : 1;
+        for (int i = 0; i < consumerCount; i++) {
+            final int session = i;
+            Consumer<JMSMessage> consumer = transportService.createConsumer(sourcePort, routeConfiguration.getConsumerConfiguration(),
+                    lanes.isEmpty() ? getSessionId(i) : getDispatchSessionId());
+            consumers.add(consumer);
+            if (isTransacted()) {
+                JMSRouteConfiguration configuration = (JMSRouteConfiguration) routeConfiguration;
+                BatchReceiver receiver = new BatchReceiver(i, consumer, Math.max(1, configuration.getBatchSize()),
+                        Math.max(1, configuration.getBatchTimeout()));
+                receiver.start();
+                receivers.add(receiver);
+                continue;
+            }
+            consumer.attachMessageListener(new MessageListener<JMSMessage>() {
+                public void messageReceived(JMSMessage message) {
+                    if (lanes.isEmpty()) {
+                        currentSession.set(session);
+                        handleMessage(message);
+                    } else {
+                        dispatch(message);
+                    }
+                }
+            });
+        }
+    }
+
+    private void dispatch(JMSMessage message) {
+        Object key = null;
+        String orderingKey = getOrderingKey();
+        if (orderingKey != null) {
+            try {
+                key = message.getMessage().getObjectProperty(orderingKey);
+            } catch (Exception e) {
+                logger.debug(e.getMessage(), e);
+            }
+        }
+        int lane = key != null ? (key.hashCode() & Integer.MAX_VALUE) % lanes.size()
+                : (nextLane.getAndIncrement() & Integer.MAX_VALUE) % lanes.size();
+        try {
+            lanes.get(lane).put(message);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Interrupted while dispatching message on route " + routeName);
+        }
+    }
+
+    private void closeConsumers() throws Exception {
+        for (BatchReceiver receiver : receivers) {
+            receiver.shutdown();
+        }
+        receivers.clear();
+        for (Consumer<JMSMessage> consumer : consumers) {
+            consumer.close();
+        }
+        consumers.clear();
+    }
+
+    private void closeProducers() throws Exception {
+        for (Producer<JMSMessage> producer : producers) {
+            producer.close();
+        }
+    }
+
+    private void closeErrorProducers() throws Exception {
+        List<Producer<JMSMessage>> errorProducers = this.errorProducers;
+        this.errorProducers = null;
+        if (errorProducers != null) {
+            for (Producer<JMSMessage> producer : errorProducers) {
+                producer.close();
+            }
+        }
+    }
+
     public void stop() throws Exception {
-        messageConsumer.close();
-        producer.close();
+        closeConsumers();
+        for (MessageLane lane : lanes) {
+            lane.shutdown();
+        }
+        lanes.clear();
+        if (spool != null) {
+            // what is still spooled is sent when the route starts again
+            getMetrics().setSpool(null);
+            spool.stop();
+            spool = null;
+            spoolProducer.close();
+            spoolProducer = null;
+            if (spoolErrorProducer != null) {
+                spoolErrorProducer.close();
+                spoolErrorProducer = null;
+            }
+        }
+        closeProducers();
+        closeErrorProducers();
+        if (isStarted && isSenderSelectorPushdown()) {
+            SelectorPlanner.removePushdownRoute();
+        }
         isStarted = false;
     }
 
     public void delete() {
-        transportService.closeSession(getSessionId());
+        RouteMetricsRegistry.unregister(getMetrics());
+        for (int i = 0; i < getConcurrency(); i++) {
+            transportService.closeSession(getSessionId(i));
+        }
+        transportService.closeSession(getDispatchSessionId());
+        transportService.closeSession(getSpoolSessionId());
     }
 
     public void changeTargetDestination(PortConfiguration portConfiguration) throws Exception {
-        producer.close();
-        producer = null;
+        closeProducers();
         routeConfiguration.setDestinationConfiguration(portConfiguration);
         this.targetDestination = portConfiguration.getName();
-        producer = transportService.createProducer(transportService.enablePort(portConfiguration), new JMSProducerConfiguration(), getSessionId());
+        JMSPort targetPort = transportService.enablePort(portConfiguration);
+        producers = createProducers(targetPort);
+        if (spool != null) {
+            Producer<JMSMessage> oldProducer = spoolProducer;
+            spoolProducer = createSpoolProducer(targetPort);
+            spool.setProducer(spoolProducer);
+            oldProducer.close();
+        }
     }
 
     public void changeSourceDestination(PortConfiguration portConfiguration) throws Exception {
-        messageConsumer.close();
+        closeConsumers();
         routeConfiguration.setSourceConfiguration(portConfiguration);
         sourcePort = transportService.enablePort(routeConfiguration.getSourceConfiguration());
         this.sourceDestintaion = portConfiguration.getName();
-        messageConsumer = transportService.createConsumer(sourcePort, routeConfiguration.getConsumerConfiguration(), getSessionId());
-        messageConsumer.attachMessageListener(new MessageListener<JMSMessage>() {
-            public void messageReceived(JMSMessage message) {
-                    handleMessage(message);
-            }
-        });
+        createConsumers();
+    }
+
+    @Override
+    public void modifyHandler(RouteOperationConfiguration configuration) throws Exception {
+        super.modifyHandler(configuration);
+        updateOperationConfiguration(configuration, true);
+    }
 
+    @Override
+    public void removeHandler(RouteOperationConfiguration configuration) throws Exception {
+        super.removeHandler(configuration);
+        updateOperationConfiguration(configuration, false);
+    }
+
+    /**
+     * Keeps the operations in the route configuration in step with the handlers, and re-creates the consumers
+     * when that changes the part of the selection the broker does.
+     */
+    private synchronized void updateOperationConfiguration(RouteOperationConfiguration configuration, boolean add) throws Exception {
+        Object selector = routeConfiguration.getConsumerConfiguration().getSelector();
+        Iterator<RouteOperationConfiguration> operations = routeConfiguration.getRouteOperationConfigurations().iterator();
+        while (operations.hasNext()) {
+            if (operations.next().getRouteOperationType() == configuration.getRouteOperationType()) {
+                operations.remove();
+            }
+        }
+        if (add) {
+            routeConfiguration.getRouteOperationConfigurations().add(configuration);
+        }
+        Object newSelector = routeConfiguration.getConsumerConfiguration().getSelector();
+        if (isStarted && !(selector == null ? newSelector == null : selector.equals(newSelector))) {
+            closeConsumers();
+            createConsumers();
+        }
     }
 
     public String getSourceDestinationName() {
@@ -107,4 +483,135 @@ public class JMSRouteImpl extends AbstractRouteImpl<JMSMessage> implements Route
         return targetDestination;
     }
 
+    /**
+     * Thread handling the messages assigned to one session of the route, in the order they were received.
+     * Messages are acknowledged by the consumer session once they are queued on the lane, so the messages
+     * waiting in the lanes are lost if the server stops. Acknowledging them after they are handled is not
+     * possible, a client acknowledge would also acknowledge the messages still waiting in the other lanes.
+     */
+    private class MessageLane implements Runnable {
+        private final int session;
+        private final BlockingQueue<JMSMessage> messages = new ArrayBlockingQueue<>(LANE_CAPACITY);
+        private final Thread thread;
+        private volatile boolean running = true;
+
+        private MessageLane(int session) {
+            this.session = session;
+            this.thread = new Thread(this, "Route-" + routeName + "-" + session);
+            this.thread.setDaemon(true);
+        }
+
+        private void start() {
+            thread.start();
+        }
+
+        private void put(JMSMessage message) throws InterruptedException {
+            messages.put(message);
+        }
+
+        public void run() {
+            currentSession.set(session);
+            while (running || !messages.isEmpty()) {
+                try {
+                    JMSMessage message = messages.poll(100, TimeUnit.MILLISECONDS);
+                    if (message != null) {
+                        handleMessage(message);
+                    }
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+        }
+
+        private void shutdown() throws InterruptedException {
+            running = false;
+            thread.join(TimeUnit.SECONDS.toMillis(30));
+        }
+    }
+
+    /**
+     * Thread consuming the messages of one transacted session of the route. Messages received and forwarded
+     * in a batch are committed together, or rolled back together if forwarding any of them failed, in which
+     * case the broker redelivers the whole batch.
+     */
+    private class BatchReceiver implements Runnable {
+        // how long an idle receiver waits before checking whether the route is stopping
+        private static final long IDLE_TIMEOUT = 1000;
+
+        private final int session;
+        private final Consumer<JMSMessage> consumer;
+        private final int batchSize;
+        private final long batchTimeout;
+        private final Thread thread;
+        private volatile boolean running = true;
+        private boolean rollbackOnly;
+
+        private BatchReceiver(int session, Consumer<JMSMessage> consumer, int batchSize, long batchTimeout) {
+            this.session = session;
+            this.consumer = consumer;
+            this.batchSize = batchSize;
+            this.batchTimeout = batchTimeout;
+            this.thread = new Thread(this, "Route-" + routeName + "-" + session);
+            this.thread.setDaemon(true);
+        }
+
+        private void start() {
+            thread.start();
+        }
+
+        private void setRollbackOnly() {
+            rollbackOnly = true;
+        }
+
+        public void run() {
+            currentSession.set(session);
+            currentBatch.set(this);
+            while (running) {
+                int count = 0;
+                long deadline = 0;
+                rollbackOnly = false;
+                try {
+                    while (count < batchSize) {
+                        long timeout = count == 0 ? IDLE_TIMEOUT : deadline - System.currentTimeMillis();
+                        if (timeout <= 0) {
+                            break;
+                        }
+                        JMSMessage message = consumer.receive(timeout);
+                        if (message == null) {
+                            if (count == 0 && running) {
+                                continue;
+                            }
+                            break;
+                        }
+                        if (count++ == 0) {
+                            deadline = System.currentTimeMillis() + batchTimeout;
+                        }
+                        handleMessage(message);
+                    }
+                    if (count > 0) {
+                        if (rollbackOnly) {
+                            transportService.rollback(getSessionId(session));
+                        } else {
+                            transportService.commit(getSessionId(session));
+                        }
+                    }
+                } catch (Exception e) {
+                    if (!running) {
+                        break;
+                    }
+                    logger.error("Error forwarding messages on route " + routeName + " : " + e.getMessage(), e);
+                    try {
+                        transportService.rollback(getSessionId(session));
+                    } catch (Exception e1) {
+                        logger.debug(e1.getMessage(), e1);
+                    }
+                }
+            }
+        }
+
+        private void shutdown() throws InterruptedException {
+            running = false;
+            thread.join(IDLE_TIMEOUT + batchTimeout + TimeUnit.SECONDS.toMillis(30));
+        }
+    }
 }
@@ -0,0 +1,633 @@
+/*
+ * Copyright (c) Fiorano Software and affiliates. All rights reserved. http://www.fiorano.com
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.fiorano.openesb.jmsroute.impl;
+
+import com.fiorano.openesb.jmsroute.Activator;
+import com.fiorano.openesb.route.metrics.SpoolStatistics;
+import com.fiorano.openesb.transport.Producer;
+import com.fiorano.openesb.transport.TransportService;
+import com.fiorano.openesb.transport.impl.jms.JMSMessage;
+import com.fiorano.openesb.transport.impl.jms.JMSMessageConfiguration;
+import com.fiorano.openesb.transport.impl.jms.JMSPort;
+import com.fiorano.openesb.transport.impl.jms.JMSPortConfiguration;
+import com.fiorano.openesb.transport.impl.jms.TransportConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jms.BytesMessage;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageEOFException;
+import javax.jms.ObjectMessage;
+import javax.jms.Queue;
+import javax.jms.StreamMessage;
+import javax.jms.TextMessage;
+import javax.jms.Topic;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Durable store for the messages a route could not send to its target, replayed in order by a background
+ * thread once the target takes messages again.
+ * <p>
+ * Messages are appended to memory mapped segment files of a fixed size. Each record is the length of the
+ * message followed by the message; the length is made negative once the message has been sent, and a segment
+ * is deleted when all its messages have been sent. Spooled messages survive a restart of the route or of the
+ * server; a message sent just before a crash may be sent again. A spooled message keeps its body, properties,
+ * correlation id, type and reply to, and is sent with the delivery mode, priority and expiration it was received
+ * with; a message that expired while spooled is dropped.
+ * <p>
+ * Configured in the transport configuration: ROUTE_SPOOL turns spooling on when true, ROUTE_SPOOL_DIR is the
+ * directory for the spools of all routes, ROUTE_SPOOL_SEGMENT_SIZE and ROUTE_SPOOL_MAX_SIZE limit the size of a
+ * segment and of the spool of a route in bytes, ROUTE_SPOOL_RETRY_INTERVAL is the initial wait in milliseconds
+ * before a failed replay is retried, ROUTE_SPOOL_MAX_ATTEMPTS is how often a message is tried before it is given
+ * to the {@link RejectHandler} and taken off the spool, and ROUTE_SPOOL_SYNC forces every record to disk when true.
+ * With the default of 10 attempts and the retry wait doubling up to 30 seconds, a message the target keeps refusing
+ * holds back the messages behind it for about two and a half minutes.
+ */
+public class MessageSpool implements SpoolStatistics {
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int DEFAULT_SEGMENT_SIZE = 8 * 1024 * 1024;
+    private static final long DEFAULT_MAX_SIZE = 256L * 1024 * 1024;
+    private static final long DEFAULT_RETRY_INTERVAL = 1000;
+    private static final long MAX_RETRY_INTERVAL = 30000;
+    private static final int DEFAULT_MAX_ATTEMPTS = 10;
+    // record type of messages without a body, which are replayed as empty text messages
+    private static final String NO_BODY = "None";
+
+    private final String name;
+    private final File directory;
+    private final int segmentSize;
+    private final long maxSize;
+    private final long retryInterval;
+    private final int maxAttempts;
+    private final boolean sync;
+    private final TransportService<JMSPort, JMSMessage> transportService;
+    private final Logger logger = LoggerFactory.getLogger(Activator.class);
+
+    // oldest first, the last segment is the one appended to
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private long nextSegmentId;
+    private int pendingCount;
+    private long pendingBytes;
+
+    private final AtomicLong spooledCount = new AtomicLong();
+    private final AtomicLong replayedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong failedReplayCount = new AtomicLong();
+
+    private volatile Producer<JMSMessage> producer;
+    private volatile RejectHandler rejectHandler;
+    private Thread drainer;
+    private volatile boolean running;
+
+    MessageSpool(String name, File directory, int segmentSize, long maxSize, long retryInterval, int maxAttempts,
+                 boolean sync, TransportService<JMSPort, JMSMessage> transportService) {
+        this.name = name;
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSize = Math.max(maxSize, segmentSize);
+        this.retryInterval = retryInterval;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.sync = sync;
+        this.transportService = transportService;
+    }
+
+    /**
+     * @return the spool of the route as configured in the transport configuration, null if spooling is off
+     */
+    static MessageSpool create(String name, TransportService<JMSPort, JMSMessage> transportService) {
+        TransportConfig config = TransportConfig.getInstance();
+        if (!Boolean.parseBoolean(config.getValue("ROUTE_SPOOL", "false"))) {
+            return null;
+        }
+        File root = new File(config.getValue("ROUTE_SPOOL_DIR", System.getProperty("user.dir") + File.separator
+                + "data" + File.separator + "spool"));
+        return new MessageSpool(name, new File(root, name.replaceAll("[^A-Za-z0-9_.-]", "_")),
+                Integer.parseInt(config.getValue("ROUTE_SPOOL_SEGMENT_SIZE", String.valueOf(DEFAULT_SEGMENT_SIZE))),
+                Long.parseLong(config.getValue("ROUTE_SPOOL_MAX_SIZE", String.valueOf(DEFAULT_MAX_SIZE))),
+                Long.parseLong(config.getValue("ROUTE_SPOOL_RETRY_INTERVAL", String.valueOf(DEFAULT_RETRY_INTERVAL))),
+                Integer.parseInt(config.getValue("ROUTE_SPOOL_MAX_ATTEMPTS", String.valueOf(DEFAULT_MAX_ATTEMPTS))),
+                Boolean.parseBoolean(config.getValue("ROUTE_SPOOL_SYNC", "false")), transportService);
+    }
+
+    /**
+     * Opens the segments left by an earlier run and starts replaying through the producer.
+     */
+    public synchronized void start(Producer<JMSMessage> producer) throws IOException {
+        if (running) {
+            return;
+        }
+        this.producer = producer;
+        open();
+        running = true;
+        drainer = new Thread(new Runnable() {
+            public void run() {
+                drain();
+            }
+        }, "RouteSpool-" + name);
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    /**
+     * Changes the producer spooled messages are replayed through, when the target of the route changes.
+     */
+    public void setProducer(Producer<JMSMessage> producer) {
+        this.producer = producer;
+    }
+
+    /**
+     * Sets what is done with a message that could not be sent after the maximum number of attempts, which is
+     * dropped when no handler is set.
+     */
+    public void setRejectHandler(RejectHandler rejectHandler) {
+        this.rejectHandler = rejectHandler;
+    }
+
+    /**
+     * Stops replaying once the message being sent, if any, has been sent. Messages not yet replayed stay on disk
+     * and are replayed when the spool is started again.
+     */
+    public void stop() throws InterruptedException {
+        Thread drainer;
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            drainer = this.drainer;
+            this.drainer = null;
+            notifyAll();
+        }
+        // a send is not interrupted, the drainer marks the message as sent and then sees the spool is stopping
+        drainer.join(MAX_RETRY_INTERVAL);
+        synchronized (this) {
+            for (Segment segment : segments) {
+                segment.close();
+            }
+            segments.clear();
+            pendingCount = 0;
+            pendingBytes = 0;
+        }
+    }
+
+    /**
+     * @return true if messages are waiting to be replayed, new messages then go to the spool to stay behind them
+     */
+    public synchronized boolean isEmpty() {
+        return pendingCount == 0;
+    }
+
+    public void append(JMSMessage message) throws IOException {
+        byte[] record;
+        try {
+            record = encode(message.getMessage());
+        } catch (JMSException e) {
+            droppedCount.incrementAndGet();
+            throw new IOException("Could not read message to spool : " + e.getMessage(), e);
+        }
+        synchronized (this) {
+            if (!running) {
+                droppedCount.incrementAndGet();
+                throw new IOException("Spool of route " + name + " is not started");
+            }
+            // a length of 0 after the last record marks the end of the segment
+            if (record.length + 8 > segmentSize) {
+                droppedCount.incrementAndGet();
+                throw new IOException("Message of " + record.length + " bytes does not fit in a spool segment of " + segmentSize + " bytes");
+            }
+            Segment segment = segments.peekLast();
+            if (segment == null || segment.writePosition + record.length + 8 > segmentSize) {
+                if ((long) (segments.size() + 1) * segmentSize > maxSize) {
+                    droppedCount.incrementAndGet();
+                    throw new IOException("Spool of route " + name + " is full, " + pendingCount + " messages are waiting to be sent");
+                }
+                segment = Segment.open(new File(directory, String.format("%016d", nextSegmentId++) + SEGMENT_SUFFIX), segmentSize);
+                segments.add(segment);
+            }
+            ByteBuffer buffer = segment.buffer.duplicate();
+            buffer.position(segment.writePosition + 4);
+            buffer.put(record);
+            // the length goes in last, so that a record cut short by a crash reads as the end of the segment
+            segment.buffer.putInt(segment.writePosition, record.length);
+            segment.writePosition += record.length + 4;
+            if (sync) {
+                segment.buffer.force();
+            }
+            pendingCount++;
+            pendingBytes += record.length;
+            spooledCount.incrementAndGet();
+            notifyAll();
+        }
+    }
+
+    private void open() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create spool directory " + directory);
+        }
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            if (!file.getName().endsWith(SEGMENT_SUFFIX)) {
+                continue;
+            }
+            long id = Long.parseLong(file.getName().substring(0, file.getName().length() - SEGMENT_SUFFIX.length()));
+            nextSegmentId = Math.max(nextSegmentId, id + 1);
+            Segment segment = Segment.open(file, (int) Math.max(file.length(), segmentSize));
+            segment.scan();
+            if (segment.pendingCount == 0) {
+                segment.delete();
+                continue;
+            }
+            segments.add(segment);
+            pendingCount += segment.pendingCount;
+            pendingBytes += segment.pendingBytes;
+        }
+        if (pendingCount > 0) {
+            logger.info("Route " + name + " has " + pendingCount + " spooled messages to send");
+        }
+    }
+
+    private void drain() {
+        long wait = retryInterval;
+        boolean failing = false;
+        // attempts to send the message at the head of the spool
+        int attempts = 0;
+        while (running) {
+            byte[] record;
+            synchronized (this) {
+                while (running && pendingCount == 0) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (!running) {
+                    return;
+                }
+                record = peek();
+            }
+            JMSMessage message;
+            try {
+                message = decode(record);
+            } catch (ExpiredException e) {
+                logger.debug("Dropping spooled message of route " + name + " that expired");
+                droppedCount.incrementAndGet();
+                consume(record.length);
+                continue;
+            } catch (Exception e) {
+                logger.error("Dropping spooled message of route " + name + " that could not be read : " + e.getMessage(), e);
+                droppedCount.incrementAndGet();
+                consume(record.length);
+                continue;
+            }
+            try {
+                producer.send(message);
+            } catch (Exception e) {
+                failedReplayCount.incrementAndGet();
+                if (++attempts >= maxAttempts) {
+                    // a message the target keeps refusing must not hold back the ones behind it for good
+                    reject(message, e, attempts);
+                    attempts = 0;
+                    wait = retryInterval;
+                    consume(record.length);
+                    continue;
+                }
+                if (!failing) {
+                    logger.warn("Could not send spooled messages of route " + name + ", retrying : " + e.getMessage());
+                    failing = true;
+                }
+                // stop wakes the drainer up instead of interrupting it, appends do not shorten the wait
+                long retryAt = System.currentTimeMillis() + wait;
+                synchronized (this) {
+                    try {
+                        long remaining;
+                        while (running && (remaining = retryAt - System.currentTimeMillis()) > 0) {
+                            wait(remaining);
+                        }
+                    } catch (InterruptedException e1) {
+                        return;
+                    }
+                }
+                wait = Math.min(wait * 2, MAX_RETRY_INTERVAL);
+                continue;
+            }
+            if (failing) {
+                logger.info("Sending spooled messages of route " + name + " again");
+                failing = false;
+            }
+            wait = retryInterval;
+            attempts = 0;
+            replayedCount.incrementAndGet();
+            consume(record.length);
+        }
+    }
+
+    private void reject(JMSMessage message, Exception error, int attempts) {
+        droppedCount.incrementAndGet();
+        RejectHandler rejectHandler = this.rejectHandler;
+        if (rejectHandler == null) {
+            logger.error("Dropping spooled message of route " + name + " that could not be sent after " + attempts
+                    + " attempts : " + error.getMessage());
+            return;
+        }
+        try {
+            rejectHandler.reject(message, error, attempts);
+        } catch (Exception e) {
+            logger.error("Dropping spooled message of route " + name + " that could not be sent after " + attempts
+                    + " attempts nor rejected : " + error.getMessage() + " / " + e.getMessage());
+        }
+    }
+
+    private byte[] peek() {
+        Segment segment = segments.peekFirst();
+        int length = segment.buffer.getInt(segment.readPosition);
+        byte[] record = new byte[length];
+        ByteBuffer buffer = segment.buffer.duplicate();
+        buffer.position(segment.readPosition + 4);
+        buffer.get(record);
+        return record;
+    }
+
+    private synchronized void consume(int length) {
+        Segment segment = segments.peekFirst();
+        // the segments are closed if stop gave up waiting for the send
+        if (segment == null) {
+            return;
+        }
+        segment.buffer.putInt(segment.readPosition, -length);
+        segment.readPosition += length + 4;
+        segment.skipConsumed();
+        pendingCount--;
+        pendingBytes -= length;
+        if (segment.readPosition >= segment.writePosition) {
+            segments.removeFirst();
+            segment.delete();
+        }
+    }
+
+    private static byte[] encode(Message message) throws JMSException, IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            Serializable body = null;
+            String type;
+            if (message instanceof TextMessage) {
+                type = JMSMessageConfiguration.MessageType.Text.name();
+                body = ((TextMessage) message).getText();
+            } else if (message instanceof BytesMessage) {
+                type = JMSMessageConfiguration.MessageType.Bytes.name();
+                BytesMessage bytesMessage = (BytesMessage) message;
+                bytesMessage.reset();
+                byte[] data = new byte[(int) bytesMessage.getBodyLength()];
+                bytesMessage.readBytes(data);
+                body = data;
+            } else if (message instanceof ObjectMessage) {
+                type = JMSMessageConfiguration.MessageType.Object.name();
+                body = ((ObjectMessage) message).getObject();
+            } else if (message instanceof StreamMessage) {
+                type = JMSMessageConfiguration.MessageType.Stream.name();
+                StreamMessage streamMessage = (StreamMessage) message;
+                streamMessage.reset();
+                ArrayList<Object> values = new ArrayList<>();
+                try {
+                    //noinspection InfiniteLoopStatement
+                    while (true) {
+                        values.add(streamMessage.readObject());
+                    }
+                } catch (MessageEOFException e) {
+                    body = values;
+                }
+            } else {
+                type = NO_BODY;
+            }
+            HashMap<String, Object> properties = new HashMap<>();
+            Enumeration names = message.getPropertyNames();
+            while (names.hasMoreElements()) {
+                String property = (String) names.nextElement();
+                properties.put(property, message.getObjectProperty(property));
+            }
+            Destination replyTo = message.getJMSReplyTo();
+            out.writeUTF(type);
+            out.writeObject(message.getJMSCorrelationID());
+            out.writeObject(message.getJMSType());
+            // the reply to is kept by name, temporary destinations are valid only while their connection is open
+            if (replyTo instanceof Queue) {
+                out.writeObject(JMSPortConfiguration.PortType.QUEUE.name());
+                out.writeObject(((Queue) replyTo).getQueueName());
+            } else if (replyTo instanceof Topic) {
+                out.writeObject(JMSPortConfiguration.PortType.TOPIC.name());
+                out.writeObject(((Topic) replyTo).getTopicName());
+            } else {
+                out.writeObject(null);
+                out.writeObject(null);
+            }
+            out.writeInt(message.getJMSDeliveryMode());
+            out.writeInt(message.getJMSPriority());
+            out.writeLong(message.getJMSExpiration());
+            out.writeObject(properties);
+            out.writeObject(body);
+        }
+        return bytes.toByteArray();
+    }
+
+    private JMSMessage decode(byte[] record) throws Exception {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(record))) {
+            String type = in.readUTF();
+            String correlationId = (String) in.readObject();
+            String jmsType = (String) in.readObject();
+            String replyToType = (String) in.readObject();
+            String replyToName = (String) in.readObject();
+            int deliveryMode = in.readInt();
+            int priority = in.readInt();
+            long expiration = in.readLong();
+            long timeToLive = 0;
+            if (expiration != 0) {
+                timeToLive = expiration - System.currentTimeMillis();
+                if (timeToLive <= 0) {
+                    throw new ExpiredException();
+                }
+            }
+            @SuppressWarnings("unchecked") Map<String, Object> properties = (Map<String, Object>) in.readObject();
+            Object body = in.readObject();
+            JMSMessage jmsMessage = transportService.createMessage(new JMSMessageConfiguration(NO_BODY.equals(type)
+                    ? JMSMessageConfiguration.MessageType.Text : JMSMessageConfiguration.MessageType.valueOf(type)));
+            Message message = jmsMessage.getMessage();
+            if (message instanceof TextMessage) {
+                ((TextMessage) message).setText((String) body);
+            } else if (message instanceof BytesMessage) {
+                ((BytesMessage) message).writeBytes((byte[]) body);
+            } else if (message instanceof ObjectMessage) {
+                ((ObjectMessage) message).setObject((Serializable) body);
+            } else if (message instanceof StreamMessage) {
+                for (Object value : (List) body) {
+                    ((StreamMessage) message).writeObject(value);
+                }
+            }
+            message.setJMSCorrelationID(correlationId);
+            message.setJMSType(jmsType);
+            if (replyToName != null) {
+                JMSPortConfiguration replyTo = new JMSPortConfiguration();
+                replyTo.setName(replyToName);
+                replyTo.setPortType(JMSPortConfiguration.PortType.valueOf(replyToType));
+                message.setJMSReplyTo(transportService.enablePort(replyTo).getDestination());
+            }
+            jmsMessage.setSendOptions(deliveryMode, priority, timeToLive);
+            for (Map.Entry<String, Object> property : properties.entrySet()) {
+                message.setObjectProperty(property.getKey(), property.getValue());
+            }
+            return jmsMessage;
+        }
+    }
+
+    public synchronized int getPendingCount() {
+        return pendingCount;
+    }
+
+    public synchronized long getPendingBytes() {
+        return pendingBytes;
+    }
+
+    /**
+     * @return size of the segment files on disk, in bytes
+     */
+    public synchronized long getDiskSize() {
+        return (long) segments.size() * segmentSize;
+    }
+
+    public long getSpooledCount() {
+        return spooledCount.get();
+    }
+
+    public long getReplayedCount() {
+        return replayedCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getFailedReplayCount() {
+        return failedReplayCount.get();
+    }
+
+    /**
+     * Takes a spooled message that could not be sent after the maximum number of attempts, on the thread replaying
+     * the spool. The message is off the spool once the handler returns or throws.
+     */
+    public interface RejectHandler {
+        void reject(JMSMessage message, Exception error, int attempts) throws Exception;
+    }
+
+    /**
+     * Thrown when a spooled message expired before it could be sent.
+     */
+    private static class ExpiredException extends Exception {
+    }
+
+    private static class Segment {
+        private final File file;
+        private final RandomAccessFile randomAccessFile;
+        private final MappedByteBuffer buffer;
+        private int readPosition;
+        private int writePosition;
+        private int pendingCount;
+        private long pendingBytes;
+
+        private Segment(File file, RandomAccessFile randomAccessFile, MappedByteBuffer buffer) {
+            this.file = file;
+            this.randomAccessFile = randomAccessFile;
+            this.buffer = buffer;
+        }
+
+        private static Segment open(File file, int size) throws IOException {
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+            try {
+                return new Segment(file, randomAccessFile, randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size));
+            } catch (IOException e) {
+                randomAccessFile.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Finds the records not yet sent in a segment written by an earlier run.
+         */
+        private void scan() {
+            int position = 0;
+            readPosition = -1;
+            while (position + 4 <= buffer.capacity()) {
+                int length = buffer.getInt(position);
+                if (length == 0 || position + 4 + Math.abs((long) length) > buffer.capacity()) {
+                    break;
+                }
+                if (length > 0) {
+                    if (readPosition < 0) {
+                        readPosition = position;
+                    }
+                    pendingCount++;
+                    pendingBytes += length;
+                }
+                position += Math.abs(length) + 4;
+            }
+            writePosition = position;
+            if (readPosition < 0) {
+                readPosition = position;
+            }
+        }
+
+        private void skipConsumed() {
+            while (readPosition < writePosition) {
+                int length = buffer.getInt(readPosition);
+                if (length >= 0) {
+                    return;
+                }
+                readPosition += -length + 4;
+            }
+        }
+
+        private void close() {
+            try {
+                randomAccessFile.close();
+            } catch (IOException e) {
+                LoggerFactory.getLogger(Activator.class).debug(e.getMessage(), e);
+            }
+        }
+
+        private void delete() {
+            close();
+            if (!file.delete()) {
+                // sent records are marked, a segment left behind is found empty and deleted on the next start
+                LoggerFactory.getLogger(Activator.class).debug("Could not delete spool segment " + file);
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) Fiorano Software and affiliates. All rights reserved. http://www.fiorano.com
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package com.fiorano.openesb.management;
+
+import java.util.List;
+
+public class MicroserviceStatistics {
+    private String name;
+    private long timestamp;
+    private long heapMemoryUsed;
+    private long heapMemoryMax;
+    private long nonHeapMemoryUsed;
+    private int threadCount;
+    private double cpuUsage;
+    private List<MicroservicePortStatistics> ports;
+    // statistics as the service reports them when asked, set for services that do not push theirs
+    private String componentStats;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public long getHeapMemoryUsed() {
+        return heapMemoryUsed;
+    }
+
+    public void setHeapMemoryUsed(long heapMemoryUsed) {
+        this.heapMemoryUsed = heapMemoryUsed;
+    }
+
+    public long getHeapMemoryMax() {
+        return heapMemoryMax;
+    }
+
+    public void setHeapMemoryMax(long heapMemoryMax) {
+        this.heapMemoryMax = heapMemoryMax;
+    }
+
+    public long getNonHeapMemoryUsed() {
+        return nonHeapMemoryUsed;
+    }
+
+    public void setNonHeapMemoryUsed(long nonHeapMemoryUsed) {
+        this.nonHeapMemoryUsed = nonHeapMemoryUsed;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    public double getCpuUsage() {
+        return cpuUsage;
+    }
+
+    public void setCpuUsage(double cpuUsage) {
+        this.cpuUsage = cpuUsage;
+    }
+
+    public List<MicroservicePortStatistics> getPorts() {
+        return ports;
+    }
+
+    public void setPorts(List<MicroservicePortStatistics> ports) {
+        this.ports = ports;
+    }
+
+    public String getComponentStats() {
+        return componentStats;
+    }
+
+    public void setComponentStats(String componentStats) {
+        this.componentStats = componentStats;
+    }
+}
@@ -11,7 +11,15 @@ import com.fiorano.openesb.application.ApplicationRepository;
 import com.fiorano.openesb.application.aps.ApplicationStateDetails;
 import com.fiorano.openesb.application.aps.ServiceInstanceStateDetails;
 import com.fiorano.openesb.applicationcontroller.ApplicationController;
+import com.fiorano.openesb.microservice.ccp.event.common.data.ComponentStatistics;
 import com.fiorano.openesb.microservice.ccp.event.common.data.MemoryUsage;
+import com.fiorano.openesb.microservice.ccp.event.common.data.PortStatistics;
+import com.fiorano.openesb.route.metrics.LatencyHistogram;
+import com.fiorano.openesb.route.metrics.OperationMetrics;
+import com.fiorano.openesb.route.metrics.RouteMetrics;
+import com.fiorano.openesb.route.metrics.RouteMetricsRegistry;
+import com.fiorano.openesb.route.trace.ApplicationTrace;
+import com.fiorano.openesb.route.trace.MessageTracer;
 import com.fiorano.openesb.utils.exception.FioranoException;
 import org.apache.cxf.rs.security.cors.CrossOriginResourceSharing;
 import org.osgi.framework.BundleContext;
@@ -20,6 +28,7 @@ import org.osgi.framework.FrameworkUtil;
 import javax.ws.rs.*;
 import javax.ws.rs.core.MediaType;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 @CrossOriginResourceSharing(
         allowAllOrigins = true,
@@ -96,6 +105,172 @@ public class RestServiceImpl implements ApplicationsService {
         }
     }
 
+    @Path("/applications/{applicationName}/{applicationVersion}/routes")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Object getRouteStatistics(@PathParam("applicationName") String applicationName,
+                                     @PathParam("applicationVersion") String applicationVersion) {
+        try {
+            // routes are registered with the version as the application handle formats it
+            String version = String.valueOf(Float.parseFloat(applicationVersion));
+            List<RouteStatistics> routes = new ArrayList<>();
+            for (RouteMetrics metrics : RouteMetricsRegistry.getMetrics(applicationName, version)) {
+                RouteStatistics route = new RouteStatistics();
+                route.setName(metrics.getRouteName());
+                route.setReceivedCount(metrics.getReceivedCount());
+                route.setCompletedCount(metrics.getCompletedCount());
+                route.setFilteredCount(metrics.getFilteredCount());
+                route.setErrorCount(metrics.getErrorCount());
+                route.setBytes(metrics.getBytes());
+                route.setMeanLatencyMicros(metrics.getMeanLatencyMicros());
+                route.setLatencyP50Micros(metrics.getLatencyP50Micros());
+                route.setLatencyP99Micros(metrics.getLatencyP99Micros());
+                route.setLatencyP999Micros(metrics.getLatencyP999Micros());
+                route.setMaxLatencyMicros(metrics.getMaxLatencyMicros());
+                route.setSpoolPendingCount(metrics.getSpoolPendingCount());
+                route.setSpoolDroppedCount(metrics.getSpoolDroppedCount());
+                List<RouteOperationStatistics> operations = new ArrayList<>();
+                for (OperationMetrics operationMetrics : metrics.getOperations()) {
+                    RouteOperationStatistics operation = new RouteOperationStatistics();
+                    operation.setOperation(operationMetrics.getOperation());
+                    operation.setCount(operationMetrics.getCount());
+                    operation.setFilteredCount(operationMetrics.getFilteredCount());
+                    operation.setErrorCount(operationMetrics.getErrorCount());
+                    operation.setMeanLatencyMicros(operationMetrics.getMeanLatencyMicros());
+                    operation.setLatencyP50Micros(operationMetrics.getLatencyP50Micros());
+                    operation.setLatencyP99Micros(operationMetrics.getLatencyP99Micros());
+                    operation.setLatencyP999Micros(operationMetrics.getLatencyP999Micros());
+                    operation.setMaxLatencyMicros(operationMetrics.getMaxLatencyMicros());
+                    operations.add(operation);
+                }
+                route.setOperations(operations);
+                routes.add(route);
+            }
+            return routes;
+        } catch (Exception e) {
+            Response response = new Response();
+            response.setStatus(false);
+            response.setMessage(e.getMessage());
+            return response;
+        }
+    }
+
+    @Path("/applications/{applicationName}/{applicationVersion}/hops")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Object getHopStatistics(@PathParam("applicationName") String applicationName,
+                                   @PathParam("applicationVersion") String applicationVersion) {
+        try {
+            ApplicationTrace trace = MessageTracer.findTrace(applicationName, String.valueOf(Float.parseFloat(applicationVersion)));
+            List<HopStatistics> hops = new ArrayList<>();
+            if (trace != null) {
+                for (Map.Entry<String, LatencyHistogram> entry : trace.getHops().entrySet()) {
+                    LatencyHistogram latency = entry.getValue();
+                    HopStatistics hop = new HopStatistics();
+                    hop.setHop(entry.getKey());
+                    hop.setCount(latency.getCount());
+                    hop.setMeanLatencyMicros(TimeUnit.NANOSECONDS.toMicros(latency.getMean()));
+                    hop.setLatencyP50Micros(TimeUnit.NANOSECONDS.toMicros(latency.getValueAtPercentile(50)));
+                    hop.setLatencyP99Micros(TimeUnit.NANOSECONDS.toMicros(latency.getValueAtPercentile(99)));
+                    hop.setLatencyP999Micros(TimeUnit.NANOSECONDS.toMicros(latency.getValueAtPercentile(99.9)));
+                    hop.setMaxLatencyMicros(TimeUnit.NANOSECONDS.toMicros(latency.getMax()));
+                    hops.add(hop);
+                }
+            }
+            return hops;
+        } catch (Exception e) {
+            Response response = new Response();
+            response.setStatus(false);
+            response.setMessage(e.getMessage());
+            return response;
+        }
+    }
+
+    @Path("/applications/{applicationName}/{applicationVersion}/statistics")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Object getMicroServiceStatistics(@PathParam("applicationName") String applicationName,
+                                            @PathParam("applicationVersion") String applicationVersion) {
+        try {
+            ApplicationController controller = getController();
+            float version = Float.parseFloat(applicationVersion);
+            List<MicroserviceStatistics> services = new ArrayList<>();
+            // pushed by the services and read locally, no request goes to them
+            Map<String, ComponentStatistics> pushed = controller.getComponentStatistics(applicationName, version);
+            for (String serviceName : pushed.keySet()) {
+                List<ComponentStatistics> series = controller.getComponentStatisticsSeries(applicationName, version, serviceName);
+                if (!series.isEmpty()) {
+                    services.add(toMicroserviceStatistics(serviceName, series, series.size() - 1));
+                }
+            }
+            // services that do not push, or stopped pushing, are asked
+            ApplicationStateDetails stateOfApplication = controller.getCurrentStateOfApplication(applicationName, version, null);
+            @SuppressWarnings("unchecked") Enumeration<String> serviceNames = stateOfApplication.getAllServiceNames();
+            while (serviceNames.hasMoreElements()) {
+                String serviceName = serviceNames.nextElement();
+                if (!pushed.containsKey(serviceName) && controller.isMicroserviceRunning(applicationName, applicationVersion, serviceName)) {
+                    MicroserviceStatistics microserviceStatistics = new MicroserviceStatistics();
+                    microserviceStatistics.setName(serviceName);
+                    microserviceStatistics.setComponentStats(controller.getComponentStats(applicationName, version, serviceName, null));
+                    services.add(microserviceStatistics);
+                }
+            }
+            return services;
+        } catch (Exception e) {
+            Response response = new Response();
+            response.setStatus(false);
+            response.setMessage(e.getMessage());
+            return response;
+        }
+    }
+
+    @Path("/applications/{applicationName}/{applicationVersion}/{microServiceName}/statistics")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Object getMicroServiceStatistics(@PathParam("applicationName") String applicationName,
+                                            @PathParam("applicationVersion") String applicationVersion,
+                                            @PathParam("microServiceName") String microServiceName) {
+        try {
+            List<ComponentStatistics> series = getController().getComponentStatisticsSeries(applicationName,
+                    Float.parseFloat(applicationVersion), microServiceName);
+            List<MicroserviceStatistics> samples = new ArrayList<>();
+            for (int i = 0; i < series.size(); i++) {
+                samples.add(toMicroserviceStatistics(microServiceName, series, i));
+            }
+            return samples;
+        } catch (Exception e) {
+            Response response = new Response();
+            response.setStatus(false);
+            response.setMessage(e.getMessage());
+            return response;
+        }
+    }
+
+    private MicroserviceStatistics toMicroserviceStatistics(String serviceName, List<ComponentStatistics> series, int index) {
+        ComponentStatistics statistics = series.get(index);
+        MicroserviceStatistics microserviceStatistics = new MicroserviceStatistics();
+        microserviceStatistics.setName(serviceName);
+        microserviceStatistics.setTimestamp(statistics.getTimestamp());
+        microserviceStatistics.setHeapMemoryUsed(statistics.getHeapMemoryUsed());
+        microserviceStatistics.setHeapMemoryMax(statistics.getHeapMemoryMax());
+        microserviceStatistics.setNonHeapMemoryUsed(statistics.getNonHeapMemoryUsed());
+        microserviceStatistics.setThreadCount(statistics.getThreadCount());
+        microserviceStatistics.setCpuUsage(index > 0 ? statistics.getCpuUsage(series.get(index - 1)) : -1);
+        List<MicroservicePortStatistics> ports = new ArrayList<>();
+        for (PortStatistics portStatistics : statistics.getPorts().values()) {
+            MicroservicePortStatistics port = new MicroservicePortStatistics();
+            port.setName(portStatistics.getPortName());
+            port.setInputPort(portStatistics.isInputPort());
+            port.setMessageCount(portStatistics.getMessageCount());
+            port.setByteCount(portStatistics.getByteCount());
+            port.setErrorCount(portStatistics.getErrorCount());
+            port.setPendingCount(portStatistics.getPendingCount());
+            ports.add(port);
+        }
+        microserviceStatistics.setPorts(ports);
+        return microserviceStatistics;
+    }
+
     private String getLaunchMode(int launchType) {
         switch (launchType){
             case 1:
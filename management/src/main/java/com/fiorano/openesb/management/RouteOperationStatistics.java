@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) Fiorano Software and affiliates. All rights reserved. http://www.fiorano.com
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package com.fiorano.openesb.management;
+
+public class RouteOperationStatistics {
+    private String operation;
+    private long count;
+    private long filteredCount;
+    private long errorCount;
+    private long meanLatencyMicros;
+    private long latencyP50Micros;
+    private long latencyP99Micros;
+    private long latencyP999Micros;
+    private long maxLatencyMicros;
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public void setOperation(String operation) {
+        this.operation = operation;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    public long getFilteredCount() {
+        return filteredCount;
+    }
+
+    public void setFilteredCount(long filteredCount) {
+        this.filteredCount = filteredCount;
+    }
+
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    public void setErrorCount(long errorCount) {
+        this.errorCount = errorCount;
+    }
+
+    public long getMeanLatencyMicros() {
+        return meanLatencyMicros;
+    }
+
+    public void setMeanLatencyMicros(long meanLatencyMicros) {
+        this.meanLatencyMicros = meanLatencyMicros;
+    }
+
+    public long getLatencyP50Micros() {
+        return latencyP50Micros;
+    }
+
+    public void setLatencyP50Micros(long latencyP50Micros) {
+        this.latencyP50Micros = latencyP50Micros;
+    }
+
+    public long getLatencyP99Micros() {
+        return latencyP99Micros;
+    }
+
+    public void setLatencyP99Micros(long latencyP99Micros) {
+        this.latencyP99Micros = latencyP99Micros;
+    }
+
+    public long getLatencyP999Micros() {
+        return latencyP999Micros;
+    }
+
+    public void setLatencyP999Micros(long latencyP999Micros) {
+        this.latencyP999Micros = latencyP999Micros;
+    }
+
+    public long getMaxLatencyMicros() {
+        return maxLatencyMicros;
+    }
+
+    public void setMaxLatencyMicros(long maxLatencyMicros) {
+        this.maxLatencyMicros = maxLatencyMicros;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) Fiorano Software and affiliates. All rights reserved. http://www.fiorano.com
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package com.fiorano.openesb.management;
+
+import java.util.List;
+
+public class RouteStatistics {
+    private String name;
+    private long receivedCount;
+    private long completedCount;
+    private long filteredCount;
+    private long errorCount;
+    private long bytes;
+    private long meanLatencyMicros;
+    private long latencyP50Micros;
+    private long latencyP99Micros;
+    private long latencyP999Micros;
+    private long maxLatencyMicros;
+    private int spoolPendingCount;
+    private long spoolDroppedCount;
+    private List<RouteOperationStatistics> operations;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public long getReceivedCount() {
+        return receivedCount;
+    }
+
+    public void setReceivedCount(long receivedCount) {
+        this.receivedCount = receivedCount;
+    }
+
+    public long getCompletedCount() {
+        return completedCount;
+    }
+
+    public void setCompletedCount(long completedCount) {
+        this.completedCount = completedCount;
+    }
+
+    public long getFilteredCount() {
+        return filteredCount;
+    }
+
+    public void setFilteredCount(long filteredCount) {
+        this.filteredCount = filteredCount;
+    }
+
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    public void setErrorCount(long errorCount) {
+        this.errorCount = errorCount;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public void setBytes(long bytes) {
+        this.bytes = bytes;
+    }
+
+    public long getMeanLatencyMicros() {
+        return meanLatencyMicros;
+    }
+
+    public void setMeanLatencyMicros(long meanLatencyMicros) {
+        this.meanLatencyMicros = meanLatencyMicros;
+    }
+
+    public long getLatencyP50Micros() {
+        return latencyP50Micros;
+    }
+
+    public void setLatencyP50Micros(long latencyP50Micros) {
+        this.latencyP50Micros = latencyP50Micros;
+    }
+
+    public long getLatencyP99Micros() {
+        return latencyP99Micros;
+    }
+
+    public void setLatencyP99Micros(long latencyP99Micros) {
+        this.latencyP99Micros = latencyP99Micros;
+    }
+
+    public long getLatencyP999Micros() {
+        return latencyP999Micros;
+    }
+
+    public void setLatencyP999Micros(long latencyP999Micros) {
+        this.latencyP999Micros = latencyP999Micros;
+    }
+
+    public long getMaxLatencyMicros() {
+        return maxLatencyMicros;
+    }
+
+    public void setMaxLatencyMicros(long maxLatencyMicros) {
+        this.maxLatencyMicros = maxLatencyMicros;
+    }
+
+    public int getSpoolPendingCount() {
+        return spoolPendingCount;
+    }
+
+    public void setSpoolPendingCount(int spoolPendingCount) {
+        this.spoolPendingCount = spoolPendingCount;
+    }
+
+    public long getSpoolDroppedCount() {
+        return spoolDroppedCount;
+    }
+
+    public void setSpoolDroppedCount(long spoolDroppedCount) {
+        this.spoolDroppedCount = spoolDroppedCount;
+    }
+
+    public List<RouteOperationStatistics> getOperations() {
+        return operations;
+    }
+
+    public void setOperations(List<RouteOperationStatistics> operations) {
+        this.operations = operations;
+    }
+}
@@ -110,6 +110,22 @@ public class CCPEventManager implements MessageListener<Message> {
         }
     }
 
+    /**
+     * Hands an event to the listeners registered for its type as if the component had sent it. Used for components
+     * running in the server JVM, which have no CCP connection of their own.
+     *
+     * @param componentId <applicationName>__<applicationVersion>__<componentInstanceName>
+     */
+    public void dispatchLocalEvent(String componentId, ControlEvent event) throws Exception {
+        synchronized (this) {
+            Map<String, IEventListener> eventListenerMap = eventListeners.get(event.getEventType());
+            if (eventListenerMap != null) {
+                for (IEventListener listener : eventListenerMap.values())
+                    listener.onEvent(new ComponentCCPEvent(componentId, event));
+            }
+        }
+    }
+
     void registerCallback(ControlEvent event, CCPResponseCallback callback, String... componentIdentifiers) {
         synchronized (syncObj) {
             pendingResponses.put(event.getEventId(), callback);
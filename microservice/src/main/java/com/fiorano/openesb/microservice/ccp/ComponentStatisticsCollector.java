@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) Fiorano Software and affiliates. All rights reserved. http://www.fiorano.com
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.fiorano.openesb.microservice.ccp;
+
+import com.fiorano.openesb.microservice.ccp.event.common.DataEvent;
+import com.fiorano.openesb.microservice.ccp.event.common.DataRequestEvent;
+import com.fiorano.openesb.microservice.ccp.event.common.data.ComponentStatistics;
+import com.fiorano.openesb.microservice.ccp.event.common.data.Data;
+import com.fiorano.openesb.microservice.ccp.event.common.data.PortStatistics;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Collects the statistics a component pushes to the Peer Server. The component keeps the counters of its ports in
+ * the {@link PortStatistics} obtained from {@link #getPortStatistics}, and at a fixed interval sends the event
+ * returned by {@link #createEvent()} on its CCP topic.
+ * <p>
+ * Samples are sent as deltas against the previous one, with a full snapshot every fullSnapshotInterval samples so
+ * that the Peer Server recovers from a lost event. A component that fails to send an event calls {@link #reset()}
+ * so that the next sample is a full snapshot.
+ */
+public class ComponentStatisticsCollector {
+    private final int fullSnapshotInterval;
+    private final Map<String, PortStatistics> ports = new LinkedHashMap<>();
+    private long sequence;
+    private ComponentStatistics previous;
+
+    public ComponentStatisticsCollector(int fullSnapshotInterval) {
+        this.fullSnapshotInterval = Math.max(1, fullSnapshotInterval);
+    }
+
+    /**
+     * @return counters of the port, created on first use
+     */
+    public synchronized PortStatistics getPortStatistics(String portName, boolean inputPort) {
+        PortStatistics port = ports.get(portName);
+        if (port == null) {
+            port = new PortStatistics(portName, inputPort);
+            ports.put(portName, port);
+        }
+        return port;
+    }
+
+    /**
+     * @return data event carrying the current statistics, needing no reply
+     */
+    public DataEvent createEvent() {
+        Map<DataRequestEvent.DataIdentifier, Data> data = new HashMap<>();
+        data.put(DataRequestEvent.DataIdentifier.COMPONENT_STATISTICS, collect());
+        DataEvent event = new DataEvent();
+        event.setData(data);
+        event.setReplyNeeded(false);
+        return event;
+    }
+
+    /**
+     * @return the current statistics, set up to be sent as a delta against the previous sample or as a full snapshot
+     */
+    public synchronized ComponentStatistics collect() {
+        ComponentStatistics statistics = new ComponentStatistics();
+        statistics.setSequence(++sequence);
+        statistics.setTimestamp(System.currentTimeMillis());
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        statistics.setHeapMemoryUsed(memory.getHeapMemoryUsage().getUsed());
+        statistics.setHeapMemoryMax(memory.getHeapMemoryUsage().getMax());
+        statistics.setNonHeapMemoryUsed(memory.getNonHeapMemoryUsage().getUsed());
+        statistics.setThreadCount(ManagementFactory.getThreadMXBean().getThreadCount());
+        statistics.setAvailableProcessors(Runtime.getRuntime().availableProcessors());
+        statistics.setProcessCpuTime(getProcessCpuTime());
+        for (PortStatistics port : ports.values()) {
+            statistics.addPort(port.snapshot());
+        }
+        boolean full = previous == null || (sequence - 1) % fullSnapshotInterval == 0;
+        statistics.setBase(full ? null : previous);
+        previous = statistics;
+        return statistics;
+    }
+
+    /**
+     * Makes the next sample a full snapshot.
+     */
+    public synchronized void reset() {
+        previous = null;
+    }
+
+    // read through JMX so that no JVM specific interface is needed
+    private static long getProcessCpuTime() {
+        try {
+            Object cpuTime = ManagementFactory.getPlatformMBeanServer().getAttribute(
+                    new ObjectName(ManagementFactory.OPERATING_SYSTEM_MXBEAN_NAME), "ProcessCpuTime");
+            return cpuTime instanceof Long ? (Long) cpuTime : -1;
+        } catch (JMException e) {
+            return -1;
+        }
+    }
+}
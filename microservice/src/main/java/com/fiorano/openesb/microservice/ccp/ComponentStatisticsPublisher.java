@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) Fiorano Software and affiliates. All rights reserved. http://www.fiorano.com
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.fiorano.openesb.microservice.ccp;
+
+import com.fiorano.openesb.microservice.bundle.Activator;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pushes the statistics of a component running in the server JVM every {@link #INTERVAL} milliseconds, handing the
+ * event of a {@link ComponentStatisticsCollector} straight to the listeners of the {@link CCPEventManager} as the
+ * component has no CCP connection of its own. The memory, thread and CPU figures are those of the server JVM the
+ * component shares.
+ */
+public class ComponentStatisticsPublisher {
+    public static final long INTERVAL = 10000;
+    // a full snapshot every minute
+    private static final int FULL_SNAPSHOT_INTERVAL = 6;
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "Component Statistics Publisher");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final CCPEventManager ccpEventManager;
+    private final String componentId;
+    private final ComponentStatisticsCollector collector = new ComponentStatisticsCollector(FULL_SNAPSHOT_INTERVAL);
+    private ScheduledFuture<?> task;
+
+    /**
+     * @param componentId <applicationName>__<applicationVersion>__<componentInstanceName>
+     */
+    public ComponentStatisticsPublisher(CCPEventManager ccpEventManager, String componentId) {
+        this.ccpEventManager = ccpEventManager;
+        this.componentId = componentId;
+    }
+
+    public ComponentStatisticsCollector getCollector() {
+        return collector;
+    }
+
+    public synchronized void start() {
+        if (task == null) {
+            task = SCHEDULER.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    publish();
+                }
+            }, 0, INTERVAL, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public synchronized void stop() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+    }
+
+    private void publish() {
+        try {
+            ccpEventManager.dispatchLocalEvent(componentId, collector.createEvent());
+        } catch (Exception e) {
+            collector.reset();
+            LoggerFactory.getLogger(Activator.class).debug("Could not push statistics of " + componentId + " : " + e.getMessage());
+        }
+    }
+}
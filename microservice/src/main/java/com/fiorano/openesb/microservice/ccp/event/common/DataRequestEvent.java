@@ -129,7 +129,13 @@ public class DataRequestEvent extends ControlEvent {
         COMPONENT_CONFIGURATION,
         NAMED_CONFIGURATION,
         PORT_CONFIGURATION,
-        MANAGEABLE_PROPERTIES
+        MANAGEABLE_PROPERTIES,
+
+        /**
+         * This enumeration constant identifies the statistics components push periodically without a request.
+         * The data is represented by {@link com.fiorano.openesb.microservice.ccp.event.common.data.ComponentStatistics}.
+         */
+        COMPONENT_STATISTICS
     }
 
     /**
@@ -0,0 +1,354 @@
+/*
+ * Copyright (c) Fiorano Software and affiliates. All rights reserved. http://www.fiorano.com
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package com.fiorano.openesb.microservice.ccp.event.common.data;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Statistics a component pushes to the Peer Server periodically: the counters of its ports and the memory, threads
+ * and CPU time of its process. Unlike {@link ComponentStats} it is structured, and it is sent without a request.
+ * <p>
+ * A component sends a full snapshot first and then deltas against the snapshot it sent before, which carry the
+ * growth of the counters and only the ports that changed. Every sample has a sequence number; the receiver applies
+ * a delta with {@link #resolve(ComponentStatistics)} only to the sample just before it, and after a lost sample
+ * waits for the next full snapshot, which components send every few samples.
+ */
+public class ComponentStatistics extends Data {
+    private static final byte FORMAT_VERSION = 1;
+
+    private long sequence;
+    private boolean full = true;
+    private long timestamp;
+    private long heapMemoryUsed;
+    private long heapMemoryMax;
+    private long nonHeapMemoryUsed;
+    private int threadCount;
+    private int availableProcessors;
+    private long processCpuTime;
+    private Map<String, PortStatistics> ports = new LinkedHashMap<>();
+
+    // sample the deltas are encoded against when this is written, null for a full snapshot
+    private transient ComponentStatistics base;
+
+    /**
+     * Default Constructor
+     */
+    public ComponentStatistics() {
+    }
+
+    public DataType getDataType() {
+        return DataType.COMPONENT_STATISTICS;
+    }
+
+    /**
+     * Sets the sample this one is sent as a delta against. The base must be the sample sent just before this one.
+     *
+     * @param base previous sample, null to send this one as a full snapshot
+     */
+    public void setBase(ComponentStatistics base) {
+        this.base = base;
+        this.full = base == null;
+    }
+
+    /**
+     * Turns a received sample into absolute values.
+     *
+     * @param previous the resolved sample received before this one, null if there is none
+     * @return this sample with absolute values, null if it is a delta that does not follow the previous sample
+     */
+    public ComponentStatistics resolve(ComponentStatistics previous) {
+        if (full) {
+            return this;
+        }
+        if (previous == null || previous.sequence != sequence - 1) {
+            return null;
+        }
+        ComponentStatistics resolved = new ComponentStatistics();
+        resolved.sequence = sequence;
+        resolved.timestamp = timestamp;
+        resolved.heapMemoryUsed = heapMemoryUsed;
+        resolved.heapMemoryMax = heapMemoryMax;
+        resolved.nonHeapMemoryUsed = nonHeapMemoryUsed;
+        resolved.threadCount = threadCount;
+        resolved.availableProcessors = availableProcessors;
+        resolved.processCpuTime = previous.processCpuTime + processCpuTime;
+        for (PortStatistics port : previous.ports.values()) {
+            PortStatistics delta = ports.get(port.getPortName());
+            resolved.addPort(delta == null ? port : new PortStatistics(port.getPortName(), port.isInputPort(),
+                    port.getMessageCount() + delta.getMessageCount(), port.getByteCount() + delta.getByteCount(),
+                    port.getErrorCount() + delta.getErrorCount(), delta.getPendingCount()));
+        }
+        for (PortStatistics delta : ports.values()) {
+            if (!previous.ports.containsKey(delta.getPortName())) {
+                resolved.addPort(delta);
+            }
+        }
+        return resolved;
+    }
+
+    /**
+     * Reads the values from the bytesMessage and sets the properties of this data object.
+     *
+     * @param bytesMessage Bytes message
+     * @throws JMSException If an exception occurs while reading values from the message
+     * @see #toMessage(javax.jms.BytesMessage)
+     */
+    public void fromMessage(BytesMessage bytesMessage) throws JMSException {
+        byte[] bytes = new byte[bytesMessage.readInt()];
+        bytesMessage.readBytes(bytes);
+        try {
+            read(new DataInputStream(new ByteArrayInputStream(bytes)));
+        } catch (IOException e) {
+            JMSException exception = new JMSException("Invalid component statistics: " + e.getMessage());
+            exception.initCause(e);
+            throw exception;
+        }
+    }
+
+    /**
+     * Writes this data object to the bytesMessage.
+     *
+     * @param bytesMessage Bytes message
+     * @throws JMSException If an exception occurs while writing value to the message
+     * @see #fromMessage(javax.jms.BytesMessage)
+     */
+    public void toMessage(BytesMessage bytesMessage) throws JMSException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try {
+            write(new DataOutputStream(bytes));
+        } catch (IOException e) {
+            JMSException exception = new JMSException(e.getMessage());
+            exception.initCause(e);
+            throw exception;
+        }
+        // the length goes first so that readers of other data in the same event are not thrown off
+        bytesMessage.writeInt(bytes.size());
+        bytesMessage.writeBytes(bytes.toByteArray());
+    }
+
+    /**
+     * Reads the values from the data input stream and sets the properties of this data object.
+     *
+     * @param in Input data stream
+     * @throws IOException If an exception occurs while reading values from the stream
+     * @see #toStream(java.io.DataOutput)
+     */
+    public void fromStream(DataInput in) throws IOException {
+        read(in);
+    }
+
+    /**
+     * Writes this data object to the data stream.
+     *
+     * @param out Output data stream
+     * @throws IOException If an exception occurs while writing value to the stream
+     * @see #fromStream(java.io.DataInput)
+     */
+    public void toStream(DataOutput out) throws IOException {
+        write(out);
+    }
+
+    private void write(DataOutput out) throws IOException {
+        ComponentStatistics base = full ? null : this.base;
+        out.writeByte(FORMAT_VERSION);
+        out.writeBoolean(base == null);
+        writeVarLong(out, sequence);
+        writeVarLong(out, timestamp);
+        writeVarLong(out, heapMemoryUsed);
+        writeVarLong(out, heapMemoryMax);
+        writeVarLong(out, nonHeapMemoryUsed);
+        writeVarLong(out, threadCount);
+        writeVarLong(out, availableProcessors);
+        writeVarLong(out, processCpuTime - (base != null ? base.processCpuTime : 0));
+        List<PortStatistics> changed = new ArrayList<>();
+        for (PortStatistics port : ports.values()) {
+            PortStatistics previous = base != null ? base.ports.get(port.getPortName()) : null;
+            if (previous == null || previous.getMessageCount() != port.getMessageCount() || previous.getErrorCount() != port.getErrorCount()
+                    || previous.getByteCount() != port.getByteCount() || previous.getPendingCount() != port.getPendingCount()) {
+                changed.add(port);
+            }
+        }
+        writeVarLong(out, changed.size());
+        for (PortStatistics port : changed) {
+            PortStatistics previous = base != null ? base.ports.get(port.getPortName()) : null;
+            out.writeUTF(port.getPortName());
+            out.writeBoolean(port.isInputPort());
+            writeVarLong(out, port.getMessageCount() - (previous != null ? previous.getMessageCount() : 0));
+            writeVarLong(out, port.getByteCount() - (previous != null ? previous.getByteCount() : 0));
+            writeVarLong(out, port.getErrorCount() - (previous != null ? previous.getErrorCount() : 0));
+            writeVarLong(out, port.getPendingCount());
+        }
+    }
+
+    private void read(DataInput in) throws IOException {
+        byte version = in.readByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported component statistics format " + version);
+        }
+        full = in.readBoolean();
+        sequence = readVarLong(in);
+        timestamp = readVarLong(in);
+        heapMemoryUsed = readVarLong(in);
+        heapMemoryMax = readVarLong(in);
+        nonHeapMemoryUsed = readVarLong(in);
+        threadCount = (int) readVarLong(in);
+        availableProcessors = (int) readVarLong(in);
+        processCpuTime = readVarLong(in);
+        ports = new LinkedHashMap<>();
+        long portCount = readVarLong(in);
+        for (long i = 0; i < portCount; i++) {
+            addPort(new PortStatistics(in.readUTF(), in.readBoolean(), readVarLong(in), readVarLong(in), readVarLong(in), readVarLong(in)));
+        }
+    }
+
+    // zig-zag variable length encoding, small values of either sign take one or two bytes
+    private static void writeVarLong(DataOutput out, long value) throws IOException {
+        long zigZag = (value << 1) ^ (value >> 63);
+        while ((zigZag & ~0x7FL) != 0) {
+            out.writeByte((int) ((zigZag & 0x7F) | 0x80));
+            zigZag >>>= 7;
+        }
+        out.writeByte((int) zigZag);
+    }
+
+    private static long readVarLong(DataInput in) throws IOException {
+        long zigZag = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            zigZag |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (zigZag >>> 1) ^ -(zigZag & 1);
+            }
+        }
+        throw new IOException("Malformed variable length number");
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    /**
+     * @return true if the sample holds absolute values, false if it is a delta that still has to be resolved
+     */
+    public boolean isFull() {
+        return full;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public long getHeapMemoryUsed() {
+        return heapMemoryUsed;
+    }
+
+    public void setHeapMemoryUsed(long heapMemoryUsed) {
+        this.heapMemoryUsed = heapMemoryUsed;
+    }
+
+    public long getHeapMemoryMax() {
+        return heapMemoryMax;
+    }
+
+    public void setHeapMemoryMax(long heapMemoryMax) {
+        this.heapMemoryMax = heapMemoryMax;
+    }
+
+    public long getNonHeapMemoryUsed() {
+        return nonHeapMemoryUsed;
+    }
+
+    public void setNonHeapMemoryUsed(long nonHeapMemoryUsed) {
+        this.nonHeapMemoryUsed = nonHeapMemoryUsed;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    public int getAvailableProcessors() {
+        return availableProcessors;
+    }
+
+    public void setAvailableProcessors(int availableProcessors) {
+        this.availableProcessors = availableProcessors;
+    }
+
+    /**
+     * @return CPU time used by the component process in nanoseconds, -1 if the JVM does not report it
+     */
+    public long getProcessCpuTime() {
+        return processCpuTime;
+    }
+
+    public void setProcessCpuTime(long processCpuTime) {
+        this.processCpuTime = processCpuTime;
+    }
+
+    /**
+     * Returns the CPU usage of the process between two samples.
+     *
+     * @param previous an earlier sample of the same component
+     * @return fraction of the available processors used, -1 if it cannot be computed
+     */
+    public double getCpuUsage(ComponentStatistics previous) {
+        long elapsed = timestamp - previous.timestamp;
+        if (elapsed <= 0 || processCpuTime < 0 || previous.processCpuTime < 0 || availableProcessors <= 0) {
+            return -1;
+        }
+        return (processCpuTime - previous.processCpuTime) / (elapsed * 1000000.0 * availableProcessors);
+    }
+
+    public void addPort(PortStatistics port) {
+        ports.put(port.getPortName(), port);
+    }
+
+    public Map<String, PortStatistics> getPorts() {
+        return Collections.unmodifiableMap(ports);
+    }
+
+    /**
+     * Returns a string representation of the object.
+     * @return string representation of the object.
+     */
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("Heap Memory: ").append(heapMemoryUsed / 1024).append("K/").append(heapMemoryMax / 1024).append("K");
+        builder.append("; Non Heap Memory: ").append(nonHeapMemoryUsed / 1024).append("K");
+        builder.append("; Threads: ").append(threadCount);
+        for (PortStatistics port : ports.values()) {
+            builder.append("; ").append(port);
+        }
+        return builder.toString();
+    }
+}
@@ -46,6 +46,11 @@ public abstract class Data implements Serializable {
         NAMED_CONFIGURATION,
         PORT_CONFIGURATION,
         MANAGEABLE_PROPERTIES,
+
+        /**
+         * Constant representing data of type {@link ComponentStatistics}
+         */
+        COMPONENT_STATISTICS,
     }
 
     /**
@@ -111,6 +116,8 @@ public abstract class Data implements Serializable {
                 return new ManageableProperties();
             case PORT_CONFIGURATION:
                 return new PortConfiguration();
+            case COMPONENT_STATISTICS:
+                return new ComponentStatistics();
         }
         throw new IllegalArgumentException("INVALID_DATA_TYPE - " + dataType.name());
     }
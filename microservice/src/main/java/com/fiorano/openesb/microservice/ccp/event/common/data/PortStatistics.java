@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) Fiorano Software and affiliates. All rights reserved. http://www.fiorano.com
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package com.fiorano.openesb.microservice.ccp.event.common.data;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of one port of a component. Components update them as messages pass the port; the message, byte and
+ * error counts only grow, the pending count is the number of messages currently waiting on the port.
+ */
+public class PortStatistics implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String portName;
+    private final boolean inputPort;
+    private final AtomicLong messageCount = new AtomicLong();
+    private final AtomicLong byteCount = new AtomicLong();
+    private final AtomicLong errorCount = new AtomicLong();
+    private final AtomicLong pendingCount = new AtomicLong();
+
+    public PortStatistics(String portName, boolean inputPort) {
+        this.portName = portName;
+        this.inputPort = inputPort;
+    }
+
+    PortStatistics(String portName, boolean inputPort, long messageCount, long byteCount, long errorCount, long pendingCount) {
+        this(portName, inputPort);
+        this.messageCount.set(messageCount);
+        this.byteCount.set(byteCount);
+        this.errorCount.set(errorCount);
+        this.pendingCount.set(pendingCount);
+    }
+
+    /**
+     * Counts a message that passed the port.
+     * @param size size of the message in bytes
+     */
+    public void messageProcessed(long size) {
+        messageCount.incrementAndGet();
+        byteCount.addAndGet(size);
+    }
+
+    public void messageFailed() {
+        errorCount.incrementAndGet();
+    }
+
+    public void setPendingCount(long pendingCount) {
+        this.pendingCount.set(pendingCount);
+    }
+
+    /**
+     * @return copy of the current values, which no longer change
+     */
+    public PortStatistics snapshot() {
+        return new PortStatistics(portName, inputPort, getMessageCount(), getByteCount(), getErrorCount(), getPendingCount());
+    }
+
+    public String getPortName() {
+        return portName;
+    }
+
+    public boolean isInputPort() {
+        return inputPort;
+    }
+
+    public long getMessageCount() {
+        return messageCount.get();
+    }
+
+    public long getByteCount() {
+        return byteCount.get();
+    }
+
+    public long getErrorCount() {
+        return errorCount.get();
+    }
+
+    public long getPendingCount() {
+        return pendingCount.get();
+    }
+
+    public String toString() {
+        return portName + (inputPort ? " (in)" : " (out)") + ": messages=" + getMessageCount() + ", bytes=" + getByteCount()
+                + ", errors=" + getErrorCount() + ", pending=" + getPendingCount();
+    }
+}
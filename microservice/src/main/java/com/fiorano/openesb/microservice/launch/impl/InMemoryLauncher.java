@@ -8,6 +8,8 @@ package com.fiorano.openesb.microservice.launch.impl;
 
 import com.fiorano.openesb.application.service.Service;
 import com.fiorano.openesb.microservice.bundle.Activator;
+import com.fiorano.openesb.microservice.ccp.CCPEventManager;
+import com.fiorano.openesb.microservice.ccp.ComponentStatisticsPublisher;
 import com.fiorano.openesb.microservice.ccp.event.common.data.ComponentStats;
 import com.fiorano.openesb.microservice.launch.LaunchConfiguration;
 import com.fiorano.openesb.microservice.launch.Launcher;
@@ -34,9 +36,11 @@ public class InMemoryLauncher implements Launcher {
     private LaunchConfiguration launchConfiguration;
     private Class serviceClass;
     private ClassLoader serviceClassLoader;
+    private CCPEventManager ccpEventManager;
     private Logger logger = LoggerFactory.getLogger(Activator.class);
 
-    public InMemoryLauncher() throws FioranoException {
+    public InMemoryLauncher(CCPEventManager ccpEventManager) throws FioranoException {
+        this.ccpEventManager = ccpEventManager;
         classLoaderManager = new ClassLoaderManager();
     }
 
@@ -72,6 +76,7 @@ public class InMemoryLauncher implements Launcher {
                 Thread.currentThread().setContextClassLoader(serviceClassLoader);
                 startup.invoke(runtimeService, getArguments());
                 runtimeHandle.generateServiceBoundEvent();
+                runtimeHandle.statisticsPublisher.start();
             } catch (Throwable e) {
                 logger.error("Error starting service " + launchConfiguration.getApplicationName() + ":"
                         + launchConfiguration.getApplicationVersion() + "-" + launchConfiguration.getMicroserviceId() + ":" + launchConfiguration.getMicroserviceVersion()
@@ -124,10 +129,13 @@ public class InMemoryLauncher implements Launcher {
     }
 
     public class InMemoryRuntimeHandle extends MicroServiceRuntimeHandle {
+        private final ComponentStatisticsPublisher statisticsPublisher;
 
         public InMemoryRuntimeHandle(LaunchConfiguration launchConfiguration) {
             super(launchConfiguration);
             this.launchConfiguration = launchConfiguration;
+            this.statisticsPublisher = new ComponentStatisticsPublisher(ccpEventManager, launchConfiguration.getApplicationName()
+                    + "__" + launchConfiguration.getApplicationVersion().replace(".", "_") + "__" + launchConfiguration.getServiceName());
             isRunning = true;
             strStatus = EventStateConstants.SERVICE_HANDLE_BOUND;
         }
@@ -137,6 +145,7 @@ public class InMemoryLauncher implements Launcher {
         }
 
         public void stop() throws Exception {
+            statisticsPublisher.stop();
             ClassLoader serverClassLoader = Thread.currentThread().getContextClassLoader();
             try {
                 String icf = launchConfiguration.getAdditionalConfiguration().getICF();
@@ -25,7 +25,7 @@ public class MicroServiceLauncher implements Launcher<MicroServiceRuntimeHandle>
         if(launchConfiguration.getLaunchMode() == LaunchConfiguration.LaunchMode.SEPARATE_PROCESS) {
              launcher = new SeparateProcessLauncher(ccpEventManager);
         } else if(launchConfiguration.getLaunchMode() == LaunchConfiguration.LaunchMode.IN_MEMORY) {
-            launcher = new InMemoryLauncher();
+            launcher = new InMemoryLauncher(ccpEventManager);
         } else  if(launchConfiguration.getLaunchMode() == LaunchConfiguration.LaunchMode.MANUAL) {
             return new ManualLaunchProcessRuntimeHandle(launchConfiguration, new CCPCommandHelper(ccpEventManager,launchConfiguration));
         } else if (launchConfiguration.getLaunchMode() == LaunchConfiguration.LaunchMode.DOCKER) {
@@ -416,6 +416,19 @@ public interface IApplicationManager extends Remote{
      */
     String getComponentStats(String appGUID, float appVersion, String servInstName) throws ServiceException;
 
+    /**
+     * This method returns the statistics the service instance last pushed to the server. Unlike
+     * {@link #getComponentStats} the service is not asked, the statistics are read on the server.
+     *
+     * @param appGUID    appGUID
+     * @param appVersion Application Version
+     * @param servInstName Service instance Name
+     * @return String - statistics of the given service instance, null if the service has not pushed statistics recently
+     * @throws RemoteException  A communication-related exception that may occur during the execution of a remote method call
+     * @throws ServiceException ServiceException
+     */
+    String getComponentStatistics(String appGUID, float appVersion, String servInstName) throws RemoteException, ServiceException;
+
     /**
      * This method flushes the messages of the service instance
      *
@@ -15,6 +15,7 @@ import com.fiorano.openesb.application.aps.ServiceInstanceStateDetails;
 import com.fiorano.openesb.applicationcontroller.ApplicationController;
 import com.fiorano.openesb.applicationcontroller.ApplicationHandle;
 import com.fiorano.openesb.applicationcontroller.ApplicationLogManager;
+import com.fiorano.openesb.microservice.ccp.event.common.data.ComponentStatistics;
 import com.fiorano.openesb.microservice.repository.MicroServiceRepoManager;
 import com.fiorano.openesb.namedconfig.NamedConfigurationUtil;
 import com.fiorano.openesb.rmiconnector.Activator;
@@ -1061,6 +1062,12 @@ public class ApplicationManager extends AbstractRmiManager implements IApplicati
         }
     }
 
+    @Override
+    public String getComponentStatistics(String appGUID, float appVersion, String servInstName) throws ServiceException {
+        ComponentStatistics statistics = applicationController.getComponentStatistics(appGUID, appVersion, servInstName);
+        return statistics != null ? statistics.toString() : null;
+    }
+
     @Override
     public void flushMessages(String appGUID, float appVersion, String servInstName) throws ServiceException {
         try {
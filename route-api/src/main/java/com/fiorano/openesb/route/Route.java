@@ -6,6 +6,7 @@
  */
 package com.fiorano.openesb.route;
 
+import com.fiorano.openesb.route.metrics.RouteMetrics;
 import com.fiorano.openesb.transport.Message;
 import com.fiorano.openesb.transport.PortConfiguration;
 
@@ -21,4 +22,5 @@ public interface Route<M extends Message> {
     String getTargetDestinationName();
     void modifyHandler(RouteOperationConfiguration configuration) throws Exception;
     void removeHandler(RouteOperationConfiguration configuration) throws Exception;
+    RouteMetrics getMetrics();
 }
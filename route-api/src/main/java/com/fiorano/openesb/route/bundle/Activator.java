@@ -6,6 +6,7 @@
  */
 package com.fiorano.openesb.route.bundle;
 
+import com.fiorano.openesb.route.trace.MessageTracer;
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
 import org.slf4j.Logger;
@@ -21,6 +22,7 @@ public class Activator implements BundleActivator {
     }
 
     public void stop(BundleContext context) {
+        MessageTracer.stop();
         logger.trace("Stopping route api bundle.");
     }
 
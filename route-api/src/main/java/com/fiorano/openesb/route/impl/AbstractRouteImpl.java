@@ -8,23 +8,36 @@ package com.fiorano.openesb.route.impl;
 
 import com.fiorano.openesb.route.*;
 import com.fiorano.openesb.route.bundle.Activator;
+import com.fiorano.openesb.route.metrics.OperationMetrics;
+import com.fiorano.openesb.route.metrics.RouteMetrics;
 import com.fiorano.openesb.transport.Message;
+import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
 
 public abstract class AbstractRouteImpl<M extends Message> implements Route<M> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Activator.class);
+    private static final Stage[] NO_STAGES = new Stage[0];
+    private static final long MAX_RETRY_INTERVAL = 30000;
+    // the same error is logged with its stack trace at most once a minute for each route
+    private static final long ERROR_LOG_INTERVAL = 60000;
+
     protected String routeName;
-    protected Map<RouteOperationType, RouteOperationHandler> routeOperationHandlers;
+    // changed only through setHandler and removeHandler, which compile it into stages
+    private final Map<RouteOperationType, RouteOperationHandler> routeOperationHandlers = new EnumMap<>(RouteOperationType.class);
+    // the handlers in the order they run, replaced as a whole on every change so messages read it without locking
+    private volatile Stage[] stages = NO_STAGES;
+    private volatile int retryCount;
+    private volatile long retryInterval = 1000;
+    protected final ErrorLog errorLog = new ErrorLog(LOGGER, ERROR_LOG_INTERVAL);
+    private final RouteMetrics metrics;
 
     public AbstractRouteImpl(String routeName, List<RouteOperationConfiguration> operationConfigurations) throws Exception {
         this.routeName = routeName;
-        routeOperationHandlers = Collections.synchronizedMap(new LinkedHashMap<RouteOperationType, RouteOperationHandler>(operationConfigurations.size()));
-        if (!operationConfigurations.isEmpty()) {
-            for (RouteOperationConfiguration configuration : operationConfigurations) {
-                RouteOperationHandler routeOperationHandler = createHandler(configuration);
-                routeOperationHandlers.put(configuration.getRouteOperationType(), routeOperationHandler);
-            }
+        this.metrics = new RouteMetrics(routeName);
+        for (RouteOperationConfiguration configuration : operationConfigurations) {
+            setHandler(configuration.getRouteOperationType(), createHandler(configuration));
         }
     }
 
@@ -32,22 +45,163 @@ public abstract class AbstractRouteImpl<M extends Message> implements Route<M> {
         return routeName;
     }
 
+    public RouteMetrics getMetrics() {
+        return metrics;
+    }
+
     public void handleMessage(M message) {
-        if (!routeOperationHandlers.isEmpty()) {
+        Stage[] stages = this.stages;
+        metrics.received(getMessageSize(message));
+        if (stages.length > 0) {
+            long start = System.nanoTime();
+            MessageDocumentCache.attach(message);
+            CarryForwardContextCache.attach(message);
             try {
-                for(RouteOperationType operationType : RouteOperationType.values()){
-                    RouteOperationHandler handler = routeOperationHandlers.get(operationType);
-                    if(handler!=null){
-                        LoggerFactory.getLogger(Activator.class).trace("Handling Operation " + handler.toString());
-                        handler.handleOperation(message);
+                boolean trace = LOGGER.isTraceEnabled();
+                boolean completed = true;
+                for (Stage stage : stages) {
+                    if (trace) {
+                        LOGGER.trace("Handling Operation " + stage.handler);
+                    }
+                    if (!handle(stage, message)) {
+                        completed = false;
+                        break;
                     }
                 }
+                if (completed) {
+                    metrics.completed();
+                } else {
+                    metrics.failed();
+                }
             } catch (FilterMessageException e) {
-                LoggerFactory.getLogger(Activator.class).debug("Message skipped by selector : " + e.getMessage());// Message skipped by selector - debug log.
+                metrics.filtered();
+                LOGGER.debug("Message skipped by selector : " + e.getMessage());// Message skipped by selector - debug log.
             } catch (Throwable e) {
-                LoggerFactory.getLogger(Activator.class).error("Exception while applying handlers "+ e.getMessage() + " Trace " + Arrays.toString(e.getStackTrace()));
+                metrics.failed();
+                errorLog.error(routeName + ":" + e.getClass().getName(), "Exception while applying handlers on route " + routeName + " : " + e.getMessage(), e);
+            } finally {
+                MessageDocumentCache.detach(message);
+                CarryForwardContextCache.detach(message);
+                metrics.record(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * @return size of the body of the message for the route metrics, 0 if it is not known
+     */
+    protected long getMessageSize(M message) {
+        return 0;
+    }
+
+    /**
+     * Runs one operation on the message, trying it again up to the retry count when it fails and running it
+     * again cannot change the message twice. The retries wait on the thread that handles the messages.
+     * @return false if the operation failed and the message goes no further
+     */
+    @SuppressWarnings("unchecked")
+    private boolean handle(Stage stage, M message) throws FilterMessageException {
+        long wait = retryInterval;
+        long start = System.nanoTime();
+        try {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    stage.handler.handleOperation(message);
+                    return true;
+                } catch (FilterMessageException e) {
+                    stage.metrics.filtered();
+                    throw e;
+                } catch (Exception e) {
+                    if (attempt > retryCount || !stage.retryable) {
+                        stage.metrics.failed();
+                        return onOperationFailure(message, stage.type, e, attempt);
+                    }
+                    LOGGER.debug("Operation " + stage.type + " of route " + routeName + " failed, retrying : " + e.getMessage());
+                    try {
+                        Thread.sleep(wait);
+                    } catch (InterruptedException e1) {
+                        Thread.currentThread().interrupt();
+                        stage.metrics.failed();
+                        return onOperationFailure(message, stage.type, e, attempt);
+                    }
+                    wait = Math.min(wait * 2, MAX_RETRY_INTERVAL);
+                }
             }
+        } finally {
+            stage.metrics.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Called when an operation still fails on a message after the retries. A message that could not be transformed
+     * is forwarded as it is, any other message is discarded; routes that can send it elsewhere override this.
+     * @return true if the message goes on to the next operation
+     */
+    protected boolean onOperationFailure(M message, RouteOperationType operationType, Exception error, int attempts) {
+        if (operationType == RouteOperationType.ROUTE_TRANSFORM || operationType == RouteOperationType.APP_CONTEXT_TRANSFORM) {
+            errorLog.error(operationType + ":" + error.getClass().getName(), "Operation " + operationType + " of route " + routeName
+                    + " failed after " + attempts + " attempts, message forwarded untransformed : " + error.getMessage(), error);
+            return true;
+        }
+        errorLog.error(operationType + ":" + error.getClass().getName(), "Operation " + operationType + " of route " + routeName
+                + " failed after " + attempts + " attempts, message discarded : " + error.getMessage(), error);
+        return false;
+    }
+
+    /**
+     * @return true if running the operation again on a message it failed on does no harm. Selectors only read
+     * the message and a transformation changes it only once it succeeded, unless it has a jms xsl, which sets
+     * properties while it runs. Other operations are not tried again.
+     */
+    private static boolean isIdempotent(RouteOperationType operationType, RouteOperationHandler handler) {
+        switch (operationType) {
+            case SENDER_SELECTOR:
+            case APP_CONTEXT_XML_SELECTOR:
+            case BODY_XML_SELECTOR:
+                return true;
+            case ROUTE_TRANSFORM:
+            case APP_CONTEXT_TRANSFORM:
+                return handler instanceof TransformationOperationHandler && ((TransformationOperationHandler) handler).isIdempotent();
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Sets how often an operation that fails on a message is tried again, and the time before the first retry,
+     * which doubles for each further retry.
+     */
+    protected void setRetryPolicy(int retryCount, long retryInterval) {
+        this.retryCount = Math.max(0, retryCount);
+        this.retryInterval = Math.max(1, retryInterval);
+    }
+
+    /**
+     * Sets the handler of an operation, replacing the one the route had for it.
+     */
+    protected synchronized void setHandler(RouteOperationType operationType, RouteOperationHandler handler) {
+        if (handler == null) {
+            return;
+        }
+        routeOperationHandlers.put(operationType, handler);
+        compileHandlers();
+    }
+
+    private synchronized void removeHandler(RouteOperationType operationType) {
+        if (routeOperationHandlers.remove(operationType) != null) {
+            compileHandlers();
+        }
+    }
+
+    private void compileHandlers() {
+        Stage[] stages = new Stage[routeOperationHandlers.size()];
+        int i = 0;
+        // an enum map iterates in the order of the operation types, which is the order the handlers run in
+        for (Map.Entry<RouteOperationType, RouteOperationHandler> entry : routeOperationHandlers.entrySet()) {
+            stages[i++] = new Stage(entry.getKey(), entry.getValue(), metrics.getOperation(entry.getKey()),
+                    isIdempotent(entry.getKey(), entry.getValue()));
         }
+        this.stages = stages;
     }
 
     private RouteOperationHandler createHandler(RouteOperationConfiguration configuration) throws Exception {
@@ -66,31 +220,32 @@ public abstract class AbstractRouteImpl<M extends Message> implements Route<M> {
     }
 
     public void modifyHandler(RouteOperationConfiguration configuration) throws Exception {
-        if (configuration instanceof MessageCreationConfiguration) {
-             routeOperationHandlers.put(configuration.getRouteOperationType(),new MessageCreationHandler((MessageCreationConfiguration) configuration));
-        } else if (configuration instanceof CarryForwardContextConfiguration) {
-            routeOperationHandlers.put(configuration.getRouteOperationType(),new CarryForwardContextHandler((CarryForwardContextConfiguration) configuration));
-        } else if (configuration instanceof TransformationConfiguration) {
-            routeOperationHandlers.put(configuration.getRouteOperationType(),new TransformationOperationHandler((TransformationConfiguration) configuration));
-        } else if (configuration instanceof SelectorConfiguration) {
-            routeOperationHandlers.put(configuration.getRouteOperationType(),new XmlSelectorHandler((XmlSelectorConfiguration) configuration));
-        } else if (configuration instanceof SenderSelectorConfiguration) {
-            routeOperationHandlers.put(configuration.getRouteOperationType(),new SenderSelector((SenderSelectorConfiguration) configuration));
-        }
+        setHandler(configuration.getRouteOperationType(), createHandler(configuration));
     }
 
     public void removeHandler(RouteOperationConfiguration configuration) throws Exception {
-        if (configuration instanceof MessageCreationConfiguration) {
-            routeOperationHandlers.remove(configuration.getRouteOperationType());
-        } else if (configuration instanceof CarryForwardContextConfiguration) {
-            routeOperationHandlers.remove(configuration.getRouteOperationType());
-        } else if (configuration instanceof TransformationConfiguration) {
-            routeOperationHandlers.remove(configuration.getRouteOperationType());
-        } else if (configuration instanceof SelectorConfiguration) {
-            routeOperationHandlers.remove(configuration.getRouteOperationType());
-        } else if (configuration instanceof SenderSelectorConfiguration) {
-            routeOperationHandlers.remove(configuration.getRouteOperationType());
+        if (hasHandler(configuration)) {
+            removeHandler(configuration.getRouteOperationType());
         }
     }
 
+    private static boolean hasHandler(RouteOperationConfiguration configuration) {
+        return configuration instanceof MessageCreationConfiguration || configuration instanceof CarryForwardContextConfiguration
+                || configuration instanceof TransformationConfiguration || configuration instanceof SelectorConfiguration
+                || configuration instanceof SenderSelectorConfiguration;
+    }
+
+    private static class Stage {
+        private final RouteOperationType type;
+        private final RouteOperationHandler handler;
+        private final OperationMetrics metrics;
+        private final boolean retryable;
+
+        private Stage(RouteOperationType type, RouteOperationHandler handler, OperationMetrics metrics, boolean retryable) {
+            this.type = type;
+            this.handler = handler;
+            this.metrics = metrics;
+            this.retryable = retryable;
+        }
+    }
 }
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) Fiorano Software and affiliates. All rights reserved. http://www.fiorano.com
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.fiorano.openesb.route.impl;
+
+import com.fiorano.openesb.transport.Message;
+import com.fiorano.openesb.transport.impl.jms.JMSMessage;
+
+import javax.jms.JMSException;
+
+/**
+ * Per message copy of the carry forward context, so that the handlers of a route decode the
+ * JSON message property once and the route encodes it once, before the message is sent.
+ * <p>
+ * AbstractRouteImpl attaches a cache to every message it handles and the route flushes it
+ * before sending. Handlers that change the context must hand it back through
+ * {@link #setContext(CarryForwardContext)}; code that reads the message property directly must
+ * {@link #flush()} first. Without an attached cache, changes are written to the message at once.
+ */
+public class CarryForwardContextCache {
+
+    public static final String ATTRIBUTE_NAME = CarryForwardContextCache.class.getName();
+
+    private final JMSMessage message;
+    private final boolean writeThrough;
+    private CarryForwardContext context;
+    private boolean modified;
+
+    private CarryForwardContextCache(JMSMessage message, boolean writeThrough) {
+        this.message = message;
+        this.writeThrough = writeThrough;
+    }
+
+    public static CarryForwardContextCache attach(Message message) {
+        if (!(message instanceof JMSMessage)) {
+            return null;
+        }
+        CarryForwardContextCache cache = new CarryForwardContextCache((JMSMessage) message, false);
+        message.setAttribute(ATTRIBUTE_NAME, cache);
+        return cache;
+    }
+
+    public static void detach(Message message) {
+        message.removeAttribute(ATTRIBUTE_NAME);
+    }
+
+    /**
+     * @return the cache attached to the message, or a write through cache if none is attached
+     */
+    public static CarryForwardContextCache get(JMSMessage message) {
+        Object cache = message.getAttribute(ATTRIBUTE_NAME);
+        return cache instanceof CarryForwardContextCache ? (CarryForwardContextCache) cache : new CarryForwardContextCache(message, true);
+    }
+
+    /**
+     * Returns the carry forward context of the message, decoding it only on first use.
+     */
+    public CarryForwardContext getContext() throws JMSException {
+        if (context == null) {
+            context = JmsMessageUtil.getCarryForwardContext(message.getMessage());
+        }
+        return context;
+    }
+
+    public String getApplicationContext() throws JMSException {
+        CarryForwardContext carryForwardContext = getContext();
+        return carryForwardContext != null ? carryForwardContext.getAppContext() : null;
+    }
+
+    public void setContext(CarryForwardContext context) throws JMSException {
+        if (context == null) {
+            return;
+        }
+        this.context = context;
+        this.modified = true;
+        if (writeThrough) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes the context to the message if it has been changed since it was decoded or last written. The plain
+     * copy of the sources is only written while some route lets the broker evaluate its sender selector.
+     */
+    public void flush() throws JMSException {
+        if (modified) {
+            JmsMessageUtil.setCarryForwardContext(message.getWritableMessage(), context, SelectorPlanner.isSourceContextsRequired());
+            modified = false;
+        }
+    }
+
+    /**
+     * Discards the decoded context, for use after the message property has been written by other means.
+     */
+    public void invalidate() {
+        context = null;
+        modified = false;
+    }
+}
@@ -13,7 +13,10 @@ import com.fiorano.openesb.application.application.Transformation;
 import com.fiorano.openesb.route.FilterMessageException;
 import com.fiorano.openesb.route.RouteOperationHandler;
 import com.fiorano.openesb.route.bundle.Activator;
+import com.fiorano.openesb.route.trace.ApplicationTrace;
+import com.fiorano.openesb.route.trace.MessageTracer;
 import com.fiorano.openesb.transport.impl.jms.JMSMessage;
+import com.fiorano.openesb.utils.MessagePropertyNames;
 import com.fiorano.openesb.utils.SourceContext;
 import com.fiorano.openesb.utils.StringUtil;
 import com.fiorano.openesb.utils.exception.FioranoException;
@@ -33,6 +36,9 @@ public class CarryForwardContextHandler implements RouteOperationHandler<JMSMess
     private String serviceInstName;
     private Application application;
     private Logger logger;
+    // null if the route has no application to trace for
+    private ApplicationTrace trace;
+    private String tracePoint;
 
 
     private final String APPLICATION_CONTEXT = "APPLICATION_CONTEXT";
@@ -44,28 +50,34 @@ public class CarryForwardContextHandler implements RouteOperationHandler<JMSMess
         this.serviceInstName = carryForwardContextConfiguration.getServiceInstanceName();
         this.port = carryForwardContextConfiguration.getPortInstance();
         this.logger = LoggerFactory.getLogger(Activator.class);
+        if (application != null && port != null) {
+            this.trace = MessageTracer.getTrace(application.getGUID(), String.valueOf(application.getVersion()));
+            this.tracePoint = serviceInstName + "." + port.getName();
+        }
     }
 
     @Override
     public void handleOperation(JMSMessage message) throws FilterMessageException, FioranoException {
-        Message jmsMessage = message.getMessage();
+        // properties are read from the shared message; the writable copy is only
+        // requested by the branches that actually change a property
+        CarryForwardContextCache contextCache = CarryForwardContextCache.get(message);
 
         CarryForwardContext carryForwardContext = null;
         try {
-            carryForwardContext = JmsMessageUtil.getCarryForwardContext(jmsMessage);
+            carryForwardContext = contextCache.getContext();
         } catch (Exception e) {
             throw new FioranoException(e);
         }
         if (port.getAppContextAction().equals(PortInstance.STORE_APP_CONTEXT)) {
             if (carryForwardContext != null && !StringUtil.isEmpty(carryForwardContext.getAppContext())) {
                 try {
-                    jmsMessage.setStringProperty(application.getGUID() + "__" + application.getVersion() + "__" + APPLICATION_CONTEXT, carryForwardContext.getAppContext());
+                    setStringProperty(message, application.getGUID() + "__" + application.getVersion() + "__" + APPLICATION_CONTEXT, carryForwardContext.getAppContext());
                 } catch (JMSException e) {
                     logger.error(e.getMessage(), e);
                 }
                 carryForwardContext.setAppContext(null);
                 try {
-                    JmsMessageUtil.setCarryForwardContext(jmsMessage, carryForwardContext);
+                    contextCache.setContext(carryForwardContext);
                 } catch (Exception e) {
                     throw new FioranoException(e);
                 }
@@ -73,20 +85,20 @@ public class CarryForwardContextHandler implements RouteOperationHandler<JMSMess
         } else if (port.getAppContextAction().equals(PortInstance.RESTORE_APP_CONTEXT)) {
             String appContext = null;
             try {
-                appContext = jmsMessage.getStringProperty(application.getGUID() + "__" + application.getVersion() + "__" + APPLICATION_CONTEXT);
+                appContext = message.getMessage().getStringProperty(application.getGUID() + "__" + application.getVersion() + "__" + APPLICATION_CONTEXT);
             } catch (JMSException e) {
                 logger.error(e.getMessage(), e);
             }
             if (appContext != null) {
                 try {
-                    jmsMessage.setStringProperty(application.getGUID() + "__" + application.getVersion() + "__" + APPLICATION_CONTEXT, null);
+                    message.getWritableMessage().setStringProperty(application.getGUID() + "__" + application.getVersion() + "__" + APPLICATION_CONTEXT, null);
                 } catch (JMSException e) {
                     e.printStackTrace();
                 }
                 if (carryForwardContext != null) {
                     carryForwardContext.setAppContext(appContext);
                     try {
-                        JmsMessageUtil.setCarryForwardContext(jmsMessage, carryForwardContext);
+                        contextCache.setContext(carryForwardContext);
                     } catch (JMSException e) {
                         e.printStackTrace();
                     }
@@ -102,29 +114,31 @@ public class CarryForwardContextHandler implements RouteOperationHandler<JMSMess
                 carryForwardContext.setAppContext(defaultAppContext);
             }
             try {
-                JmsMessageUtil.setCarryForwardContext(jmsMessage, carryForwardContext);
+                contextCache.setContext(carryForwardContext);
             } catch (JMSException e) {
                 e.printStackTrace();
             }
         }
         //set application environment
         try {
-            JmsMessageUtil.setEventProcessEnv(jmsMessage, application.getLabel());
+            if (application.getLabel() != null) {
+                setStringProperty(message, MessagePropertyNames.EVENT_PROCESS_ENVIRONMENT, application.getLabel());
+            }
         } catch (JMSException e) {
             e.printStackTrace();
         }
         try {
 
             if (isInputPort()) {
-                jmsMessage.setStringProperty("ESBX__SYSTEM__INPUT_PORT", port.getName());
+                setStringProperty(message, "ESBX__SYSTEM__INPUT_PORT", port.getName());
             } else {
-                jmsMessage.setStringProperty("ESBX__SYSTEM__OUTPUT_PORT", port.getName());
+                setStringProperty(message, "ESBX__SYSTEM__OUTPUT_PORT", port.getName());
             }
         } catch (JMSException e) {
             e.printStackTrace();
         }
         try {
-            carryForwardContext = JmsMessageUtil.getCarryForwardContext(jmsMessage);
+            carryForwardContext = contextCache.getContext();
         } catch (JMSException e) {
             e.printStackTrace();
         }
@@ -141,7 +155,7 @@ public class CarryForwardContextHandler implements RouteOperationHandler<JMSMess
             carryForwardContext.addContext(sourceContext);
 
             try {
-                JmsMessageUtil.setCarryForwardContext(jmsMessage, carryForwardContext);
+                contextCache.setContext(carryForwardContext);
             } catch (JMSException e) {
                 e.printStackTrace();
             }
@@ -152,7 +166,7 @@ public class CarryForwardContextHandler implements RouteOperationHandler<JMSMess
             //
             // update application context
             try {
-                addSourceContext(jmsMessage);
+                addSourceContext(contextCache);
             } catch (JMSException e) {
                 e.printStackTrace();
             }
@@ -169,6 +183,12 @@ public class CarryForwardContextHandler implements RouteOperationHandler<JMSMess
         }
 
         if (port.getName().endsWith(PortInstance.EXCEPTION_PORT_NAME)) {
+            Message jmsMessage;
+            try {
+                jmsMessage = message.getWritableMessage();
+            } catch (JMSException e) {
+                throw new FioranoException(e);
+            }
             try {
                 JmsMessageUtil.setPortName(jmsMessage, port.getName());
             } catch (JMSException e) {
@@ -183,11 +203,34 @@ public class CarryForwardContextHandler implements RouteOperationHandler<JMSMess
 
             }
         }
+        if (trace != null) {
+            stampTrace(contextCache);
+        }
+    }
+
+    /**
+     * Sets a string property, making the message writable only when the value actually changes.
+     */
+    private static void setStringProperty(JMSMessage message, String name, String value) throws JMSException {
+        if (value.equals(message.getMessage().getStringProperty(name))) {
+            return;
+        }
+        message.getWritableMessage().setStringProperty(name, value);
+    }
+
+    private void stampTrace(CarryForwardContextCache contextCache) {
+        try {
+            CarryForwardContext context = contextCache.getContext();
+            if (context != null && trace.stamp(context, tracePoint)) {
+                contextCache.setContext(context);
+            }
+        } catch (JMSException e) {
+            logger.warn("Could not trace message at " + tracePoint + " : " + e.getMessage());
+        }
     }
 
-    private void addSourceContext(Message msg) throws JMSException {
-        CarryForwardContext carryForwardContext = (CarryForwardContext)
-                JmsMessageUtil.getCarryForwardContext(msg);
+    private void addSourceContext(CarryForwardContextCache contextCache) throws JMSException {
+        CarryForwardContext carryForwardContext = contextCache.getContext();
 
         if (carryForwardContext == null)
             carryForwardContext = new CarryForwardContext();
@@ -198,7 +241,7 @@ public class CarryForwardContextHandler implements RouteOperationHandler<JMSMess
         sourceContext.setSrvInstName(serviceInstName);
         carryForwardContext.addContext(sourceContext);
 
-        JmsMessageUtil.setCarryForwardContext(msg, carryForwardContext);
+        contextCache.setContext(carryForwardContext);
     }
 
     public boolean isInputPort() {
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) Fiorano Software and affiliates. All rights reserved. http://www.fiorano.com
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.fiorano.openesb.route.impl;
+
+import org.slf4j.Logger;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Logs errors that can repeat for every message, such as a failing mapping, at most once per interval for each
+ * kind of error. The errors in between are only counted, and the count is added to the next error logged.
+ */
+public class ErrorLog {
+
+    private final Logger logger;
+    private final long interval;
+    private final ConcurrentMap<String, Window> windows = new ConcurrentHashMap<>();
+
+    /**
+     * @param interval time in milliseconds during which an error of the same kind is logged once
+     */
+    public ErrorLog(Logger logger, long interval) {
+        this.logger = logger;
+        this.interval = interval;
+    }
+
+    /**
+     * @param key     kind of the error, errors with the same key are rate limited together
+     */
+    public void error(String key, String message, Throwable error) {
+        Window window = windows.get(key);
+        if (window == null) {
+            Window existing = windows.putIfAbsent(key, window = new Window());
+            if (existing != null) {
+                window = existing;
+            }
+        }
+        long suppressed = window.acquire(System.currentTimeMillis(), interval);
+        if (suppressed < 0) {
+            return;
+        }
+        if (suppressed > 0) {
+            message = message + " (" + suppressed + " more in the last " + interval / 1000 + " s)";
+        }
+        logger.error(message, error);
+    }
+
+    private static class Window {
+        private long start = Long.MIN_VALUE;
+        private long suppressed;
+
+        /**
+         * @return number of errors suppressed since the last one logged, -1 if this one is to be suppressed
+         */
+        private synchronized long acquire(long now, long interval) {
+            if (start != Long.MIN_VALUE && now - start < interval) {
+                suppressed++;
+                return -1;
+            }
+            start = now;
+            long count = suppressed;
+            suppressed = 0;
+            return count;
+        }
+    }
+}
@@ -58,8 +58,10 @@ public class JMSMessageHandler extends DefaultHandler{
             }
             else if (qName.equals("Text"))
             {
-                if (record instanceof TextMessage)
+                if (record instanceof TextMessage) {
+                    record.clearBody();
                     ((TextMessage) record).setText(contents.toString());
+                }
             } else if ("RemoveProperty".equals(qName)) {
                 if (record instanceof Message) {
                    throw new UnsupportedOperationException("Remove operation is not supported");
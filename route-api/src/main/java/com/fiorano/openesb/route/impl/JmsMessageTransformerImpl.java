@@ -10,20 +10,17 @@ import java.io.StringReader;
 import java.io.StringWriter;
 import java.util.*;
 import javax.jms.Message;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Templates;
+import javax.xml.transform.Result;
 import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.sax.SAXResult;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 
 import com.fiorano.openesb.route.JMSMessageTransformer;
-import org.xml.sax.InputSource;
-import com.fiorano.openesb.utils.SAXUtil;
 import com.fiorano.openesb.utils.TransformerUtil;
 import com.fiorano.openesb.utils.StringUtil;
-
-import sun.misc.BASE64Encoder;
+import org.w3c.dom.Document;
 
 public class JmsMessageTransformerImpl implements JMSMessageTransformer {
     // xsl that needs to be applied
@@ -33,22 +30,33 @@ public class JmsMessageTransformerImpl implements JMSMessageTransformer {
     // transformer type
     protected String transformerType;
 
-    // templates
-    private Templates templates = null;
-    private Templates jmsTemplates = null;
+    // maximum number of idle transformers kept for each xsl
+    private final int poolSize;
+
+    // transformers created from the shared compiled templates
+    private TransformerPool bodyTransformers = null;
+    private TransformerPool jmsTransformers = null;
+
+    // parameters the stylesheets declare, only those are bound for each message
+    private StylesheetParameters bodyParameters = null;
+    private StylesheetParameters jmsParameters = null;
 
     // default APP Context
     private String defaultAppContext = null;
-    private Transformer jmsTransformer;
-    private Transformer bodyTransformer;
 
     public JmsMessageTransformerImpl(String xsl, String transformerType)
             throws Exception {
-        setXSL(xsl, transformerType);
+        this(xsl, null, transformerType);
     }
 
     public JmsMessageTransformerImpl(String xsl, String jmsXSL, String transformerType)
             throws Exception {
+        this(xsl, jmsXSL, transformerType, Runtime.getRuntime().availableProcessors());
+    }
+
+    public JmsMessageTransformerImpl(String xsl, String jmsXSL, String transformerType, int poolSize)
+            throws Exception {
+        this.poolSize = poolSize;
         setXSL(xsl, transformerType);
         setJMSXSL(jmsXSL, transformerType);
     }
@@ -77,17 +85,13 @@ public class JmsMessageTransformerImpl implements JMSMessageTransformer {
         this.transformerType = transformerType;
 
         if (xslString == null) {
-            templates = null;
-            bodyTransformer = null;
+            bodyTransformers = null;
+            bodyParameters = null;
         } else {
-            TransformerFactory factory = null;
-
             if (StringUtil.isEmpty(this.transformerType))
                 this.transformerType = TransformerUtil.XALAN_TRANSFORMER_FACTORY;
-            factory = TransformerUtil.createFactory(this.transformerType);
-            templates = factory.newTemplates(new StreamSource(new StringReader(xslString)));
-            bodyTransformer = templates.newTransformer();
-
+            bodyTransformers = new TransformerPool(TemplatesCache.getTemplates(this.transformerType, xslString), poolSize);
+            bodyParameters = StylesheetParameters.scan(xslString);
         }
 
     }
@@ -101,57 +105,85 @@ public class JmsMessageTransformerImpl implements JMSMessageTransformer {
         this.transformerType = transformerType;
 
         if (jmsXslString == null) {
-            jmsTemplates = null;
-            jmsTransformer = null;
+            jmsTransformers = null;
+            jmsParameters = null;
         } else {
-            TransformerFactory factory = null;
-
             if (StringUtil.isEmpty(this.transformerType))
                 this.transformerType = TransformerUtil.XALAN_TRANSFORMER_FACTORY;
-            factory = TransformerUtil.createFactory(this.transformerType);
-
-            jmsTemplates = factory.newTemplates(new StreamSource(new StringReader(jmsXslString)));
-            jmsTransformer = jmsTemplates.newTransformer();
-
+            jmsTransformers = new TransformerPool(TemplatesCache.getTemplates(this.transformerType, jmsXslString), poolSize);
+            jmsParameters = StylesheetParameters.scan(jmsXslString);
         }
     }
 
     public String transform(Message msg)
             throws Exception {
-        if (jmsTemplates != null) {
-            if (transformerType.equalsIgnoreCase("net.sf.saxon.TransformerFactoryImpl")) {
-                jmsTransformer = jmsTemplates.newTransformer();
+        return transform(msg, new MessageDocumentCache());
+    }
+
+    public String transform(Message msg, MessageDocumentCache documentCache)
+            throws Exception {
+        return transform(msg, documentCache, null);
+    }
+
+    /**
+     * Transforms the message, taking the application context and the body from the documents
+     * already parsed for this message where possible, and the application context from the
+     * context cache when one is given. The context cache must have been flushed to the message.
+     */
+    public String transform(Message msg, MessageDocumentCache documentCache, CarryForwardContextCache contextCache)
+            throws Exception {
+        TransformerPool jmsTransformers = this.jmsTransformers;
+        if (jmsTransformers != null) {
+            // the jms xsl output is fed straight into the handler rather than serialized and parsed again
+            _transform(msg, jmsTransformers, jmsParameters, documentCache, contextCache, new SAXResult(new JMSMessageHandler(msg)));
+            if (contextCache != null) {
+                // the jms xsl may have rewritten the context property
+                contextCache.invalidate();
             }
-            jmsTransformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
-            jmsTransformer.setOutputProperty(OutputKeys.METHOD, "xml");
-            String jmsResult = _transform(msg, jmsTransformer);
-            InputSource is = new InputSource(new StringReader(jmsResult));
-            SAXUtil.createSAXParser(false, false, false).parse(is, new JMSMessageHandler(msg));
         }
 
-        if (templates == null)
+        TransformerPool bodyTransformers = this.bodyTransformers;
+        if (bodyTransformers == null)
             return JmsMessageUtil.getTextData(msg);
 
-        if (transformerType.equalsIgnoreCase("net.sf.saxon.TransformerFactoryImpl")) {
-            bodyTransformer = templates.newTransformer();
+        StringWriter docWriter = new StringWriter();
+        _transform(msg, bodyTransformers, bodyParameters, documentCache, contextCache, new StreamResult(docWriter));
+        return docWriter.toString();
+    }
+
+    private void _transform(Message msg, TransformerPool transformers, StylesheetParameters parameters,
+                            MessageDocumentCache documentCache, CarryForwardContextCache contextCache, Result result)
+            throws Exception {
+        Transformer transformer = transformers.borrow();
+        try {
+            _transform(msg, transformer, parameters, documentCache, contextCache, result);
+        } finally {
+            transformers.release(transformer);
         }
-        return _transform(msg, bodyTransformer);
     }
 
-    private String _transform(Message msg, Transformer transformer)
+    private void _transform(Message msg, Transformer transformer, StylesheetParameters parameters,
+                            MessageDocumentCache documentCache, CarryForwardContextCache contextCache, Result result)
             throws Exception {
         transformer.setParameter("_TIF_MESSAGE_", msg);
 
         // set headers in transformer
-        HashMap header = JmsMessageUtil.getAllProperties(msg);
+        if (parameters.isAllDeclared()) {
+            HashMap header = JmsMessageUtil.getAllProperties(msg);
 
-        if (header != null) {
             for (Object o : header.entrySet()) {
                 Map.Entry entry = (Map.Entry) o;
-                String key = (String) entry.getKey();
                 Object value = entry.getValue();
                 if (value != null)
-                    transformer.setParameter("_TIF_HEADER_" + key, value);
+                    transformer.setParameter("_TIF_HEADER_" + entry.getKey(), value);
+            }
+        } else {
+            for (String name : parameters.getNames()) {
+                if (name.startsWith("_TIF_HEADER_")) {
+                    Object value = JmsMessageUtil.getPropertyValue(name.substring("_TIF_HEADER_".length()), msg);
+                    if (value != null)
+                        transformer.setParameter(name, value);
+                }
             }
         }
 
@@ -161,31 +193,42 @@ public class JmsMessageTransformerImpl implements JMSMessageTransformer {
         if (messageBody != null)
             transformer.setParameter("_TIF_BODY_TEXT_", messageBody);
 
-        // set bytes in transformer
-        if (JmsMessageUtil.getBytesData(msg) != null) {
-            // uuencode byte array
-            String encodedBytes = (new BASE64Encoder()).encodeBuffer(JmsMessageUtil.getBytesData(msg));
+        // set bytes in transformer, encoding is only paid for by stylesheets that use them
+        if (parameters.isDeclared("_TIF_BODY_BYTE_")) {
+            String encodedBytes = MessageFunctions.encode(JmsMessageUtil.getBytesData(msg));
 
-            transformer.setParameter("_TIF_BODY_BYTE_", encodedBytes);
+            if (encodedBytes != null)
+                transformer.setParameter("_TIF_BODY_BYTE_", encodedBytes);
         }
 
-        Hashtable attachments = JmsMessageUtil.getAttachments(msg);
-
-        if (attachments != null) {
-            Enumeration attachmentNames = attachments.keys();
+        if (parameters.isAllDeclared()) {
+            Hashtable attachments = JmsMessageUtil.getAttachments(msg);
 
-            while (attachmentNames.hasMoreElements()) {
-                String name = (String) attachmentNames.nextElement();
+            if (attachments != null) {
+                Enumeration attachmentNames = attachments.keys();
 
-                // uuencode attachment byte array
-                String encodedBytes = (new BASE64Encoder()).encodeBuffer((byte[])
-                        attachments.get(name));
-
-                transformer.setParameter("_TIF_ATTACH_" + name, encodedBytes);
+                while (attachmentNames.hasMoreElements()) {
+                    String name = (String) attachmentNames.nextElement();
+                    transformer.setParameter("_TIF_ATTACH_" + name, MessageFunctions.encode((byte[]) attachments.get(name)));
+                }
+            }
+        } else {
+            Hashtable attachments = null;
+            for (String name : parameters.getNames()) {
+                if (name.startsWith("_TIF_ATTACH_")) {
+                    if (attachments == null)
+                        attachments = JmsMessageUtil.getAttachments(msg);
+                    if (attachments == null)
+                        break;
+                    byte[] bytes = (byte[]) attachments.get(name.substring("_TIF_ATTACH_".length()));
+                    if (bytes != null)
+                        transformer.setParameter(name, MessageFunctions.encode(bytes));
+                }
             }
         }
 
-        String appContext = JmsMessageUtil.getApplicationContext(msg);
+        // the context cache has the carry forward context decoded already
+        String appContext = contextCache != null ? contextCache.getApplicationContext() : JmsMessageUtil.getApplicationContext(msg);
 
         if (appContext == null && defaultAppContext != null)
             appContext = defaultAppContext;
@@ -199,17 +242,14 @@ public class JmsMessageTransformerImpl implements JMSMessageTransformer {
         // Having app Context as param in mapper.
         transformer.setParameter("_TIF_APP_CONTEXT_", appContext);
 
-        transformer.setURIResolver(new RouteURIResolver(messageBody));
+        transformer.setURIResolver(new RouteURIResolver(messageBody, documentCache));
         transformer.setErrorListener(
                 new RouteTransformationErrorListener(null));
 
-        StringWriter docWriter = new StringWriter();
-        StreamResult streamResult = new StreamResult(docWriter);
-        StringReader stringReader = new StringReader(appContext);
-        StreamSource source = new StreamSource(stringReader);
-
-        transformer.transform(source, streamResult);
-        return docWriter.toString();
+        // the context is parsed into a document only if an earlier operation already needed one
+        Document appContextDocument = documentCache.peekDocument(appContext);
+        transformer.transform(appContextDocument != null ? new DOMSource(appContextDocument)
+                : new StreamSource(new StringReader(appContext)), result);
     }
 
     private boolean equals(String source, String target) {
@@ -7,6 +7,7 @@
 package com.fiorano.openesb.route.impl;
 
 import com.fiorano.openesb.utils.MessagePropertyNames;
+import com.fiorano.openesb.utils.SourceContext;
 import com.fiorano.openesb.utils.StringUtil;
 import com.owlike.genson.Genson;
 
@@ -15,6 +16,10 @@ import java.io.IOException;
 import java.util.*;
 
 public class JmsMessageUtil {
+    // Genson instances are thread safe and expensive to create, the carry forward context
+    // is converted to and from JSON on every routed message.
+    private static final Genson GENSON = new Genson();
+
     // InTime denotes the time (in milliseconds) at which the message
     // enters any input port of the service. If a service is
     // originator of a message then the value will be -1. This is
@@ -305,9 +310,7 @@ public class JmsMessageUtil {
         }
         String carryForwardContextJson = message.getStringProperty(MessagePropertyNames.CARRY_FORWARD_CONTEXT);
         if(!StringUtil.isEmpty(carryForwardContextJson)) {
-            Genson genson = new Genson();
-            CarryForwardContext carryForwardContext = genson.deserialize(carryForwardContextJson, CarryForwardContext.class);
-            return carryForwardContext;
+            return GENSON.deserialize(carryForwardContextJson, CarryForwardContext.class);
         }
         return CarryForwardContext.getDefault();
     }
@@ -699,16 +702,44 @@ public class JmsMessageUtil {
     public static void setCarryForwardContext(Message message, Object carryForwardContext)
             throws
             JMSException {
+        setCarryForwardContext(message, carryForwardContext, true);
+    }
+
+    /**
+     * @param writeSourceContexts true to also write the {@link MessagePropertyNames#SOURCE_CONTEXTS} property. It is
+     *                            updated anyway if the message already has it, so that it never goes stale.
+     */
+    public static void setCarryForwardContext(Message message, Object carryForwardContext, boolean writeSourceContexts)
+            throws
+            JMSException {
         if (carryForwardContext == null) {
             return;
         }
         String carryForwardContextJson;
         //  carryForwardContextJson = fioranoJsonUtil.serialize((CarryForwardContext) carryForwardContext);
-        Genson genson =  new Genson();
-        carryForwardContextJson = genson.serialize(carryForwardContext);
+        carryForwardContextJson = GENSON.serialize(carryForwardContext);
 
         //message.setObjectProperty(MessagePropertyNames.CARRY_FORWARD_CONTEXT, carryForwardContext);
         message.setStringProperty(MessagePropertyNames.CARRY_FORWARD_CONTEXT,carryForwardContextJson);
+        if (carryForwardContext instanceof CarryForwardContext
+                && (writeSourceContexts || message.propertyExists(MessagePropertyNames.SOURCE_CONTEXTS))) {
+            // plain copy of the sources that JMS selectors of later routes can match on
+            message.setStringProperty(MessagePropertyNames.SOURCE_CONTEXTS, getSourceContexts((CarryForwardContext) carryForwardContext));
+        }
+    }
+
+    private static String getSourceContexts(CarryForwardContext carryForwardContext) {
+        StringBuilder sources = new StringBuilder("|");
+        Enumeration sourceContexts = carryForwardContext.getContexts();
+        while (sourceContexts.hasMoreElements()) {
+            SourceContext sourceContext = (SourceContext) sourceContexts.nextElement();
+            if (sourceContext.getAppInstName() == null || sourceContext.getAppInstVersion() == null
+                    || sourceContext.getSrvInstName() == null)
+                continue;
+            sources.append(SenderSelector.getSourceToken(sourceContext.getAppInstName(), sourceContext.getAppInstVersion(),
+                    sourceContext.getSrvInstName())).append('|');
+        }
+        return sources.toString();
     }
 
 
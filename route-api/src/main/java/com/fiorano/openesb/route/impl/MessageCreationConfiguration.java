@@ -13,6 +13,7 @@ import com.fiorano.openesb.transport.impl.jms.JMSMessage;
 import com.fiorano.openesb.transport.impl.jms.JMSPort;
 public class MessageCreationConfiguration extends RouteOperationConfiguration {
     private TransportService<JMSPort,JMSMessage> transportService;
+    private boolean copyOnWrite = true;
 
     public TransportService<JMSPort, JMSMessage> getTransportService() {
         return transportService;
@@ -22,4 +23,16 @@ public class MessageCreationConfiguration extends RouteOperationConfiguration {
     public void setTransportService(TransportService transportService) {
         this.transportService = transportService;
     }
+
+    public boolean isCopyOnWrite() {
+        return copyOnWrite;
+    }
+
+    /**
+     * Sets whether the route makes the received message writable in place when a handler first changes it,
+     * instead of copying it into a new message before any handler runs.
+     */
+    public void setCopyOnWrite(boolean copyOnWrite) {
+        this.copyOnWrite = copyOnWrite;
+    }
 }
@@ -23,15 +23,22 @@ import java.util.Enumeration;
 public class MessageCreationHandler implements RouteOperationHandler<Message<javax.jms.Message>> {
 
     private TransportService<JMSPort,JMSMessage> transportService;
+    private boolean copyOnWrite;
     private Logger logger ;
 
     public MessageCreationHandler(MessageCreationConfiguration  messageCreationConfiguration) {
         this.logger = LoggerFactory.getLogger(Activator.class);
         this.transportService = messageCreationConfiguration.getTransportService();
+        this.copyOnWrite = messageCreationConfiguration.isCopyOnWrite();
     }
 
     @Override
     public void handleOperation(Message<javax.jms.Message> message) throws Exception {
+        if (copyOnWrite && message instanceof JMSMessage) {
+            // handlers that change the message ask for it through getWritableMessage
+            ((JMSMessage) message).setCopyOnWrite(true);
+            return;
+        }
         JMSMessage messageToClone = transportService.createMessage(new JMSMessageConfiguration(getJmsType(message)));
         javax.jms.Message writeableMessage = messageToClone.getMessage();
         javax.jms.Message readOnlyMessage = message.getMessage();
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) Fiorano Software and affiliates. All rights reserved. http://www.fiorano.com
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.fiorano.openesb.route.impl;
+
+import com.fiorano.openesb.transport.Message;
+import com.fiorano.openesb.utils.exception.FioranoException;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Per message cache of parsed XML content, so that the selectors and transformations of a route
+ * parse the message body and the application context once instead of once per handler.
+ * <p>
+ * AbstractRouteImpl attaches a cache to every message it handles. Entries are keyed by the text
+ * they were parsed from, so a handler that rewrites the body can never be served a stale document;
+ * such handlers still call {@link #invalidate()} to release the old documents early.
+ */
+public class MessageDocumentCache {
+
+    public static final String ATTRIBUTE_NAME = MessageDocumentCache.class.getName();
+
+    // body, application context and at most one default document used by transformations
+    private static final int MAX_ENTRIES = 3;
+
+    private static final DocumentBuilderFactory DOCUMENT_BUILDER_FACTORY = createDocumentBuilderFactory();
+    private static final ThreadLocal<DocumentBuilder> DOCUMENT_BUILDERS = new ThreadLocal<DocumentBuilder>();
+
+    private final List<Entry> entries = new ArrayList<>(MAX_ENTRIES);
+
+    public static MessageDocumentCache attach(Message message) {
+        MessageDocumentCache cache = new MessageDocumentCache();
+        message.setAttribute(ATTRIBUTE_NAME, cache);
+        return cache;
+    }
+
+    public static void detach(Message message) {
+        message.removeAttribute(ATTRIBUTE_NAME);
+    }
+
+    /**
+     * @return the cache attached to the message, or a cache private to the caller if none is attached
+     */
+    public static MessageDocumentCache get(Message message) {
+        Object cache = message.getAttribute(ATTRIBUTE_NAME);
+        return cache instanceof MessageDocumentCache ? (MessageDocumentCache) cache : new MessageDocumentCache();
+    }
+
+    /**
+     * Returns the document for the content, parsing it only if it has not been parsed for this message yet.
+     * The returned document is shared and must not be modified.
+     */
+    public Document getDocument(String content) throws FioranoException {
+        Document document = peekDocument(content);
+        if (document == null) {
+            document = parse(content);
+            if (entries.size() == MAX_ENTRIES) {
+                entries.remove(0);
+            }
+            entries.add(new Entry(content, document));
+        }
+        return document;
+    }
+
+    /**
+     * @return the document for the content if it has already been parsed for this message, null otherwise
+     */
+    public Document peekDocument(String content) {
+        if (content == null) {
+            return null;
+        }
+        for (Entry entry : entries) {
+            if (entry.content == content || entry.content.equals(content)) {
+                return entry.document;
+            }
+        }
+        return null;
+    }
+
+    public void invalidate() {
+        entries.clear();
+    }
+
+    public static Document parse(String content) throws FioranoException {
+        try {
+            DocumentBuilder documentBuilder = DOCUMENT_BUILDERS.get();
+            if (documentBuilder == null) {
+                synchronized (DOCUMENT_BUILDER_FACTORY) {
+                    documentBuilder = DOCUMENT_BUILDER_FACTORY.newDocumentBuilder();
+                }
+                DOCUMENT_BUILDERS.set(documentBuilder);
+            } else {
+                documentBuilder.reset();
+            }
+            return documentBuilder.parse(new InputSource(new StringReader(content)));
+        } catch (Exception e) {
+            throw new FioranoException(e);
+        }
+    }
+
+    private static DocumentBuilderFactory createDocumentBuilderFactory() {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return factory;
+    }
+
+    private static class Entry {
+        private final String content;
+        private final Document document;
+
+        private Entry(String content, Document document) {
+            this.content = content;
+            this.document = document;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) Fiorano Software and affiliates. All rights reserved. http://www.fiorano.com
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.fiorano.openesb.route.impl;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import java.util.Base64;
+import java.util.Hashtable;
+
+/**
+ * Extension functions giving stylesheets access to the large parts of a message only when they are
+ * actually used. The message is available to every stylesheet as the <code>_TIF_MESSAGE_</code>
+ * parameter, for example with Xalan:
+ * <pre>
+ * &lt;xsl:stylesheet version="1.0" xmlns:xsl="http://www.w3.org/1999/XSL/Transform"
+ *         xmlns:msg="xalan://com.fiorano.openesb.route.impl.MessageFunctions"&gt;
+ *     &lt;xsl:param name="_TIF_MESSAGE_"/&gt;
+ *     ...
+ *     &lt;xsl:value-of select="msg:getAttachment($_TIF_MESSAGE_, 'invoice')"/&gt;
+ * </pre>
+ * The values are base64 encoded exactly like the <code>_TIF_BODY_BYTE_</code> and
+ * <code>_TIF_ATTACH_</code> parameters.
+ */
+public class MessageFunctions {
+
+    public static String getBodyBytes(Object message) throws JMSException {
+        return encode(JmsMessageUtil.getBytesData((Message) message));
+    }
+
+    public static String getAttachment(Object message, String name) throws JMSException {
+        Hashtable attachments = JmsMessageUtil.getAttachments((Message) message);
+        return attachments != null ? encode((byte[]) attachments.get(name)) : null;
+    }
+
+    // same output as sun.misc.BASE64Encoder.encodeBuffer, which ends every line of 76 characters, the last one included
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+    private static final Base64.Encoder ENCODER = Base64.getMimeEncoder(76, LINE_SEPARATOR.getBytes());
+
+    static String encode(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        return bytes.length == 0 ? "" : ENCODER.encodeToString(bytes) + LINE_SEPARATOR;
+    }
+}
@@ -10,17 +10,34 @@ import java.io.StringReader;
 import javax.xml.transform.Source;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.URIResolver;
+import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamSource;
 
+import com.fiorano.openesb.utils.exception.FioranoException;
+
 public class RouteURIResolver implements URIResolver {
     String data = null;
+    MessageDocumentCache documentCache = null;
 
     RouteURIResolver(String data){
         this.data = data;
     }
 
+    RouteURIResolver(String data, MessageDocumentCache documentCache){
+        this.data = data;
+        this.documentCache = documentCache;
+    }
+
     public Source resolve(String href, String base)
             throws TransformerException{
+        // share the parsed body with the other handlers of the route instead of parsing it again
+        if (documentCache != null) {
+            try {
+                return new DOMSource(documentCache.getDocument(data));
+            } catch (FioranoException e) {
+                throw new TransformerException(e);
+            }
+        }
         return new StreamSource(new StringReader(data));
     }
 }
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) Fiorano Software and affiliates. All rights reserved. http://www.fiorano.com
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.fiorano.openesb.route.impl;
+
+import com.fiorano.openesb.application.application.Application;
+import com.fiorano.openesb.route.RouteOperationConfiguration;
+import com.fiorano.openesb.route.RouteOperationType;
+import com.fiorano.openesb.utils.MessagePropertyNames;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Works out the JMS selector for the consumer of a route, adding the conditions of route handlers that the
+ * broker can evaluate so that messages the route would discard are not delivered to it at all.
+ * <p>
+ * The handlers still run in the route; the broker selector only ever lets through a superset of the messages
+ * they accept. A sender selector matches the source contexts of the carry forward context, which is JSON the
+ * broker cannot look into, so routes also write the sources to the {@link MessagePropertyNames#SOURCE_CONTEXTS}
+ * property and the sender selector becomes LIKE conditions on it. Messages without the property, from
+ * producers other than routes, are always let through. A producer that changes the carry forward context
+ * without the property leaves it stale, and the broker then drops messages the route would accept, so the
+ * sender selector goes to the broker only for routes that ask for it. XPath selectors have no JMS selector
+ * equivalent and stay in the route.
+ * <p>
+ * Routes write the property only while a route that asks for it is running, see {@link #addPushdownRoute()}.
+ * Messages sent before that have no property and are let through.
+ */
+public final class SelectorPlanner {
+
+    // running routes that let the broker evaluate their sender selector
+    private static final AtomicInteger PUSHDOWN_ROUTES = new AtomicInteger();
+
+    private SelectorPlanner() {
+    }
+
+    /**
+     * @param jmsSelector  selector configured on the route, may be null
+     * @param operations   operations of the route
+     * @param senderSelectorPushdown true if the broker is to evaluate the sender selector of the route
+     * @return the selector for the consumer of the route, null if every message is to be delivered
+     */
+    public static String plan(String jmsSelector, List<RouteOperationConfiguration> operations, boolean senderSelectorPushdown) {
+        if (!senderSelectorPushdown) {
+            return jmsSelector;
+        }
+        SenderSelectorConfiguration senderSelector = null;
+        CarryForwardContextConfiguration sourceContext = null;
+        for (RouteOperationConfiguration operation : operations) {
+            if (operation instanceof SenderSelectorConfiguration) {
+                senderSelector = (SenderSelectorConfiguration) operation;
+            } else if (operation instanceof CarryForwardContextConfiguration
+                    && operation.getRouteOperationType() == RouteOperationType.SRC_CARRY_FORWARD_CONTEXT) {
+                sourceContext = (CarryForwardContextConfiguration) operation;
+            }
+        }
+        String senderCondition = senderSelector != null ? getSenderCondition(senderSelector, sourceContext) : null;
+        if (senderCondition == null) {
+            return jmsSelector;
+        }
+        if (jmsSelector == null || jmsSelector.trim().isEmpty()) {
+            return senderCondition;
+        }
+        return "(" + jmsSelector + ") AND (" + senderCondition + ")";
+    }
+
+    /**
+     * Called when a route that lets the broker evaluate its sender selector starts.
+     */
+    public static void addPushdownRoute() {
+        PUSHDOWN_ROUTES.incrementAndGet();
+    }
+
+    /**
+     * Called when a route that lets the broker evaluate its sender selector stops.
+     */
+    public static void removePushdownRoute() {
+        PUSHDOWN_ROUTES.decrementAndGet();
+    }
+
+    /**
+     * @return true if routes are to write the {@link MessagePropertyNames#SOURCE_CONTEXTS} property
+     */
+    public static boolean isSourceContextsRequired() {
+        return PUSHDOWN_ROUTES.get() > 0;
+    }
+
+    private static String getSenderCondition(SenderSelectorConfiguration configuration, CarryForwardContextConfiguration sourceContext) {
+        Set<SenderSelector.Source> sources = SenderSelector.getSources(configuration.getSourceName(), configuration.getAppID());
+        if (sources == null || sources.isEmpty()) {
+            return null;
+        }
+        // the route adds the context of its own source before the sender selector runs, which then always matches
+        if (sourceContext != null && sourceContext.getApplication() != null && sourceContext.getServiceInstanceName() != null) {
+            Application application = sourceContext.getApplication();
+            if (sources.contains(new SenderSelector.Source(application.getGUID(), String.valueOf(application.getVersion()),
+                    sourceContext.getServiceInstanceName()))) {
+                return null;
+            }
+        }
+        String property = MessagePropertyNames.SOURCE_CONTEXTS;
+        StringBuilder condition = new StringBuilder(property).append(" IS NULL");
+        for (SenderSelector.Source source : sources) {
+            // '%' and '_' in names only widen the match, which the sender selector in the route narrows again
+            condition.append(" OR ").append(property).append(" LIKE '%|")
+                    .append(source.getToken().replace("'", "''")).append("|%'");
+        }
+        return condition.toString();
+    }
+}
@@ -16,46 +16,58 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.jms.JMSException;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 public class SenderSelector implements RouteOperationHandler<JMSMessage> {
+    private static final int MAX_COMPILED = 256;
+
+    // compiled source sets by source name and application, shared by the routes of all applications
+    private static final Map<String, Set<Source>> COMPILED = Collections.synchronizedMap(
+            new LinkedHashMap<String, Set<Source>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Set<Source>> eldest) {
+                    return size() > MAX_COMPILED;
+                }
+            });
+
     private String sourceName;
     private String appName_version;
     private Logger logger;
 
+    // normalized (application, version, service) of every source the selector accepts, null if it accepts none
+    private final Set<Source> sources;
+
     public SenderSelector(SenderSelectorConfiguration configuration) {
         this.sourceName = configuration.getSourceName();
         this.appName_version = configuration.getAppID();
         this.logger = LoggerFactory.getLogger(Activator.class);
+        this.sources = getSources(sourceName, appName_version);
     }
 
     @Override
     public void handleOperation(JMSMessage message) throws FilterMessageException, FioranoException {
-        String context = sourceName + "|" + appName_version;
         if (!isMessageSelected(message)) {
             throw new FilterMessageException();
         }
     }
 
     public boolean isMessageSelected(JMSMessage message) {
-        if (sourceName == null)
+        if (sources == null)
             return false;
 
         try {
-            CarryForwardContext carryForwardContext = JmsMessageUtil.getCarryForwardContext(message.getMessage());
+            CarryForwardContext carryForwardContext = CarryForwardContextCache.get(message).getContext();
 
             if (carryForwardContext == null)
                 return false;
 
             Enumeration sourceContexts = carryForwardContext.getContexts();
-            String[] appDetails = appName_version.split(":");            // splitting on ':' to get appDetails[0](appName) and appDetails[1](version)
-            if (appDetails.length > 1) {
-                if (appDetails[0] == null)                                 // if current application name is absent then send back a false as route selector cant decide whether to send the message forward or not
-                    return false;
-                if (appDetails[1] == null)                                 // if current application version is absent then send back a false as route selector cant decide whether to send the message forward or not
-                    return false;
-            }
-
             while (sourceContexts.hasMoreElements()) {
                 SourceContext sourceContext = (SourceContext) sourceContexts.nextElement();
 
@@ -66,33 +78,8 @@ public class SenderSelector implements RouteOperationHandler<JMSMessage> {
                 if (sourceContext.getSrvInstName() == null)                                // source context has missing service information, move to next source context
                     continue;
 
-                String[] multipleSources = sourceName.split(",");
-                for (String multipleSource : multipleSources) {
-                    multipleSource = multipleSource.trim();
-                    if (sourceContext.getSrvInstName().equalsIgnoreCase(multipleSource)) {
-                        if (sourceContext.getAppInstName().equalsIgnoreCase(appDetails[0])) {
-                            if (sourceContext.getAppInstVersion().equalsIgnoreCase(appDetails[1])) {
-                                return true;
-                            }
-                        }
-                    }
-                    String[] app_version_serv = multipleSource.split("\\.");
-                    if (app_version_serv.length > 1) {
-                        String[] app_version = app_version_serv[0].split(":");
-                        if (app_version.length > 1) {
-                            if (app_version[0] == null)
-                                continue;                                // missing application name information in details set by user, move to next comma separated source value
-                            if (app_version[1] == null)
-                                continue;                                // missing version number information in details set by user, move to next comma separated source value
-                            if (app_version_serv[1] == null)
-                                continue;                                // missing service instance name information in details set by user, move to next comma separated source value
-                            app_version[1] = app_version[1].replace("_", ".");
-                            if ((sourceContext.getAppInstName().equalsIgnoreCase(app_version[0])) && (sourceContext.getAppInstVersion().equalsIgnoreCase(app_version[1])) && (sourceContext.getSrvInstName().equalsIgnoreCase(app_version_serv[1])))
-                                return true;                  // all categories match returning true value to send message across.
-                        }
-                    }
-                }
-
+                if (sources.contains(new Source(sourceContext.getAppInstName(), sourceContext.getAppInstVersion(), sourceContext.getSrvInstName())))
+                    return true;
             }
             return false;
         } catch (JMSException exp) {
@@ -100,4 +87,86 @@ public class SenderSelector implements RouteOperationHandler<JMSMessage> {
             return false;
         }
     }
+
+    /**
+     * @return the sources accepted by a selector with the given configuration, null if it accepts none
+     */
+    static Set<Source> getSources(String sourceName, String appName_version) {
+        if (sourceName == null)
+            return null;
+
+        String key = sourceName + '\u0000' + appName_version;
+        Set<Source> sources = COMPILED.get(key);
+        if (sources == null) {
+            sources = Collections.unmodifiableSet(compile(sourceName, appName_version));
+            COMPILED.put(key, sources);
+        }
+        return sources;
+    }
+
+    /**
+     * @return the normalized form of a source as kept in the {@link com.fiorano.openesb.utils.MessagePropertyNames#SOURCE_CONTEXTS} property
+     */
+    static String getSourceToken(String appName, String version, String serviceName) {
+        return new Source(appName, version, serviceName).getToken();
+    }
+
+    /**
+     * Builds the set of sources accepted by the selector. Each comma separated value of the source name is either
+     * a service instance of the current application, or a service instance of another application given as
+     * <code>appName:version.serviceName</code> where the version may use '_' in place of '.'.
+     */
+    private static Set<Source> compile(String sourceName, String appName_version) {
+        if (sourceName == null)
+            return null;
+
+        Set<Source> sources = new HashSet<>();
+        String[] appDetails = appName_version != null ? appName_version.split(":") : new String[0];   // splitting on ':' to get appDetails[0](appName) and appDetails[1](version)
+
+        for (String multipleSource : sourceName.split(",")) {
+            multipleSource = multipleSource.trim();
+            if (appDetails.length > 1)                                                   // services of the current application need its name and version to be known
+                sources.add(new Source(appDetails[0], appDetails[1], multipleSource));
+
+            String[] app_version_serv = multipleSource.split("\\.");
+            if (app_version_serv.length > 1) {
+                String[] app_version = app_version_serv[0].split(":");
+                if (app_version.length > 1)
+                    sources.add(new Source(app_version[0], app_version[1].replace("_", "."), app_version_serv[1]));
+            }
+        }
+        return sources;
+    }
+
+    static class Source {
+        private final String appName;
+        private final String version;
+        private final String serviceName;
+        private final int hash;
+
+        Source(String appName, String version, String serviceName) {
+            this.appName = appName.toLowerCase(Locale.ENGLISH);
+            this.version = version.toLowerCase(Locale.ENGLISH);
+            this.serviceName = serviceName.toLowerCase(Locale.ENGLISH);
+            this.hash = 31 * (31 * this.appName.hashCode() + this.version.hashCode()) + this.serviceName.hashCode();
+        }
+
+        String getToken() {
+            return appName + ":" + version + "." + serviceName;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Source))
+                return false;
+            Source source = (Source) obj;
+            return hash == source.hash && appName.equals(source.appName) && version.equals(source.version)
+                    && serviceName.equals(source.serviceName);
+        }
+    }
 }
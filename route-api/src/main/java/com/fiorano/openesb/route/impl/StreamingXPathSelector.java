@@ -0,0 +1,653 @@
+/*
+ * Copyright (c) Fiorano Software and affiliates. All rights reserved. http://www.fiorano.com
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.fiorano.openesb.route.impl;
+
+import com.fiorano.openesb.utils.XMLUtils;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluates a selector xpath over a StAX event stream instead of a DOM, stopping as soon as the
+ * result is known. Only a common subset of xpath is understood :
+ * <ul>
+ * <li>absolute or relative location paths made of child ('/') and descendant ('//') element steps,
+ * where an element step is a name, a prefixed name, 'prefix:*' or '*'</li>
+ * <li>attribute predicates on any step : [@a], [@a='v'] and [@a!='v']</li>
+ * <li>a text predicate on the last step : [text()='v'] or [text()!='v']</li>
+ * <li>an optional trailing '@attribute' or 'text()' step</li>
+ * </ul>
+ * Such a path may be tested for existence, compared with a string literal using '=' or '!=',
+ * passed to contains(path, 'literal') or wrapped in not(...).
+ * <p>
+ * {@link #compile(String, Map)} returns null for every other expression so that the caller can
+ * fall back to DOM based evaluation.
+ */
+public class StreamingXPathSelector {
+
+    private enum Operation {EXISTS, EQUALS, NOT_EQUALS, CONTAINS}
+
+    private enum Target {ELEMENT, ATTRIBUTE, TEXT}
+
+    private final Step[] steps;
+    private final Target target;
+    private final String targetAttributeNamespace;
+    private final String targetAttributeName;
+    private final Operation operation;
+    private final String literal;
+    private final boolean negate;
+
+    private StreamingXPathSelector(Step[] steps, Target target, String targetAttributeNamespace, String targetAttributeName,
+                                   Operation operation, String literal, boolean negate) {
+        this.steps = steps;
+        this.target = target;
+        this.targetAttributeNamespace = targetAttributeNamespace;
+        this.targetAttributeName = targetAttributeName;
+        this.operation = operation;
+        this.literal = literal;
+        this.negate = negate;
+    }
+
+    /**
+     * Compiles the xpath into a streaming selector.
+     *
+     * @return the selector, or null if the expression is outside the supported subset
+     */
+    public static StreamingXPathSelector compile(String xpath, Map<String, String> namespaces) {
+        if (xpath == null) {
+            return null;
+        }
+        try {
+            return new Parser(xpath, namespaces).parse();
+        } catch (UnsupportedExpressionException e) {
+            return null;
+        }
+    }
+
+    public boolean isSelected(String content) throws XMLStreamException {
+        XMLStreamReader reader = XMLUtils.getStaxInputFactory().createXMLStreamReader(new StringReader(content));
+        try {
+            return evaluate(reader) != negate;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private boolean evaluate(XMLStreamReader reader) throws XMLStreamException {
+        if (operation == Operation.CONTAINS && literal.isEmpty()) {
+            return true;
+        }
+        boolean collectText = target == Target.TEXT;
+        boolean collectValue = target == Target.ELEMENT && operation != Operation.EXISTS;
+        int stepCount = steps.length;
+
+        // states.get(depth)[i] is true when children of the element at that depth may match steps[i];
+        // states[stepCount] is true when the element itself matched the whole path
+        List<boolean[]> states = new ArrayList<>();
+        boolean[] documentState = new boolean[stepCount + 1];
+        documentState[0] = true;
+        states.add(documentState);
+
+        List<ValueMatcher> valueMatchers = new ArrayList<>();
+        List<Integer> valueMatcherDepths = new ArrayList<>();
+        ValueMatcher textMatcher = null;
+        boolean firstNodeSeen = false;
+
+        while (reader.hasNext()) {
+            int event = reader.next();
+            switch (event) {
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    if (collectText && states.get(states.size() - 1)[stepCount]) {
+                        if (textMatcher == null) {
+                            if (operation == Operation.CONTAINS && firstNodeSeen) {
+                                break;
+                            }
+                            firstNodeSeen = true;
+                            textMatcher = new ValueMatcher(operation, literal);
+                        }
+                        textMatcher.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                        if (textMatcher.isDecided()) {
+                            if (textMatcher.getResult() || operation == Operation.CONTAINS) {
+                                return textMatcher.getResult();
+                            }
+                        }
+                    }
+                    if (collectValue) {
+                        for (ValueMatcher valueMatcher : valueMatchers) {
+                            valueMatcher.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                            if (valueMatcher.isDecided() && (valueMatcher.getResult() || operation == Operation.CONTAINS)) {
+                                return valueMatcher.getResult();
+                            }
+                        }
+                    }
+                    break;
+                case XMLStreamConstants.START_ELEMENT: {
+                    if (textMatcher != null) {
+                        if (textMatcher.finish() || operation == Operation.CONTAINS) {
+                            return textMatcher.getResult();
+                        }
+                        textMatcher = null;
+                    }
+                    boolean[] parentState = states.get(states.size() - 1);
+                    boolean[] state = new boolean[stepCount + 1];
+                    for (int i = 0; i < stepCount; i++) {
+                        if (!parentState[i]) {
+                            continue;
+                        }
+                        if (steps[i].descendant) {
+                            state[i] = true;
+                        }
+                        if (steps[i].matches(reader)) {
+                            state[i + 1] = true;
+                        }
+                    }
+                    states.add(state);
+                    if (state[stepCount]) {
+                        if (target == Target.ELEMENT) {
+                            if (operation == Operation.EXISTS) {
+                                return true;
+                            }
+                            if (operation != Operation.CONTAINS || !firstNodeSeen) {
+                                valueMatchers.add(new ValueMatcher(operation, literal));
+                                valueMatcherDepths.add(states.size() - 1);
+                            }
+                            firstNodeSeen = true;
+                        } else if (target == Target.ATTRIBUTE) {
+                            String value = getAttributeValue(reader, targetAttributeNamespace, targetAttributeName);
+                            if (value != null) {
+                                ValueMatcher attributeMatcher = new ValueMatcher(operation, literal);
+                                attributeMatcher.append(value.toCharArray(), 0, value.length());
+                                if (attributeMatcher.finish() || operation == Operation.CONTAINS) {
+                                    return attributeMatcher.getResult();
+                                }
+                            }
+                        }
+                    }
+                    break;
+                }
+                case XMLStreamConstants.END_ELEMENT: {
+                    if (textMatcher != null) {
+                        if (textMatcher.finish() || operation == Operation.CONTAINS) {
+                            return textMatcher.getResult();
+                        }
+                        textMatcher = null;
+                    }
+                    int depth = states.size() - 1;
+                    int last = valueMatcherDepths.size() - 1;
+                    if (last >= 0 && valueMatcherDepths.get(last) == depth) {
+                        ValueMatcher valueMatcher = valueMatchers.remove(last);
+                        valueMatcherDepths.remove(last);
+                        if (valueMatcher.finish() || operation == Operation.CONTAINS) {
+                            return valueMatcher.getResult();
+                        }
+                    }
+                    states.remove(depth);
+                    break;
+                }
+                case XMLStreamConstants.COMMENT:
+                case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                    // comments and processing instructions split text nodes
+                    if (textMatcher != null) {
+                        if (textMatcher.finish() || operation == Operation.CONTAINS) {
+                            return textMatcher.getResult();
+                        }
+                        textMatcher = null;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        // no node decided the result. For contains(), an empty node-set converts to an empty string
+        return false;
+    }
+
+    private static String getAttributeValue(XMLStreamReader reader, String namespace, String localName) {
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            if (localName.equals(reader.getAttributeLocalName(i))
+                    && namespace.equals(normalize(reader.getAttributeNamespace(i)))) {
+                return reader.getAttributeValue(i);
+            }
+        }
+        return null;
+    }
+
+    private static String normalize(String namespace) {
+        return namespace == null ? "" : namespace;
+    }
+
+    private static class Step {
+        private final boolean descendant;
+        // null namespace or local name means any
+        private final String namespace;
+        private final String localName;
+        private final List<AttributePredicate> predicates = new ArrayList<>();
+
+        private Step(boolean descendant, String namespace, String localName) {
+            this.descendant = descendant;
+            this.namespace = namespace;
+            this.localName = localName;
+        }
+
+        private boolean matches(XMLStreamReader reader) {
+            if (localName != null && !localName.equals(reader.getLocalName())) {
+                return false;
+            }
+            if (namespace != null && !namespace.equals(normalize(reader.getNamespaceURI()))) {
+                return false;
+            }
+            for (AttributePredicate predicate : predicates) {
+                if (!predicate.matches(reader)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static class AttributePredicate {
+        private final String namespace;
+        private final String localName;
+        // null when only the presence of the attribute is tested
+        private final Operation operation;
+        private final String literal;
+
+        private AttributePredicate(String namespace, String localName, Operation operation, String literal) {
+            this.namespace = namespace;
+            this.localName = localName;
+            this.operation = operation;
+            this.literal = literal;
+        }
+
+        private boolean matches(XMLStreamReader reader) {
+            String value = getAttributeValue(reader, namespace, localName);
+            if (value == null) {
+                return false;
+            }
+            if (operation == Operation.EQUALS) {
+                return value.equals(literal);
+            } else if (operation == Operation.NOT_EQUALS) {
+                return !value.equals(literal);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Tests the string value of a single node, which may arrive in several chunks, and decides
+     * as early as the chunks allow. Memory is bounded by the length of the literal.
+     */
+    private static class ValueMatcher {
+        private final Operation operation;
+        private final String literal;
+        private int matched;
+        private boolean diverged;
+        private boolean decided;
+        private boolean result;
+        // tail of the value that may still be the start of a match, used for contains()
+        private StringBuilder window;
+
+        private ValueMatcher(Operation operation, String literal) {
+            this.operation = operation;
+            this.literal = literal;
+            if (operation == Operation.EXISTS) {
+                decided = true;
+                result = true;
+            } else if (operation == Operation.CONTAINS) {
+                window = new StringBuilder();
+            }
+        }
+
+        private void append(char[] chars, int start, int length) {
+            if (decided || length == 0) {
+                return;
+            }
+            if (operation == Operation.CONTAINS) {
+                window.append(chars, start, length);
+                if (window.indexOf(literal) >= 0) {
+                    decided = true;
+                    result = true;
+                } else if (window.length() >= literal.length()) {
+                    window.delete(0, window.length() - literal.length() + 1);
+                }
+                return;
+            }
+            if (!diverged) {
+                for (int i = 0; i < length; i++) {
+                    if (matched >= literal.length() || literal.charAt(matched) != chars[start + i]) {
+                        diverged = true;
+                        break;
+                    }
+                    matched++;
+                }
+            }
+            if (diverged) {
+                // the value can no longer be equal to the literal
+                decided = true;
+                result = operation == Operation.NOT_EQUALS;
+            }
+        }
+
+        /**
+         * @return the result for this node once all of its value is known
+         */
+        private boolean finish() {
+            if (!decided) {
+                decided = true;
+                if (operation == Operation.CONTAINS) {
+                    result = false;
+                } else {
+                    boolean equal = matched == literal.length();
+                    result = operation == Operation.EQUALS ? equal : !equal;
+                }
+            }
+            return result;
+        }
+
+        private boolean isDecided() {
+            return decided;
+        }
+
+        private boolean getResult() {
+            return result;
+        }
+    }
+
+    private static class UnsupportedExpressionException extends Exception {
+    }
+
+    private static class Parser {
+        private final String xpath;
+        private final Map<String, String> namespaces;
+        private int position;
+
+        private Parser(String xpath, Map<String, String> namespaces) {
+            this.xpath = xpath;
+            this.namespaces = namespaces;
+        }
+
+        private StreamingXPathSelector parse() throws UnsupportedExpressionException {
+            boolean negate = false;
+            skipWhitespace();
+            if (lookingAtFunction("not")) {
+                expectFunction("not");
+                negate = true;
+            }
+            StreamingXPathSelector selector;
+            skipWhitespace();
+            if (lookingAtFunction("contains")) {
+                expectFunction("contains");
+                PathBuilder path = parsePath();
+                expect(",");
+                String literal = parseLiteral();
+                expect(")");
+                selector = path.build(Operation.CONTAINS, literal, negate);
+            } else if (lookingAt("'") || lookingAt("\"")) {
+                String literal = parseLiteral();
+                Operation operation = parseComparison();
+                if (operation == null) {
+                    throw new UnsupportedExpressionException();
+                }
+                selector = parsePath().build(operation, literal, negate);
+            } else {
+                PathBuilder path = parsePath();
+                Operation operation = parseComparison();
+                selector = operation == null ? path.build(Operation.EXISTS, null, negate)
+                        : path.build(operation, parseLiteral(), negate);
+            }
+            if (negate) {
+                expect(")");
+            }
+            skipWhitespace();
+            if (position != xpath.length()) {
+                throw new UnsupportedExpressionException();
+            }
+            return selector;
+        }
+
+        private PathBuilder parsePath() throws UnsupportedExpressionException {
+            PathBuilder path = new PathBuilder();
+            skipWhitespace();
+            boolean descendant = false;
+            if (lookingAt("//")) {
+                position += 2;
+                descendant = true;
+            } else if (lookingAt("/")) {
+                position++;
+            }
+            while (true) {
+                skipWhitespace();
+                if (descendant && (lookingAt("@") || lookingAtFunction("text"))) {
+                    // //@attr and //text() select nodes of any descendant, which the steps cannot express
+                    throw new UnsupportedExpressionException();
+                }
+                if (lookingAt("@")) {
+                    position++;
+                    String[] name = parseQName(false);
+                    path.setAttributeTarget(name[0], name[1]);
+                    break;
+                }
+                if (lookingAtFunction("text")) {
+                    expectFunction("text");
+                    expect(")");
+                    path.setTextTarget();
+                    break;
+                }
+                String[] name = parseQName(true);
+                Step step = new Step(descendant, name[0], name[1]);
+                path.steps.add(step);
+                skipWhitespace();
+                while (lookingAt("[")) {
+                    position++;
+                    parsePredicate(step, path);
+                    expect("]");
+                    skipWhitespace();
+                }
+                if (lookingAt("//")) {
+                    position += 2;
+                    descendant = true;
+                } else if (lookingAt("/")) {
+                    position++;
+                    descendant = false;
+                } else {
+                    break;
+                }
+                if (path.textPredicate != null) {
+                    // a text predicate is only supported on the last step
+                    throw new UnsupportedExpressionException();
+                }
+            }
+            if (path.steps.isEmpty()) {
+                throw new UnsupportedExpressionException();
+            }
+            return path;
+        }
+
+        private void parsePredicate(Step step, PathBuilder path) throws UnsupportedExpressionException {
+            skipWhitespace();
+            if (lookingAt("@")) {
+                position++;
+                String[] name = parseQName(false);
+                Operation operation = parseComparison();
+                String literal = operation == null ? null : parseLiteral();
+                step.predicates.add(new AttributePredicate(name[0], name[1], operation, literal));
+            } else if (lookingAtFunction("text")) {
+                expectFunction("text");
+                expect(")");
+                Operation operation = parseComparison();
+                if (operation == null || path.textPredicate != null) {
+                    throw new UnsupportedExpressionException();
+                }
+                path.textPredicateOperation = operation;
+                path.textPredicate = parseLiteral();
+            } else {
+                throw new UnsupportedExpressionException();
+            }
+            skipWhitespace();
+        }
+
+        private Operation parseComparison() {
+            skipWhitespace();
+            if (lookingAt("!=")) {
+                position += 2;
+                return Operation.NOT_EQUALS;
+            } else if (lookingAt("=")) {
+                position++;
+                return Operation.EQUALS;
+            }
+            return null;
+        }
+
+        private String parseLiteral() throws UnsupportedExpressionException {
+            skipWhitespace();
+            if (position >= xpath.length()) {
+                throw new UnsupportedExpressionException();
+            }
+            char quote = xpath.charAt(position);
+            if (quote != '\'' && quote != '"') {
+                throw new UnsupportedExpressionException();
+            }
+            int end = xpath.indexOf(quote, position + 1);
+            if (end < 0) {
+                throw new UnsupportedExpressionException();
+            }
+            String literal = xpath.substring(position + 1, end);
+            position = end + 1;
+            return literal;
+        }
+
+        /**
+         * @return namespace and local name; null entries mean any
+         */
+        private String[] parseQName(boolean allowWildcard) throws UnsupportedExpressionException {
+            skipWhitespace();
+            if (lookingAt("*")) {
+                if (!allowWildcard) {
+                    throw new UnsupportedExpressionException();
+                }
+                position++;
+                return new String[]{null, null};
+            }
+            String first = parseNCName();
+            if (lookingAt(":") && !lookingAt("::")) {
+                position++;
+                String namespace = namespaces != null ? namespaces.get(first) : null;
+                if (namespace == null) {
+                    throw new UnsupportedExpressionException();
+                }
+                if (lookingAt("*")) {
+                    if (!allowWildcard) {
+                        throw new UnsupportedExpressionException();
+                    }
+                    position++;
+                    return new String[]{namespace, null};
+                }
+                return new String[]{namespace, parseNCName()};
+            }
+            return new String[]{"", first};
+        }
+
+        private String parseNCName() throws UnsupportedExpressionException {
+            int start = position;
+            while (position < xpath.length()) {
+                char c = xpath.charAt(position);
+                boolean nameChar = Character.isLetter(c) || c == '_'
+                        || (position > start && (Character.isDigit(c) || c == '-' || c == '.'));
+                if (!nameChar) {
+                    break;
+                }
+                position++;
+            }
+            if (start == position) {
+                throw new UnsupportedExpressionException();
+            }
+            String name = xpath.substring(start, position);
+            skipWhitespace();
+            if (lookingAt("(") || lookingAt("::")) {
+                // node tests, function calls and axes other than child are not supported
+                throw new UnsupportedExpressionException();
+            }
+            return name;
+        }
+
+        private boolean lookingAtFunction(String name) {
+            if (!xpath.startsWith(name, position)) {
+                return false;
+            }
+            int next = position + name.length();
+            while (next < xpath.length() && Character.isWhitespace(xpath.charAt(next))) {
+                next++;
+            }
+            return next < xpath.length() && xpath.charAt(next) == '(';
+        }
+
+        private void expectFunction(String name) throws UnsupportedExpressionException {
+            position += name.length();
+            expect("(");
+        }
+
+        private void expect(String token) throws UnsupportedExpressionException {
+            skipWhitespace();
+            if (!lookingAt(token)) {
+                throw new UnsupportedExpressionException();
+            }
+            position += token.length();
+        }
+
+        private boolean lookingAt(String token) {
+            return xpath.startsWith(token, position);
+        }
+
+        private void skipWhitespace() {
+            while (position < xpath.length() && Character.isWhitespace(xpath.charAt(position))) {
+                position++;
+            }
+        }
+    }
+
+    private static class PathBuilder {
+        private final List<Step> steps = new ArrayList<>();
+        private Target target = Target.ELEMENT;
+        private String attributeNamespace;
+        private String attributeName;
+        private String textPredicate;
+        private Operation textPredicateOperation;
+
+        private void setAttributeTarget(String namespace, String localName) {
+            target = Target.ATTRIBUTE;
+            attributeNamespace = namespace;
+            attributeName = localName;
+        }
+
+        private void setTextTarget() {
+            target = Target.TEXT;
+        }
+
+        private StreamingXPathSelector build(Operation operation, String literal, boolean negate)
+                throws UnsupportedExpressionException {
+            if (steps.isEmpty()) {
+                throw new UnsupportedExpressionException();
+            }
+            Step[] stepArray = steps.toArray(new Step[steps.size()]);
+            if (textPredicate != null) {
+                // boolean(path[text()='v']) is the same as path/text() = 'v'
+                if (target != Target.ELEMENT || operation != Operation.EXISTS) {
+                    throw new UnsupportedExpressionException();
+                }
+                return new StreamingXPathSelector(stepArray, Target.TEXT, null, null, textPredicateOperation, textPredicate, negate);
+            }
+            return new StreamingXPathSelector(stepArray, target, attributeNamespace, attributeName, operation, literal, negate);
+        }
+    }
+}
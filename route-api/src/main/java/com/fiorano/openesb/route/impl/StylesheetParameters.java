@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) Fiorano Software and affiliates. All rights reserved. http://www.fiorano.com
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.fiorano.openesb.route.impl;
+
+import com.fiorano.openesb.utils.XMLUtils;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Global parameters declared by a stylesheet. Parameters that a stylesheet does not declare are
+ * ignored by the transformer, so the values for them need not be computed at all.
+ * <p>
+ * Stylesheets that include or import other stylesheets may declare parameters in those, so all
+ * parameters are treated as declared for them, as they are when the stylesheet cannot be read.
+ */
+public class StylesheetParameters {
+
+    private static final String XSL_NAMESPACE = "http://www.w3.org/1999/XSL/Transform";
+
+    private final Set<String> names;
+    private final boolean allDeclared;
+
+    private StylesheetParameters(Set<String> names, boolean allDeclared) {
+        this.names = names;
+        this.allDeclared = allDeclared;
+    }
+
+    public static StylesheetParameters scan(String xsl) {
+        Set<String> names = new HashSet<>();
+        try {
+            XMLStreamReader reader = XMLUtils.getStaxInputFactory().createXMLStreamReader(new StringReader(xsl));
+            try {
+                int depth = 0;
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.END_ELEMENT) {
+                        depth--;
+                    } else if (event == XMLStreamConstants.START_ELEMENT) {
+                        // only top level declarations are stylesheet parameters, template parameters are not
+                        if (++depth == 2 && XSL_NAMESPACE.equals(reader.getNamespaceURI())) {
+                            String localName = reader.getLocalName();
+                            if ("include".equals(localName) || "import".equals(localName)) {
+                                return new StylesheetParameters(Collections.<String>emptySet(), true);
+                            }
+                            if ("param".equals(localName)) {
+                                names.add(reader.getAttributeValue(null, "name"));
+                            }
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            return new StylesheetParameters(Collections.<String>emptySet(), true);
+        }
+        return new StylesheetParameters(names, false);
+    }
+
+    public boolean isDeclared(String name) {
+        return allDeclared || names.contains(name);
+    }
+
+    public boolean isAllDeclared() {
+        return allDeclared;
+    }
+
+    /**
+     * @return names of the declared parameters, empty if all parameters are treated as declared
+     */
+    public Set<String> getNames() {
+        return Collections.unmodifiableSet(names);
+    }
+}
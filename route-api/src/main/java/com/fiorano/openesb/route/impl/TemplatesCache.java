@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) Fiorano Software and affiliates. All rights reserved. http://www.fiorano.com
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.fiorano.openesb.route.impl;
+
+import com.fiorano.openesb.utils.TransformerUtil;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.stream.StreamSource;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compiled stylesheets shared by all routes, so that applications using the same mapping
+ * compile it only once. Templates are thread safe; transformers created from them are not.
+ */
+public class TemplatesCache {
+
+    private static final int MAX_ENTRIES = 256;
+
+    // looked up only when routes are created or modified, never per message
+    private static final Map<Key, Templates> TEMPLATES = Collections.synchronizedMap(
+            new LinkedHashMap<Key, Templates>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, Templates> eldest) {
+                    return size() > MAX_ENTRIES;
+                }
+            });
+
+    public static Templates getTemplates(String transformerFactory, String xsl) throws TransformerConfigurationException {
+        Key key = new Key(transformerFactory, xsl);
+        Templates templates = TEMPLATES.get(key);
+        if (templates == null) {
+            templates = TransformerUtil.createFactory(transformerFactory).newTemplates(new StreamSource(new StringReader(xsl)));
+            TEMPLATES.put(key, templates);
+        }
+        return templates;
+    }
+
+    public static void clear() {
+        TEMPLATES.clear();
+    }
+
+    private static class Key {
+        private final String transformerFactory;
+        private final String xsl;
+        private final int hash;
+
+        private Key(String transformerFactory, String xsl) {
+            this.transformerFactory = transformerFactory;
+            this.xsl = xsl;
+            this.hash = 31 * transformerFactory.hashCode() + xsl.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) obj;
+            return hash == key.hash && transformerFactory.equals(key.transformerFactory) && xsl.equals(key.xsl);
+        }
+    }
+}
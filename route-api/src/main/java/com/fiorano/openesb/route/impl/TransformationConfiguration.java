@@ -12,6 +12,7 @@ public class TransformationConfiguration extends RouteOperationConfiguration {
     private String xsl;
     private String jmsXsl;
     private String transformerType;
+    private int transformerPoolSize = Runtime.getRuntime().availableProcessors();
 
     public String getXsl() {
         return xsl;
@@ -37,4 +38,11 @@ public class TransformationConfiguration extends RouteOperationConfiguration {
         this.jmsXsl = jmsXsl;
     }
 
+    public int getTransformerPoolSize() {
+        return transformerPoolSize;
+    }
+
+    public void setTransformerPoolSize(int transformerPoolSize) {
+        this.transformerPoolSize = transformerPoolSize;
+    }
 }
@@ -6,28 +6,31 @@
  */
 package com.fiorano.openesb.route.impl;
 
-import com.fiorano.openesb.route.JMSMessageTransformer;
 import com.fiorano.openesb.route.RouteOperationHandler;
 import com.fiorano.openesb.route.RouteOperationType;
-import com.fiorano.openesb.route.bundle.Activator;
 import com.fiorano.openesb.transport.Message;
 import com.fiorano.openesb.transport.impl.jms.JMSMessage;
 import com.fiorano.openesb.utils.StringUtil;
 import com.fiorano.openesb.utils.exception.FioranoException;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import javax.jms.TextMessage;
 
 public class TransformationOperationHandler implements RouteOperationHandler<JMSMessage> {
-    private JMSMessageTransformer msgTransformer;
-    private Logger logger;
+    private JmsMessageTransformerImpl msgTransformer;
     private TransformationConfiguration configuration;
 
     public TransformationOperationHandler(TransformationConfiguration configuration) throws Exception {
         this.configuration = configuration;
-        this.logger = LoggerFactory.getLogger(Activator.class);
-        msgTransformer = new JmsMessageTransformerImpl(configuration.getXsl(), configuration.getJmsXsl(), configuration.getTransformerType());
+        msgTransformer = new JmsMessageTransformerImpl(configuration.getXsl(), configuration.getJmsXsl(), configuration.getTransformerType(),
+                configuration.getTransformerPoolSize());
+    }
+
+    /**
+     * @return true if a failed transformation left the message as it was, which is not so when the jms xsl
+     * had already set some of its properties
+     */
+    boolean isIdempotent() {
+        return StringUtil.isEmpty(configuration.getJmsXsl());
     }
 
     public void handleOperation(JMSMessage message) throws FioranoException {
@@ -35,17 +38,27 @@ public class TransformationOperationHandler implements RouteOperationHandler<JMS
             return ;
         }
         try {
-            javax.jms.TextMessage jmsMessage = (TextMessage) message.getMessage();
-            String result = msgTransformer.transform(jmsMessage);
+            // the jms xsl sets properties on the message it transforms
+            javax.jms.TextMessage jmsMessage = (TextMessage) (StringUtil.isEmpty(configuration.getJmsXsl()) ?
+                    message.getMessage() : message.getWritableMessage());
+            MessageDocumentCache documentCache = MessageDocumentCache.get(message);
+            CarryForwardContextCache contextCache = CarryForwardContextCache.get(message);
+            // stylesheets read the properties of the message, the context property among them
+            contextCache.flush();
+            String result = msgTransformer.transform(jmsMessage, documentCache, contextCache);
             if(configuration.getRouteOperationType() == RouteOperationType.ROUTE_TRANSFORM) {
+                // clearing the body makes the body of a received message writable
+                jmsMessage.clearBody();
                 jmsMessage.setText(result);
+                documentCache.invalidate();
             } else {
-                CarryForwardContext carryForwardContext = JmsMessageUtil.getCarryForwardContext(jmsMessage);
+                CarryForwardContext carryForwardContext = contextCache.getContext();
                 carryForwardContext.setAppContext(result);
-                JmsMessageUtil.setCarryForwardContext(jmsMessage,carryForwardContext);
+                contextCache.setContext(carryForwardContext);
             }
         } catch (Exception e) {
-            logger.error("Exception occured while message transformation : "  + e.getMessage());
+            // the route decides whether to retry, divert or forward the message untransformed
+            throw new FioranoException("Exception occured while message transformation : " + e.getMessage(), e);
         }
     }
 }
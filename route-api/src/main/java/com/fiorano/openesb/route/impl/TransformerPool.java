@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) Fiorano Software and affiliates. All rights reserved. http://www.fiorano.com
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.fiorano.openesb.route.impl;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Bounded pool of transformers created from one compiled stylesheet. A transformer is used by one
+ * thread at a time and is reset before it goes back to the pool, so no parameter, resolver or
+ * error listener of one message leaks into the next. When all pooled transformers are in use
+ * a new one is created and discarded after use.
+ */
+public class TransformerPool {
+
+    private final Templates templates;
+    private final BlockingQueue<Transformer> idleTransformers;
+
+    public TransformerPool(Templates templates, int size) {
+        this.templates = templates;
+        this.idleTransformers = new ArrayBlockingQueue<>(Math.max(1, size));
+    }
+
+    public Transformer borrow() throws TransformerConfigurationException {
+        Transformer transformer = idleTransformers.poll();
+        return transformer != null ? transformer : templates.newTransformer();
+    }
+
+    public void release(Transformer transformer) {
+        try {
+            transformer.reset();
+        } catch (UnsupportedOperationException e) {
+            transformer.clearParameters();
+            transformer.setURIResolver(null);
+        }
+        idleTransformers.offer(transformer);
+    }
+}
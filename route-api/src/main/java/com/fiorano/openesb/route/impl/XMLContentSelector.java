@@ -9,31 +9,77 @@ package com.fiorano.openesb.route.impl;
 import com.fiorano.openesb.route.Selector;
 import com.fiorano.openesb.utils.exception.FioranoException;
 import com.fiorano.openesb.utils.xml.NameSpaceContextImpl;
-import org.xml.sax.InputSource;
+import org.w3c.dom.Document;
 
+import javax.xml.stream.XMLStreamException;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
-import java.io.StringReader;
 
 public class XMLContentSelector implements Selector {
 
-    private final XPath xPath;
     private XmlSelectorConfiguration selectorConfiguration;
 
-    public XMLContentSelector(XmlSelectorConfiguration selectionConfiguration) {
+    // null when streaming is disabled or the xpath is outside the subset the streaming engine understands
+    private final StreamingXPathSelector streamingSelector;
+
+    // XPath and XPathExpression are not thread safe, so every route thread compiles
+    // the expression once and keeps it for subsequent messages.
+    private final ThreadLocal<XPathExpression> expressions = new ThreadLocal<XPathExpression>();
+
+    public XMLContentSelector(XmlSelectorConfiguration selectionConfiguration) throws FioranoException {
         this.selectorConfiguration = selectionConfiguration;
-        XPathFactory xpf = XPathFactory.newInstance();
-        xPath = xpf.newXPath();
-        xPath.setNamespaceContext(new NameSpaceContextImpl(selectionConfiguration.getNsPrefixMap()));
+        this.streamingSelector = selectionConfiguration.isStreamingEnabled()
+                ? StreamingXPathSelector.compile(selectionConfiguration.getXpath(), selectionConfiguration.getNsPrefixMap())
+                : null;
+        // compile eagerly so that an invalid xpath is reported when the route is created
+        expressions.set(compileExpression());
     }
 
     public boolean isMessageSelected(String message) throws FioranoException {
-        Object evaluate;
+        return isMessageSelected(message, new MessageDocumentCache());
+    }
+
+    /**
+     * Evaluates the selector, reusing a document already parsed for this message if there is one.
+     * If the selector cannot stream the content, the document it parses is left in the cache for
+     * the handlers that follow.
+     */
+    public boolean isMessageSelected(String message, MessageDocumentCache documentCache) throws FioranoException {
+        Document document = documentCache.peekDocument(message);
+        if (document == null && streamingSelector != null) {
+            try {
+                return streamingSelector.isSelected(message);
+            } catch (XMLStreamException e) {
+                throw new FioranoException(e);
+            }
+        }
+        if (document == null) {
+            document = documentCache.getDocument(message);
+        }
+        try {
+            return (Boolean) getExpression().evaluate(document, XPathConstants.BOOLEAN);
+        } catch (XPathExpressionException e) {
+            throw new FioranoException(e);
+        }
+    }
+
+    private XPathExpression getExpression() throws FioranoException {
+        XPathExpression expression = expressions.get();
+        if (expression == null) {
+            expression = compileExpression();
+            expressions.set(expression);
+        }
+        return expression;
+    }
+
+    private XPathExpression compileExpression() throws FioranoException {
+        XPath xPath = XPathFactory.newInstance().newXPath();
+        xPath.setNamespaceContext(new NameSpaceContextImpl(selectorConfiguration.getNsPrefixMap()));
         try {
-            evaluate = xPath.evaluate(selectorConfiguration.getXpath(), new InputSource(new StringReader(message)), XPathConstants.BOOLEAN);
-            return (boolean) evaluate;
+            return xPath.compile(selectorConfiguration.getXpath());
         } catch (XPathExpressionException e) {
             throw new FioranoException(e);
         }
@@ -16,6 +16,7 @@ public class XmlSelectorConfiguration extends SelectorConfiguration {
     private String xpath;
     private Map<String,String> nsPrefixMap = new HashMap<>();
     private String target;
+    private boolean streamingEnabled = true;
 
     public XmlSelectorConfiguration(String target) {
         this.target = target;
@@ -40,4 +41,15 @@ public class XmlSelectorConfiguration extends SelectorConfiguration {
     public String getTarget() {
         return target;
     }
+
+    /**
+     * @return true if simple xpaths are evaluated on a StAX stream instead of a DOM
+     */
+    public boolean isStreamingEnabled() {
+        return streamingEnabled;
+    }
+
+    public void setStreamingEnabled(boolean streamingEnabled) {
+        this.streamingEnabled = streamingEnabled;
+    }
 }
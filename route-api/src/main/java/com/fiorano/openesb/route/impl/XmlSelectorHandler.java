@@ -8,7 +8,6 @@ package com.fiorano.openesb.route.impl;
 
 import com.fiorano.openesb.route.FilterMessageException;
 import com.fiorano.openesb.route.RouteOperationHandler;
-import com.fiorano.openesb.route.Selector;
 import com.fiorano.openesb.route.bundle.Activator;
 import com.fiorano.openesb.transport.impl.jms.JMSMessage;
 import com.fiorano.openesb.utils.exception.FioranoException;
@@ -18,11 +17,11 @@ import org.slf4j.LoggerFactory;
 import javax.jms.JMSException;
 
 public class XmlSelectorHandler implements RouteOperationHandler<JMSMessage> {
-    private Selector selector;
+    private XMLContentSelector selector;
     private XmlSelectorConfiguration selectorConfiguration;
     private Logger logger;
 
-    public XmlSelectorHandler(XmlSelectorConfiguration selectorConfiguration) {
+    public XmlSelectorHandler(XmlSelectorConfiguration selectorConfiguration) throws FioranoException {
         this.selectorConfiguration = selectorConfiguration;
         this.selector = new XMLContentSelector(selectorConfiguration);
         this.logger = LoggerFactory.getLogger(Activator.class);
@@ -32,8 +31,8 @@ public class XmlSelectorHandler implements RouteOperationHandler<JMSMessage> {
     public void handleOperation(JMSMessage message) throws FilterMessageException, FioranoException {
         try {
             String content= selectorConfiguration.getTarget().equalsIgnoreCase("Body") ?
-                    message.getBody() : JmsMessageUtil.getApplicationContext(message.getMessage());
-            if (!selector.isMessageSelected(content)) {
+                    message.getBody() : CarryForwardContextCache.get(message).getApplicationContext();
+            if (!selector.isMessageSelected(content, MessageDocumentCache.get(message))) {
                 throw new FilterMessageException();
             }
         } catch (JMSException e) {
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) Fiorano Software and affiliates. All rights reserved. http://www.fiorano.com
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.fiorano.openesb.route.metrics;
+
+import com.fiorano.openesb.route.RouteOperationType;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Metrics of one operation of a route. The latency of an operation includes the time spent on its retries.
+ */
+public class OperationMetrics implements OperationMetricsMBean {
+    private final RouteOperationType operationType;
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong filteredCount = new AtomicLong();
+    private final AtomicLong errorCount = new AtomicLong();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    public OperationMetrics(RouteOperationType operationType) {
+        this.operationType = operationType;
+    }
+
+    public void record(long nanos) {
+        count.incrementAndGet();
+        latency.record(nanos);
+    }
+
+    public void filtered() {
+        filteredCount.incrementAndGet();
+    }
+
+    public void failed() {
+        errorCount.incrementAndGet();
+    }
+
+    public RouteOperationType getOperationType() {
+        return operationType;
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public String getOperation() {
+        return operationType.name();
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getFilteredCount() {
+        return filteredCount.get();
+    }
+
+    public long getErrorCount() {
+        return errorCount.get();
+    }
+
+    public long getMeanLatencyMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(latency.getMean());
+    }
+
+    public long getLatencyP50Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(latency.getValueAtPercentile(50));
+    }
+
+    public long getLatencyP99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(latency.getValueAtPercentile(99));
+    }
+
+    public long getLatencyP999Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(latency.getValueAtPercentile(99.9));
+    }
+
+    public long getMaxLatencyMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(latency.getMax());
+    }
+
+    public void reset() {
+        count.set(0);
+        filteredCount.set(0);
+        errorCount.set(0);
+        latency.reset();
+    }
+}
@@ -0,0 +1,20 @@
+/*
+ * Copyright (c) Fiorano Software and affiliates. All rights reserved. http://www.fiorano.com
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.fiorano.openesb.route.metrics;
+
+public interface OperationMetricsMBean {
+    String getOperation();
+    long getCount();
+    long getFilteredCount();
+    long getErrorCount();
+    long getMeanLatencyMicros();
+    long getLatencyP50Micros();
+    long getLatencyP99Micros();
+    long getLatencyP999Micros();
+    long getMaxLatencyMicros();
+    void reset();
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) Fiorano Software and affiliates. All rights reserved. http://www.fiorano.com
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.fiorano.openesb.route.metrics;
+
+import com.fiorano.openesb.route.RouteOperationType;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Metrics of a route: the messages it received, how many went through all its operations, were filtered out or
+ * failed, the size of their bodies, and the time they took through the operations. Each operation of the route
+ * has its own {@link OperationMetrics}. The spool counters are those of the spool of the route, 0 when it has none.
+ */
+public class RouteMetrics implements RouteMetricsMBean {
+    private final String routeName;
+    private final AtomicLong receivedCount = new AtomicLong();
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong filteredCount = new AtomicLong();
+    private final AtomicLong errorCount = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    // operations are added when handlers are set, which is not on the path of messages
+    private final Map<RouteOperationType, OperationMetrics> operations = new EnumMap<>(RouteOperationType.class);
+
+    // set while the route spools the messages its target does not take
+    private volatile SpoolStatistics spool;
+
+    // set while the metrics are registered with the RouteMetricsRegistry
+    private volatile String application;
+    private volatile String applicationVersion;
+
+    public RouteMetrics(String routeName) {
+        this.routeName = routeName;
+    }
+
+    public void received(long size) {
+        receivedCount.incrementAndGet();
+        if (size > 0) {
+            bytes.addAndGet(size);
+        }
+    }
+
+    public void completed() {
+        completedCount.incrementAndGet();
+    }
+
+    public void filtered() {
+        filteredCount.incrementAndGet();
+    }
+
+    public void failed() {
+        errorCount.incrementAndGet();
+    }
+
+    public void record(long nanos) {
+        latency.record(nanos);
+    }
+
+    /**
+     * @return metrics of the operation, created and registered on first use
+     */
+    public OperationMetrics getOperation(RouteOperationType operationType) {
+        OperationMetrics metrics;
+        synchronized (operations) {
+            metrics = operations.get(operationType);
+            if (metrics != null) {
+                return metrics;
+            }
+            metrics = new OperationMetrics(operationType);
+            operations.put(operationType, metrics);
+        }
+        if (application != null) {
+            RouteMetricsRegistry.registerOperation(this, metrics);
+        }
+        return metrics;
+    }
+
+    public Collection<OperationMetrics> getOperations() {
+        synchronized (operations) {
+            return new ArrayList<>(operations.values());
+        }
+    }
+
+    public void setSpool(SpoolStatistics spool) {
+        this.spool = spool;
+    }
+
+    void setRegistration(String application, String applicationVersion) {
+        this.application = application;
+        this.applicationVersion = applicationVersion;
+    }
+
+    public String getApplication() {
+        return application;
+    }
+
+    public String getApplicationVersion() {
+        return applicationVersion;
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public String getRouteName() {
+        return routeName;
+    }
+
+    public long getReceivedCount() {
+        return receivedCount.get();
+    }
+
+    public long getCompletedCount() {
+        return completedCount.get();
+    }
+
+    public long getFilteredCount() {
+        return filteredCount.get();
+    }
+
+    public long getErrorCount() {
+        return errorCount.get();
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    public long getMeanLatencyMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(latency.getMean());
+    }
+
+    public long getLatencyP50Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(latency.getValueAtPercentile(50));
+    }
+
+    public long getLatencyP99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(latency.getValueAtPercentile(99));
+    }
+
+    public long getLatencyP999Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(latency.getValueAtPercentile(99.9));
+    }
+
+    public long getMaxLatencyMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(latency.getMax());
+    }
+
+    public int getSpoolPendingCount() {
+        SpoolStatistics spool = this.spool;
+        return spool != null ? spool.getPendingCount() : 0;
+    }
+
+    public long getSpoolPendingBytes() {
+        SpoolStatistics spool = this.spool;
+        return spool != null ? spool.getPendingBytes() : 0;
+    }
+
+    public long getSpoolDiskSize() {
+        SpoolStatistics spool = this.spool;
+        return spool != null ? spool.getDiskSize() : 0;
+    }
+
+    public long getSpooledCount() {
+        SpoolStatistics spool = this.spool;
+        return spool != null ? spool.getSpooledCount() : 0;
+    }
+
+    public long getSpoolReplayedCount() {
+        SpoolStatistics spool = this.spool;
+        return spool != null ? spool.getReplayedCount() : 0;
+    }
+
+    public long getSpoolDroppedCount() {
+        SpoolStatistics spool = this.spool;
+        return spool != null ? spool.getDroppedCount() : 0;
+    }
+
+    public long getSpoolFailedReplayCount() {
+        SpoolStatistics spool = this.spool;
+        return spool != null ? spool.getFailedReplayCount() : 0;
+    }
+
+    public void reset() {
+        receivedCount.set(0);
+        completedCount.set(0);
+        filteredCount.set(0);
+        errorCount.set(0);
+        bytes.set(0);
+        latency.reset();
+        for (OperationMetrics operation : getOperations()) {
+            operation.reset();
+        }
+    }
+}
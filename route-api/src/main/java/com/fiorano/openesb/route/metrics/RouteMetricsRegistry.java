@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) Fiorano Software and affiliates. All rights reserved. http://www.fiorano.com
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.fiorano.openesb.route.metrics;
+
+import com.fiorano.openesb.route.bundle.Activator;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the metrics of the routes of running applications and registers them as MBeans named
+ * com.fiorano.openesb:type=Route,application=..,version=..,route=.. with one
+ * com.fiorano.openesb:type=RouteOperation,application=..,version=..,route=..,operation=.. for each operation.
+ */
+public final class RouteMetricsRegistry {
+    private static final String DOMAIN = "com.fiorano.openesb";
+    private static final Map<String, RouteMetrics> METRICS = new ConcurrentHashMap<>();
+
+    private RouteMetricsRegistry() {
+    }
+
+    public static void register(String application, String applicationVersion, RouteMetrics metrics) {
+        String key = getKey(application, applicationVersion, metrics.getRouteName());
+        RouteMetrics previous = METRICS.put(key, metrics);
+        if (previous != null && previous != metrics) {
+            unregisterMBeans(previous);
+        }
+        metrics.setRegistration(application, applicationVersion);
+        registerMBean(metrics, getObjectName(metrics, null));
+        for (OperationMetrics operation : metrics.getOperations()) {
+            registerOperation(metrics, operation);
+        }
+    }
+
+    public static void unregister(RouteMetrics metrics) {
+        String application = metrics.getApplication();
+        if (application == null) {
+            return;
+        }
+        METRICS.remove(getKey(application, metrics.getApplicationVersion(), metrics.getRouteName()));
+        unregisterMBeans(metrics);
+        metrics.setRegistration(null, null);
+    }
+
+    /**
+     * @return metrics of the routes of the application, in no particular order
+     */
+    public static List<RouteMetrics> getMetrics(String application, String applicationVersion) {
+        List<RouteMetrics> metrics = new ArrayList<>();
+        for (RouteMetrics routeMetrics : METRICS.values()) {
+            if (application.equals(routeMetrics.getApplication()) && applicationVersion.equals(routeMetrics.getApplicationVersion())) {
+                metrics.add(routeMetrics);
+            }
+        }
+        return metrics;
+    }
+
+    static void registerOperation(RouteMetrics metrics, OperationMetrics operation) {
+        registerMBean(operation, getObjectName(metrics, operation));
+    }
+
+    private static void unregisterMBeans(RouteMetrics metrics) {
+        unregisterMBean(getObjectName(metrics, null));
+        for (OperationMetrics operation : metrics.getOperations()) {
+            unregisterMBean(getObjectName(metrics, operation));
+        }
+    }
+
+    private static void registerMBean(Object mbean, ObjectName name) {
+        if (name == null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(mbean, name);
+        } catch (JMException e) {
+            LoggerFactory.getLogger(Activator.class).warn("Could not register route metrics " + name + " : " + e.getMessage());
+        }
+    }
+
+    private static void unregisterMBean(ObjectName name) {
+        if (name == null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            LoggerFactory.getLogger(Activator.class).warn("Could not unregister route metrics " + name + " : " + e.getMessage());
+        }
+    }
+
+    private static ObjectName getObjectName(RouteMetrics metrics, OperationMetrics operation) {
+        String application = metrics.getApplication();
+        if (application == null) {
+            return null;
+        }
+        StringBuilder name = new StringBuilder(DOMAIN).append(":type=").append(operation == null ? "Route" : "RouteOperation")
+                .append(",application=").append(ObjectName.quote(application))
+                .append(",version=").append(ObjectName.quote(metrics.getApplicationVersion()))
+                .append(",route=").append(ObjectName.quote(metrics.getRouteName()));
+        if (operation != null) {
+            name.append(",operation=").append(operation.getOperation());
+        }
+        try {
+            return new ObjectName(name.toString());
+        } catch (JMException e) {
+            LoggerFactory.getLogger(Activator.class).warn("Invalid name for route metrics " + name + " : " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static String getKey(String application, String applicationVersion, String routeName) {
+        return application + ":" + applicationVersion + ":" + routeName;
+    }
+}
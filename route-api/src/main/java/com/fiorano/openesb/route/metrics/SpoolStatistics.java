@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) Fiorano Software and affiliates. All rights reserved. http://www.fiorano.com
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.fiorano.openesb.route.metrics;
+
+/**
+ * Counters of the spool holding the messages a route could not send to its target.
+ */
+public interface SpoolStatistics {
+    /**
+     * @return number of messages waiting to be sent
+     */
+    int getPendingCount();
+
+    /**
+     * @return size of the messages waiting to be sent, in bytes
+     */
+    long getPendingBytes();
+
+    /**
+     * @return size of the spool on disk, in bytes
+     */
+    long getDiskSize();
+
+    long getSpooledCount();
+
+    long getReplayedCount();
+
+    /**
+     * @return number of messages lost because the spool was full, they expired or could not be stored or read back
+     */
+    long getDroppedCount();
+
+    long getFailedReplayCount();
+}
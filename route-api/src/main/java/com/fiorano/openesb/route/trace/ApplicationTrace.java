@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) Fiorano Software and affiliates. All rights reserved. http://www.fiorano.com
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.fiorano.openesb.route.trace;
+
+import com.fiorano.openesb.route.impl.CarryForwardContext;
+import com.fiorano.openesb.route.metrics.LatencyHistogram;
+import com.fiorano.openesb.utils.MessagePropertyNames;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracing of the messages flowing through the routes of one application. A sampled message carries its trace in
+ * the {@link MessagePropertyNames#TRACE} carry forward property as trace id, last port and the time it passed it,
+ * so that it survives the services in between. Every port that stamps the message records the time since the
+ * previous port as a hop.
+ */
+public class ApplicationTrace {
+    private static final char SEPARATOR = '|';
+
+    private final String application;
+    private final String applicationVersion;
+    private volatile double sampleRate;
+    private final ConcurrentMap<String, LatencyHistogram> hops = new ConcurrentHashMap<>();
+    private final AtomicLong sampledCount = new AtomicLong();
+
+    ApplicationTrace(String application, String applicationVersion, double sampleRate) {
+        this.application = application;
+        this.applicationVersion = applicationVersion;
+        setSampleRate(sampleRate);
+    }
+
+    /**
+     * Stamps the message as it passes a port. Starts a trace on a message that has none if it is sampled, and
+     * on a traced message records the hop from the port it passed before.
+     * @param point name of the port, service instance and port name
+     * @return true if the context was changed and has to be stored on the message
+     */
+    public boolean stamp(CarryForwardContext context, String point) {
+        String trace = context.getCarryFwdProperty(MessagePropertyNames.TRACE);
+        long now = MessageTracer.currentTimeNanos();
+        long traceId;
+        if (trace == null) {
+            double sampleRate = this.sampleRate;
+            if (sampleRate <= 0 || (sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate)) {
+                return false;
+            }
+            traceId = ThreadLocalRandom.current().nextLong();
+            sampledCount.incrementAndGet();
+        } else {
+            int idEnd = trace.indexOf(SEPARATOR);
+            int pointEnd = trace.lastIndexOf(SEPARATOR);
+            if (idEnd < 0 || pointEnd <= idEnd) {
+                return false;
+            }
+            long previousNanos;
+            try {
+                traceId = Long.parseLong(trace.substring(0, idEnd), 16);
+                previousNanos = Long.parseLong(trace.substring(pointEnd + 1));
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            String previousPoint = trace.substring(idEnd + 1, pointEnd);
+            getHop(previousPoint + " -> " + point).record(now - previousNanos);
+            MessageTracer.write(new TraceRecord(traceId, application, applicationVersion, previousPoint, point, previousNanos, now));
+        }
+        context.setCarryFwdProperty(MessagePropertyNames.TRACE, Long.toHexString(traceId) + SEPARATOR + point + SEPARATOR + now);
+        return true;
+    }
+
+    private LatencyHistogram getHop(String hop) {
+        LatencyHistogram histogram = hops.get(hop);
+        if (histogram == null) {
+            LatencyHistogram created = new LatencyHistogram();
+            histogram = hops.putIfAbsent(hop, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * @return latency of each hop, keyed by "from port -> to port"
+     */
+    public Map<String, LatencyHistogram> getHops() {
+        return Collections.unmodifiableMap(hops);
+    }
+
+    public String getApplication() {
+        return application;
+    }
+
+    public String getApplicationVersion() {
+        return applicationVersion;
+    }
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * @param sampleRate fraction of the messages entering the application without a trace that are traced, 0 turns
+     *                   tracing off and 1 traces every message
+     */
+    public void setSampleRate(double sampleRate) {
+        this.sampleRate = Math.max(0, Math.min(1, sampleRate));
+    }
+
+    public long getSampledCount() {
+        return sampledCount.get();
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) Fiorano Software and affiliates. All rights reserved. http://www.fiorano.com
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.fiorano.openesb.route.trace;
+
+import com.fiorano.openesb.route.bundle.Activator;
+import com.fiorano.openesb.transport.impl.jms.TransportConfig;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps the {@link ApplicationTrace} of each application and the file sampled traces are written to.
+ * <p>
+ * Tracing is off unless turned on in the transport configuration: ROUTE_TRACE_SAMPLE_RATE is the fraction of
+ * messages traced in every application, and ROUTE_TRACE_SAMPLE_RATE.&lt;application GUID&gt; overrides it for one
+ * application. Traces go to ROUTE_TRACE_DIR, by default data/trace, in files of ROUTE_TRACE_FILE_SIZE bytes of which
+ * the last ROUTE_TRACE_FILE_COUNT are kept.
+ * <p>
+ * Messages are stamped by the routes, which all run in this JVM, with a clock that counts nanoseconds since the
+ * epoch from the start time of the JVM on, so the hops between ports can be compared with each other.
+ */
+public final class MessageTracer {
+    private static final long DEFAULT_FILE_SIZE = 16 * 1024 * 1024;
+    private static final int DEFAULT_FILE_COUNT = 8;
+    private static final int QUEUE_CAPACITY = 8192;
+    private static final long BASE_MILLIS = System.currentTimeMillis();
+    private static final long BASE_NANOS = System.nanoTime();
+    private static final ConcurrentMap<String, ApplicationTrace> TRACES = new ConcurrentHashMap<>();
+    private static TraceFileWriter writer;
+
+    private MessageTracer() {
+    }
+
+    public static long currentTimeNanos() {
+        return BASE_MILLIS * 1000000 + (System.nanoTime() - BASE_NANOS);
+    }
+
+    /**
+     * @return the trace of the application, created with the configured sample rate
+     */
+    public static ApplicationTrace getTrace(String application, String applicationVersion) {
+        String key = application + ":" + applicationVersion;
+        ApplicationTrace trace = TRACES.get(key);
+        if (trace == null) {
+            TransportConfig config = TransportConfig.getInstance();
+            String sampleRate = config.getValue("ROUTE_TRACE_SAMPLE_RATE." + application, config.getValue("ROUTE_TRACE_SAMPLE_RATE", "0"));
+            ApplicationTrace created;
+            try {
+                created = new ApplicationTrace(application, applicationVersion, Double.parseDouble(sampleRate));
+            } catch (NumberFormatException e) {
+                LoggerFactory.getLogger(Activator.class).warn("Invalid trace sample rate " + sampleRate + " for application " + application + ", tracing is off");
+                created = new ApplicationTrace(application, applicationVersion, 0);
+            }
+            trace = TRACES.putIfAbsent(key, created);
+            if (trace == null) {
+                trace = created;
+            }
+        }
+        return trace;
+    }
+
+    /**
+     * @return the trace of the application, null if none of its routes was created
+     */
+    public static ApplicationTrace findTrace(String application, String applicationVersion) {
+        return TRACES.get(application + ":" + applicationVersion);
+    }
+
+    public static void removeTrace(String application, String applicationVersion) {
+        TRACES.remove(application + ":" + applicationVersion);
+    }
+
+    static void write(TraceRecord record) {
+        getWriter().write(record);
+    }
+
+    private static synchronized TraceFileWriter getWriter() {
+        if (writer == null) {
+            TransportConfig config = TransportConfig.getInstance();
+            File directory = new File(config.getValue("ROUTE_TRACE_DIR", System.getProperty("user.dir") + File.separator
+                    + "data" + File.separator + "trace"));
+            writer = new TraceFileWriter(directory,
+                    Long.parseLong(config.getValue("ROUTE_TRACE_FILE_SIZE", String.valueOf(DEFAULT_FILE_SIZE))),
+                    Integer.parseInt(config.getValue("ROUTE_TRACE_FILE_COUNT", String.valueOf(DEFAULT_FILE_COUNT))),
+                    QUEUE_CAPACITY);
+        }
+        return writer;
+    }
+
+    /**
+     * Writes the trace records still queued and closes the trace file.
+     */
+    public static synchronized void stop() {
+        if (writer != null) {
+            writer.stop();
+            writer = null;
+        }
+    }
+}
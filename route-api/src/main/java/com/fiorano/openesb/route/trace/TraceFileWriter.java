@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) Fiorano Software and affiliates. All rights reserved. http://www.fiorano.com
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.fiorano.openesb.route.trace;
+
+import com.fiorano.openesb.route.bundle.Activator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes trace records to a rolling set of binary files, trace-NNNNNNNNNNNNNNNN.bin in the trace directory. A
+ * file starts with the magic number {@link #MAGIC} and the format version, followed by records as written by
+ * {@link TraceRecord#writeTo}. When a file reaches its maximum size the next one is started and the oldest
+ * beyond the file count are deleted.
+ * <p>
+ * Records are written by a background thread so that routes never wait for the disk; when it falls behind,
+ * further records are dropped and counted.
+ */
+public class TraceFileWriter {
+    public static final int MAGIC = 0x46545243;
+    public static final short VERSION = 1;
+    private static final Logger LOGGER = LoggerFactory.getLogger(Activator.class);
+    private static final String PREFIX = "trace-";
+    private static final String SUFFIX = ".bin";
+
+    private final File directory;
+    private final long maxFileSize;
+    private final int maxFiles;
+    private final BlockingQueue<TraceRecord> queue;
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final Thread writerThread;
+    private volatile boolean stopped;
+
+    private long sequence;
+    private DataOutputStream out;
+
+    public TraceFileWriter(File directory, long maxFileSize, int maxFiles, int queueCapacity) {
+        this.directory = directory;
+        this.maxFileSize = maxFileSize;
+        this.maxFiles = Math.max(1, maxFiles);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.writerThread = new Thread(new Runnable() {
+            public void run() {
+                writeRecords();
+            }
+        }, "RouteTrace-Writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    public void write(TraceRecord record) {
+        if (!queue.offer(record)) {
+            droppedCount.incrementAndGet();
+        }
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public void stop() {
+        stopped = true;
+        writerThread.interrupt();
+        try {
+            writerThread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeRecords() {
+        while (!stopped) {
+            try {
+                TraceRecord record = queue.poll(1, TimeUnit.SECONDS);
+                if (record == null) {
+                    flush();
+                    continue;
+                }
+                write(getOutput(), record);
+            } catch (InterruptedException e) {
+                break;
+            } catch (IOException e) {
+                LOGGER.warn("Could not write message trace to " + directory + " : " + e.getMessage());
+                close();
+            }
+        }
+        TraceRecord record;
+        try {
+            while ((record = queue.poll()) != null) {
+                write(getOutput(), record);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Could not write message trace to " + directory + " : " + e.getMessage());
+        }
+        close();
+    }
+
+    private void write(DataOutputStream out, TraceRecord record) throws IOException {
+        record.writeTo(out);
+        if (out.size() >= maxFileSize) {
+            close();
+        }
+    }
+
+    private DataOutputStream getOutput() throws IOException {
+        if (out == null) {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Could not create directory " + directory);
+            }
+            String[] files = listFiles();
+            if (sequence == 0 && files.length > 0) {
+                String last = files[files.length - 1];
+                sequence = Long.parseLong(last.substring(PREFIX.length(), last.length() - SUFFIX.length()));
+            }
+            sequence++;
+            File file = new File(directory, PREFIX + String.format("%016d", sequence) + SUFFIX);
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            deleteOldFiles();
+        }
+        return out;
+    }
+
+    private void deleteOldFiles() {
+        String[] files = listFiles();
+        for (int i = 0; i < files.length - maxFiles; i++) {
+            if (!new File(directory, files[i]).delete()) {
+                LOGGER.warn("Could not delete message trace file " + files[i]);
+            }
+        }
+    }
+
+    private String[] listFiles() {
+        String[] files = directory.list(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.startsWith(PREFIX) && name.endsWith(SUFFIX)
+                        && name.length() == PREFIX.length() + 16 + SUFFIX.length();
+            }
+        });
+        if (files == null) {
+            return new String[0];
+        }
+        // the sequence is zero padded, so the names sort in the order the files were written
+        Arrays.sort(files);
+        return files;
+    }
+
+    private void flush() {
+        if (out != null) {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                LOGGER.warn("Could not write message trace to " + directory + " : " + e.getMessage());
+                close();
+            }
+        }
+    }
+
+    private void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                LOGGER.warn("Could not close message trace file : " + e.getMessage());
+            }
+            out = null;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) Fiorano Software and affiliates. All rights reserved. http://www.fiorano.com
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.fiorano.openesb.route.trace;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * One hop of a traced message, from the port it passed before to the port it passed now. Times are nanoseconds
+ * since the epoch as given by {@link MessageTracer#currentTimeNanos()}.
+ */
+public class TraceRecord {
+    private final long traceId;
+    private final String application;
+    private final String applicationVersion;
+    private final String from;
+    private final String to;
+    private final long fromNanos;
+    private final long toNanos;
+
+    public TraceRecord(long traceId, String application, String applicationVersion, String from, String to, long fromNanos, long toNanos) {
+        this.traceId = traceId;
+        this.application = application;
+        this.applicationVersion = applicationVersion;
+        this.from = from;
+        this.to = to;
+        this.fromNanos = fromNanos;
+        this.toNanos = toNanos;
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeLong(traceId);
+        out.writeUTF(application);
+        out.writeUTF(applicationVersion);
+        out.writeUTF(from);
+        out.writeUTF(to);
+        out.writeLong(fromNanos);
+        out.writeLong(toNanos);
+    }
+
+    public static TraceRecord readFrom(DataInput in) throws IOException {
+        return new TraceRecord(in.readLong(), in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF(), in.readLong(), in.readLong());
+    }
+
+    public long getTraceId() {
+        return traceId;
+    }
+
+    public String getApplication() {
+        return application;
+    }
+
+    public String getApplicationVersion() {
+        return applicationVersion;
+    }
+
+    public String getFrom() {
+        return from;
+    }
+
+    public String getTo() {
+        return to;
+    }
+
+    public long getFromNanos() {
+        return fromNanos;
+    }
+
+    public long getToNanos() {
+        return toNanos;
+    }
+}
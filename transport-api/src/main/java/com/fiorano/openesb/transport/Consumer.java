@@ -10,5 +10,11 @@ package com.fiorano.openesb.transport;
 
 public interface Consumer<M extends Message> {
     void attachMessageListener(MessageListener<M> messageListener) throws Exception;
+
+    /**
+     * Receives the next message, waiting at most timeout milliseconds.
+     * @return the message, or null if none arrived in time or the consumer was closed
+     */
+    M receive(long timeout) throws Exception;
     void close() throws Exception;
 }
@@ -15,4 +15,20 @@ public interface Message<M> {
 
     void setInternalMessage(M message);
 
+    /**
+     * Returns the message for changing its properties. A message marked copy on write is made
+     * writable on the first call; reading through {@link #getMessage()} never copies.
+     */
+    M getWritableMessage() throws Exception;
+
+    /**
+     * Attributes hold state derived from the message while it is being processed in this JVM,
+     * for example parsed content shared between route handlers. They are never sent with the message.
+     */
+    Object getAttribute(String name);
+
+    void setAttribute(String name, Object value);
+
+    Object removeAttribute(String name);
+
 }
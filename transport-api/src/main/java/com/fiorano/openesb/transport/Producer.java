@@ -10,6 +10,12 @@ public interface Producer<M extends Message> {
 
     void send(M message) throws Exception;
 
+    /**
+     * Sends the message without waiting for the provider, the listener is told the outcome.
+     * Messages are sent in the order they are passed in. When the in-flight window of the producer
+     * is full the call blocks until an earlier send completes.
+     */
+    void send(M message, SendCompletionListener<M> listener) throws Exception;
+
     void close() throws Exception;
 }
-
@@ -0,0 +1,17 @@
+/*
+ * Copyright (c) Fiorano Software and affiliates. All rights reserved. http://www.fiorano.com
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.fiorano.openesb.transport;
+
+/**
+ * Notified when a message handed to {@link Producer#send(Message, SendCompletionListener)} has been sent
+ * or could not be sent. Callbacks may run on a thread other than the one that called send.
+ */
+public interface SendCompletionListener<M extends Message> {
+    void onCompletion(M message);
+
+    void onException(M message, Exception exception);
+}
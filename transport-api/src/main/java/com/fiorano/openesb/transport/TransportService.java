@@ -23,4 +23,14 @@ public interface TransportService<E extends Port, M extends Message> {
 
     void closeSession(String sessionId);
 
+    /**
+     * Commits the work done on a transacted session, does nothing for other sessions.
+     */
+    void commit(String sessionId) throws Exception;
+
+    /**
+     * Rolls back the work done on a transacted session, does nothing for other sessions.
+     */
+    void rollback(String sessionId) throws Exception;
+
 }
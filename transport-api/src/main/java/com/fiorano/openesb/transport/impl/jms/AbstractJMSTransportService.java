@@ -12,24 +12,71 @@ import org.slf4j.LoggerFactory;
 
 import javax.jms.*;
 import javax.jms.Message;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public abstract class AbstractJMSTransportService implements TransportService<JMSPort, JMSMessage> {
 
     protected Properties properties;
     private Map<String, Session> sessions = new ConcurrentHashMap<>();
-    private Connection connection;
+    private Map<String, MessageProducer> anonymousProducers = new ConcurrentHashMap<>();
+    // destinations by type and name, creating them is a round trip to the broker for some providers
+    private ConcurrentMap<String, JMSPort> ports = new ConcurrentHashMap<>();
+    // physical connections to the broker, route sessions are assigned to them in turn
+    private List<Connection> connections = new CopyOnWriteArrayList<>();
+    private AtomicInteger nextConnection = new AtomicInteger();
+    // connection of the sessions asynchronous sends go out on when the provider sends them without waiting for
+    // the broker, created on first use; route sessions stay on connections that wait
+    private Connection asyncSendConnection;
+    // sessions for creating destinations and messages outside of routes
+    private volatile SessionPool sessionPool;
+    // consumers and producers created through this service, re-created on new sessions after a reconnect
+    private Set<JMSConsumer> consumers = Collections.newSetFromMap(new ConcurrentHashMap<JMSConsumer, Boolean>());
+    private Set<JMSProducer> producers = Collections.newSetFromMap(new ConcurrentHashMap<JMSProducer, Boolean>());
+    private final Object recoveryLock = new Object();
+    private volatile boolean recovering;
+    private volatile boolean stopped;
+    private Thread recoveryThread;
 
     protected AbstractJMSTransportService(Properties properties) throws Exception {
         this.properties = properties;
     }
 
     protected void initialize() throws Exception {
+        int connectionCount = Math.max(1, Integer.valueOf(TransportConfig.getInstance().getValue("CONNECTION_COUNT", "1")));
+        for (int i = 0; i < connectionCount; i++) {
+            connections.add(createConnection());
+        }
+        sessionPool = new SessionPool(connections, getSessionPoolSize());
+        registerSessionPool();
+    }
+
+    private int getSessionPoolSize() {
+        return Integer.valueOf(TransportConfig.getInstance().getValue("SESSION_POOL_SIZE",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+    }
+
+    private ConnectionFactory getConnectionFactory() throws Exception {
+        return ((AbstractJMSConnectionProvider) getConnectionProvider()).getConnectionFactory("ConnectionFactory");
+    }
+
+    private Connection createConnection() throws Exception {
+        Connection connection;
         String connectionRetryCount = TransportConfig.getInstance().getValue("CONNECTION_RETRY_COUNT", "10");
         int count = Integer.valueOf(connectionRetryCount), i = 0;
-        while ((connection = getConnection(((AbstractJMSConnectionProvider) getConnectionProvider()).getConnectionFactory("ConnectionFactory")))== null && i++ < count) {
+        while ((connection = getConnection(getConnectionFactory()))== null && i++ < count) {
             try {
                 String connectionRetryInterval = TransportConfig.getInstance().getValue("CONNECTION_RETRY_INTERVAL", "3000");
                 System.out.println("Waiting for connection with JMS provider. Attempt - " + i);
@@ -41,12 +88,18 @@ public abstract class AbstractJMSTransportService implements TransportService<JM
         if(connection == null) {
             throw new JMSException("Could not connect to JMS server");
         }
+        return connection;
     }
 
     private Connection getConnection(ConnectionFactory cf) throws JMSException {
         try {
             TransportConfig providerConfig = TransportConfig.getInstance();
             Connection connection = cf.createConnection(providerConfig.getValue("userName"), providerConfig.getValue("password"));
+            connection.setExceptionListener(new ExceptionListener() {
+                public void onException(JMSException exception) {
+                    connectionLost(exception);
+                }
+            });
             connection.start();
             return connection;
         } catch (JMSException e) {
@@ -59,47 +112,177 @@ public abstract class AbstractJMSTransportService implements TransportService<JM
     }
 
     public Consumer<JMSMessage> createConsumer(JMSPort port, ConsumerConfiguration consumerConfiguration,String sessionId) throws Exception {
-        String selector = ((JMSConsumerConfiguration) consumerConfiguration).getSelector();
-        Session session = getSession(sessionId);
-        MessageConsumer messageConsumer = selector != null ? session.createConsumer(port.getDestination(), selector) :
-                session.createConsumer(port.getDestination());
-        return new JMSConsumer(messageConsumer);
+        JMSConsumerConfiguration configuration = (JMSConsumerConfiguration) consumerConfiguration;
+        // registered under the same lock as a reconnect, so the consumer cannot miss being re-created
+        synchronized (this) {
+            JMSConsumer consumer = new JMSConsumer(createMessageConsumer(port, configuration, sessionId), this,
+                    port, configuration, sessionId);
+            consumers.add(consumer);
+            return consumer;
+        }
+    }
+
+    MessageConsumer createMessageConsumer(JMSPort port, JMSConsumerConfiguration configuration, String sessionId) throws JMSException {
+        configuration = configuration.withDefaults(getDestinationName(port.getDestination()));
+        String selector = configuration.getSelector();
+        Session session = getSession(sessionId, configuration.isTransacted());
+        Destination destination = configuration.isTuned() ? getConsumerDestination(port, configuration) : port.getDestination();
+        MessageConsumer messageConsumer = selector != null ? session.createConsumer(destination, selector) :
+                session.createConsumer(destination);
+        if (configuration.isTuned()) {
+            configureConsumer(messageConsumer, configuration);
+        }
+        return messageConsumer;
+    }
+
+    /**
+     * Returns the destination a consumer with the given flow control settings is created on. Providers that take
+     * consumer settings as destination options override this, the default ignores the settings.
+     */
+    protected Destination getConsumerDestination(JMSPort port, JMSConsumerConfiguration configuration) throws JMSException {
+        return port.getDestination();
+    }
+
+    /**
+     * Applies the flow control settings that the provider takes on the consumer itself.
+     */
+    protected void configureConsumer(MessageConsumer consumer, JMSConsumerConfiguration configuration) throws JMSException {
     }
 
-    private Session getSession(String sessionId) throws JMSException {
-        Session session;
-        if(sessions.containsKey(sessionId)) {
-            session = sessions.get(sessionId);
+    private static String getDestinationName(Destination destination) throws JMSException {
+        if (destination instanceof Queue) {
+            return ((Queue) destination).getQueueName();
+        }
+        if (destination instanceof Topic) {
+            return ((Topic) destination).getTopicName();
+        }
+        return null;
+    }
+
+    private synchronized Session getSession(String sessionId, boolean transacted) throws JMSException {
+        Session session = sessions.get(sessionId);
+        if(session != null) {
+            if(session.getTransacted() != transacted) {
+                throw new JMSException("Session " + sessionId + " is " + (transacted ? "not " : "") + "transacted");
+            }
         } else {
-            session = connection.createSession(false,Session.AUTO_ACKNOWLEDGE);
+            Connection connection = connections.get((nextConnection.getAndIncrement() & Integer.MAX_VALUE) % connections.size());
+            session = transacted ? connection.createSession(true, Session.SESSION_TRANSACTED) :
+                    connection.createSession(false,Session.AUTO_ACKNOWLEDGE);
             sessions.put(sessionId,session);
         }
         return session;
     }
 
     public Producer<JMSMessage> createProducer(JMSPort port, ProducerConfiguration producerConfiguration, String sessionId) throws JMSException {
-        return new JMSProducer(getSession(sessionId).createProducer(port.getDestination()));
+        JMSProducerConfiguration configuration = producerConfiguration instanceof JMSProducerConfiguration ?
+                (JMSProducerConfiguration) producerConfiguration : new JMSProducerConfiguration();
+        int maxInFlight = configuration.getMaxInFlight() > 0 ? configuration.getMaxInFlight()
+                : Integer.valueOf(TransportConfig.getInstance().getValue("ASYNC_SEND_WINDOW", "1024"));
+        int maxPending = Integer.valueOf(TransportConfig.getInstance().getValue("RECONNECT_BUFFER_SIZE", "10000"));
+        synchronized (this) {
+            MessageProducer messageProducer = createMessageProducer(port, configuration, sessionId);
+            JMSProducer producer = configuration.isAnonymous() ? new JMSProducer(messageProducer, port.getDestination())
+                    : new JMSProducer(messageProducer);
+            producer.configureAsyncSend(maxInFlight, isProviderAsyncSend(), configuration.isTransacted());
+            producer.configureRecovery(this, port, configuration, sessionId, maxPending);
+            producers.add(producer);
+            return producer;
+        }
+    }
+
+    MessageProducer createMessageProducer(JMSPort port, JMSProducerConfiguration configuration, String sessionId) throws JMSException {
+        return configuration.isAnonymous() ? getAnonymousProducer(sessionId, configuration.isTransacted())
+                : getSession(sessionId, configuration.isTransacted()).createProducer(port.getDestination());
+    }
+
+    /**
+     * @return producer for the asynchronous sends of one {@link JMSProducer}, on a session of its own. When the
+     * provider sends asynchronously the session is on a connection set up for it by {@link #configureAsyncSend},
+     * otherwise on one of the route connections.
+     */
+    synchronized MessageProducer createAsyncMessageProducer(JMSPort port, JMSProducerConfiguration configuration, String sessionId) throws JMSException {
+        if (!isProviderAsyncSend()) {
+            return createMessageProducer(port, configuration, sessionId);
+        }
+        Session session = sessions.get(sessionId);
+        if (session == null) {
+            if (asyncSendConnection == null) {
+                try {
+                    asyncSendConnection = createConnection();
+                } catch (JMSException e) {
+                    throw e;
+                } catch (Exception e) {
+                    JMSException exception = new JMSException(e.getMessage());
+                    exception.setLinkedException(e);
+                    throw exception;
+                }
+                configureAsyncSend(asyncSendConnection);
+            }
+            session = asyncSendConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            sessions.put(sessionId, session);
+        }
+        // the destination of an anonymous JMSProducer is given on each send
+        return session.createProducer(configuration.isAnonymous() ? null : port.getDestination());
+    }
+
+    void unregister(JMSConsumer consumer) {
+        consumers.remove(consumer);
+    }
+
+    void unregister(JMSProducer producer) {
+        producers.remove(producer);
+    }
+
+    /**
+     * @return true if the provider can send without waiting for the broker, in which case asynchronous sends are
+     * passed straight to the provider, on a connection set up by {@link #configureAsyncSend}, instead of a local
+     * send thread
+     */
+    protected boolean isProviderAsyncSend() {
+        return false;
+    }
+
+    /**
+     * Makes the connection send without waiting for the broker. Only the connection for asynchronous sends is
+     * configured this way, routes acknowledge a message once its send returns and must see its failure.
+     */
+    protected void configureAsyncSend(Connection connection) throws JMSException {
+    }
+
+    private synchronized MessageProducer getAnonymousProducer(String sessionId, boolean transacted) throws JMSException {
+        Session session = getSession(sessionId, transacted);
+        MessageProducer producer = anonymousProducers.get(sessionId);
+        if (producer == null) {
+            producer = session.createProducer(null);
+            anonymousProducers.put(sessionId, producer);
+        }
+        return producer;
     }
 
     public JMSMessage createMessage(MessageConfiguration messageConfiguration) throws Exception {
         JMSMessageConfiguration config = (JMSMessageConfiguration) messageConfiguration;
         Message message;
-        Session session = getSession("DEFAULT");
-        switch (config.getType()) {
-            case Bytes:
-                message = session.createBytesMessage();
-                break;
-            case Text:
-                message = session.createTextMessage();
-                break;
-            case Stream:
-                message = session.createStreamMessage();
-                break;
-            case Object:
-                message = session.createObjectMessage();
-                break;
-            default:
-                message = session.createMessage();
+        Session session = sessionPool.borrow();
+        try {
+            switch (config.getType()) {
+                case Bytes:
+                    message = session.createBytesMessage();
+                    break;
+                case Text:
+                    message = session.createTextMessage();
+                    break;
+                case Stream:
+                    message = session.createStreamMessage();
+                    break;
+                case Object:
+                    message = session.createObjectMessage();
+                    break;
+                default:
+                    message = session.createMessage();
+            }
+        } finally {
+            sessionPool.release(session);
         }
         return new JMSMessage(message);
     }
@@ -107,20 +290,62 @@ public abstract class AbstractJMSTransportService implements TransportService<JM
 
     public JMSPort enablePort(PortConfiguration configuration) throws Exception {
         JMSPortConfiguration portConfiguration = (JMSPortConfiguration) configuration;
-        Session session = getSession("DEFAULT");
-        switch (portConfiguration.getPortType()) {
-            case QUEUE:
-                return new JMSPort(session.createQueue(portConfiguration.getName()));
-            case TOPIC:
-                return new JMSPort(session.createTopic(portConfiguration.getName()));
+        String key = getPortKey(portConfiguration);
+        JMSPort port = ports.get(key);
+        if (port != null) {
+            return port;
+        }
+        Session session = sessionPool.borrow();
+        try {
+            switch (portConfiguration.getPortType()) {
+                case QUEUE:
+                    port = new JMSPort(session.createQueue(portConfiguration.getName()));
+                    break;
+                case TOPIC:
+                    port = new JMSPort(session.createTopic(portConfiguration.getName()));
+                    break;
+                default:
+                    return null;
+            }
+        } finally {
+            sessionPool.release(session);
+        }
+        JMSPort existing = ports.putIfAbsent(key, port);
+        return existing != null ? existing : port;
+    }
+
+    /**
+     * Forgets the destination of a port, to be called by implementations when the port is disabled.
+     */
+    protected void removePort(PortConfiguration configuration) {
+        ports.remove(getPortKey((JMSPortConfiguration) configuration));
+    }
+
+    private String getPortKey(JMSPortConfiguration portConfiguration) {
+        return portConfiguration.getPortType() + ":" + portConfiguration.getName();
+    }
+
+    @Override
+    public void commit(String sessionId) throws JMSException {
+        Session session = sessions.get(sessionId);
+        if(session != null && session.getTransacted()) {
+            session.commit();
+        }
+    }
+
+    @Override
+    public void rollback(String sessionId) throws JMSException {
+        Session session = sessions.get(sessionId);
+        if(session != null && session.getTransacted()) {
+            session.rollback();
         }
-        return null;
     }
 
     @Override
     public void closeSession(String sessionId) {
-        if(sessions.containsKey(sessionId)) {
-            Session remove = sessions.remove(sessionId);
+        anonymousProducers.remove(sessionId);
+        Session remove = sessions.remove(sessionId);
+        if(remove != null) {
             try {
                 remove.close();
             } catch (JMSException e) {
@@ -128,4 +353,184 @@ public abstract class AbstractJMSTransportService implements TransportService<JM
             }
         }
     }
+
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    /**
+     * @return number of open sessions created for routes and other named users
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    public SessionPool getSessionPool() {
+        return sessionPool;
+    }
+
+    /**
+     * @return true while the connection to the JMS server is being re-established
+     */
+    public boolean isRecovering() {
+        return recovering;
+    }
+
+    /**
+     * Waits at most timeout milliseconds for a reconnect in progress to finish.
+     * @return false if no reconnect is in progress
+     */
+    boolean awaitRecovery(long timeout) {
+        synchronized (recoveryLock) {
+            if (!recovering) {
+                return false;
+            }
+            try {
+                recoveryLock.wait(Math.max(1, timeout));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return true;
+        }
+    }
+
+    private void connectionLost(JMSException exception) {
+        synchronized (recoveryLock) {
+            if (recovering || stopped) {
+                return;
+            }
+            recovering = true;
+            LoggerFactory.getLogger(Activator.class).error("Connection to JMS server lost, reconnecting : " + exception.getMessage(), exception);
+            recoveryThread = new Thread(new Runnable() {
+                public void run() {
+                    recover();
+                }
+            }, "JMSTransport-Reconnect");
+            recoveryThread.setDaemon(true);
+            recoveryThread.start();
+        }
+    }
+
+    /**
+     * Reconnects with exponential backoff between attempts until it succeeds or the service is stopped.
+     * Messages routes send in the meantime are buffered by their producers and sent once the connection is back.
+     */
+    private void recover() {
+        long interval = Long.valueOf(TransportConfig.getInstance().getValue("RECONNECT_INTERVAL", "1000"));
+        long maxInterval = Long.valueOf(TransportConfig.getInstance().getValue("RECONNECT_MAX_INTERVAL", "60000"));
+        int attempt = 0;
+        while (!stopped) {
+            attempt++;
+            try {
+                reconnect();
+                LoggerFactory.getLogger(Activator.class).info("Reconnected to JMS server after " + attempt + " attempt(s)");
+                break;
+            } catch (Exception e) {
+                LoggerFactory.getLogger(Activator.class).warn("Reconnect attempt " + attempt + " failed, retrying in "
+                        + interval + " ms : " + e.getMessage());
+                try {
+                    Thread.sleep(interval);
+                } catch (InterruptedException e1) {
+                    break;
+                }
+                interval = Math.min(interval * 2, maxInterval);
+            }
+        }
+        synchronized (recoveryLock) {
+            recovering = false;
+            recoveryThread = null;
+            recoveryLock.notifyAll();
+        }
+        if (!stopped) {
+            for (JMSProducer producer : producers) {
+                producer.flush();
+            }
+        }
+    }
+
+    private void reconnect() throws Exception {
+        ConnectionFactory connectionFactory = getConnectionFactory();
+        synchronized (this) {
+            for (int i = 0; i < connections.size(); i++) {
+                Connection connection = connections.get(i);
+                try {
+                    connection.close();
+                } catch (JMSException e) {
+                    LoggerFactory.getLogger(Activator.class).debug(e.getMessage(), e);
+                }
+            }
+            if (asyncSendConnection != null) {
+                try {
+                    asyncSendConnection.close();
+                } catch (JMSException e) {
+                    LoggerFactory.getLogger(Activator.class).debug(e.getMessage(), e);
+                }
+                // re-created by the first asynchronous send after the reconnect
+                asyncSendConnection = null;
+            }
+            for (int i = 0; i < connections.size(); i++) {
+                Connection connection = getConnection(connectionFactory);
+                if (connection == null) {
+                    throw new JMSException("Could not connect to JMS server");
+                }
+                connections.set(i, connection);
+            }
+            // the old sessions went with the old connections
+            sessions.clear();
+            anonymousProducers.clear();
+            SessionPool oldPool = sessionPool;
+            sessionPool = new SessionPool(connections, getSessionPoolSize());
+            oldPool.close();
+            registerSessionPool();
+            for (JMSConsumer consumer : consumers) {
+                consumer.rebind();
+            }
+            for (JMSProducer producer : producers) {
+                producer.rebind();
+            }
+        }
+    }
+
+    /**
+     * Stops reconnecting, to be called when the transport is shut down.
+     */
+    public void stop() {
+        synchronized (recoveryLock) {
+            stopped = true;
+            if (recoveryThread != null) {
+                recoveryThread.interrupt();
+            }
+            recoveryLock.notifyAll();
+        }
+        unregisterSessionPool();
+    }
+
+    private void registerSessionPool() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = getSessionPoolName();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(sessionPool, name);
+        } catch (JMException e) {
+            LoggerFactory.getLogger(Activator.class).warn("Could not register session pool : " + e.getMessage());
+        }
+    }
+
+    private void unregisterSessionPool() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = getSessionPoolName();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            LoggerFactory.getLogger(Activator.class).warn("Could not unregister session pool : " + e.getMessage());
+        }
+    }
+
+    private ObjectName getSessionPoolName() throws JMException {
+        return new ObjectName("com.fiorano.openesb:type=SessionPool,transport=" + getClass().getSimpleName());
+    }
 }
@@ -15,14 +15,35 @@ import javax.jms.Message;
 import javax.jms.MessageConsumer;
 
 public class JMSConsumer implements Consumer<JMSMessage> {
-    private MessageConsumer messageConsumer;
+    private volatile MessageConsumer messageConsumer;
+
+    // set for consumers created by a transport service, which re-creates them after a reconnect
+    private AbstractJMSTransportService transportService;
+    private JMSPort port;
+    private JMSConsumerConfiguration configuration;
+    private String sessionId;
+    private MessageListener<JMSMessage> messageListener;
+    private volatile boolean closed;
 
     public JMSConsumer(MessageConsumer messageConsumer) {
         this.messageConsumer = messageConsumer;
     }
 
-    public void attachMessageListener(final MessageListener<JMSMessage> messageListener) throws JMSException {
+    JMSConsumer(MessageConsumer messageConsumer, AbstractJMSTransportService transportService, JMSPort port,
+                JMSConsumerConfiguration configuration, String sessionId) {
+        this.messageConsumer = messageConsumer;
+        this.transportService = transportService;
+        this.port = port;
+        this.configuration = configuration;
+        this.sessionId = sessionId;
+    }
+
+    public synchronized void attachMessageListener(final MessageListener<JMSMessage> messageListener) throws JMSException {
+        this.messageListener = messageListener;
+        setMessageListener(messageConsumer, messageListener);
+    }
 
+    private static void setMessageListener(MessageConsumer messageConsumer, final MessageListener<JMSMessage> messageListener) throws JMSException {
         messageConsumer.setMessageListener(new javax.jms.MessageListener() {
             public void onMessage(Message message) {
                 try {
@@ -34,7 +55,38 @@ public class JMSConsumer implements Consumer<JMSMessage> {
         });
     }
 
-    public void close() throws JMSException {
+    /**
+     * Re-creates the consumer on the current session of its session id and attaches the listener again.
+     */
+    synchronized void rebind() throws JMSException {
+        if (closed) {
+            return;
+        }
+        MessageConsumer consumer = transportService.createMessageConsumer(port, configuration, sessionId);
+        if (messageListener != null) {
+            setMessageListener(consumer, messageListener);
+        }
+        messageConsumer = consumer;
+    }
+
+    public JMSMessage receive(long timeout) throws JMSException {
+        try {
+            Message message = messageConsumer.receive(timeout);
+            return message != null ? new JMSMessage(message) : null;
+        } catch (JMSException e) {
+            // the connection is being re-established, the consumer is re-created once it is back
+            if (transportService != null && transportService.awaitRecovery(timeout)) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    public synchronized void close() throws JMSException {
+        closed = true;
+        if (transportService != null) {
+            transportService.unregister(this);
+        }
         messageConsumer.close();
     }
 }
@@ -10,12 +10,105 @@ import com.fiorano.openesb.transport.ConsumerConfiguration;
 
 public class JMSConsumerConfiguration implements ConsumerConfiguration<String> {
     private String selector;
+    private boolean transacted;
+
+    // flow control, -1 or null leaves the setting to the transport configuration and then the provider
+    private int prefetchSize = -1;
+    private Boolean dispatchAsync;
+    private Boolean optimizeAcknowledge;
+    private int maxPendingMessages = -1;
 
     public JMSConsumerConfiguration(String selector) {
         this.selector = selector;
     }
 
+    public JMSConsumerConfiguration(String selector, boolean transacted) {
+        this.selector = selector;
+        this.transacted = transacted;
+    }
+
     public String getSelector() {
         return selector;
     }
+
+    public boolean isTransacted() {
+        return transacted;
+    }
+
+    public int getPrefetchSize() {
+        return prefetchSize;
+    }
+
+    /**
+     * Sets how many messages the provider pushes to the consumer before they are processed.
+     */
+    public void setPrefetchSize(int prefetchSize) {
+        this.prefetchSize = prefetchSize;
+    }
+
+    public Boolean getDispatchAsync() {
+        return dispatchAsync;
+    }
+
+    /**
+     * Sets whether the broker hands messages to the consumer from a separate thread instead of the transport thread.
+     */
+    public void setDispatchAsync(Boolean dispatchAsync) {
+        this.dispatchAsync = dispatchAsync;
+    }
+
+    public Boolean getOptimizeAcknowledge() {
+        return optimizeAcknowledge;
+    }
+
+    /**
+     * Sets whether messages are acknowledged in batches. Only applies to auto acknowledge sessions.
+     */
+    public void setOptimizeAcknowledge(Boolean optimizeAcknowledge) {
+        this.optimizeAcknowledge = optimizeAcknowledge;
+    }
+
+    public int getMaxPendingMessages() {
+        return maxPendingMessages;
+    }
+
+    /**
+     * Sets how many messages the broker keeps for a slow topic consumer beyond its prefetch before discarding old ones.
+     */
+    public void setMaxPendingMessages(int maxPendingMessages) {
+        this.maxPendingMessages = maxPendingMessages;
+    }
+
+    /**
+     * @return true if any flow control setting is given, otherwise the provider defaults apply
+     */
+    public boolean isTuned() {
+        return prefetchSize >= 0 || dispatchAsync != null || optimizeAcknowledge != null || maxPendingMessages >= 0;
+    }
+
+    /**
+     * Returns a copy in which the settings not given here are taken from the transport configuration, where
+     * CONSUMER_PREFETCH_SIZE, CONSUMER_DISPATCH_ASYNC, CONSUMER_OPTIMIZE_ACKNOWLEDGE and CONSUMER_MAX_PENDING_MESSAGES
+     * set defaults for all consumers, and the same keys suffixed with "." and a destination name set them for
+     * the consumers of that destination.
+     */
+    JMSConsumerConfiguration withDefaults(String destinationName) {
+        JMSConsumerConfiguration configuration = new JMSConsumerConfiguration(selector, transacted);
+        String value;
+        configuration.prefetchSize = prefetchSize >= 0 ? prefetchSize
+                : (value = getDefault("CONSUMER_PREFETCH_SIZE", destinationName)) != null ? Integer.valueOf(value) : -1;
+        configuration.dispatchAsync = dispatchAsync != null ? dispatchAsync
+                : (value = getDefault("CONSUMER_DISPATCH_ASYNC", destinationName)) != null ? Boolean.valueOf(value) : null;
+        configuration.optimizeAcknowledge = optimizeAcknowledge != null ? optimizeAcknowledge
+                : (value = getDefault("CONSUMER_OPTIMIZE_ACKNOWLEDGE", destinationName)) != null ? Boolean.valueOf(value) : null;
+        configuration.maxPendingMessages = maxPendingMessages >= 0 ? maxPendingMessages
+                : (value = getDefault("CONSUMER_MAX_PENDING_MESSAGES", destinationName)) != null ? Integer.valueOf(value) : -1;
+        return configuration;
+    }
+
+    private static String getDefault(String key, String destinationName) {
+        TransportConfig transportConfig = TransportConfig.getInstance();
+        String value = destinationName != null ? transportConfig.getValue(key + "." + destinationName) : null;
+        return value != null ? value : transportConfig.getValue(key);
+    }
 }
@@ -12,10 +12,19 @@ import com.fiorano.openesb.transport.TransportService;
 import javax.jms.JMSException;
 import javax.jms.TextMessage;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
 
 public class JMSMessage implements Message<javax.jms.Message> {
     javax.jms.Message message;
-
+    private Map<String, Object> attributes;
+    // properties of a received message are read only until they are reset
+    private boolean copyOnWrite;
+    // set when the message is sent with its own delivery mode, priority and time to live instead of those of the producer
+    private boolean sendOptions;
+    private int deliveryMode;
+    private int priority;
+    private long timeToLive;
 
 
     public JMSMessage(javax.jms.Message message) {
@@ -39,6 +48,84 @@ public class JMSMessage implements Message<javax.jms.Message> {
     @Override
     public void setInternalMessage(javax.jms.Message message) {
         this.message = message;
+        this.copyOnWrite = false;
+    }
+
+    /**
+     * Defers making the properties of a received message writable until they are first changed, so
+     * that the message is forwarded as it is when nothing changes it. The body is left read only;
+     * code replacing it clears it first.
+     */
+    public void setCopyOnWrite(boolean copyOnWrite) {
+        this.copyOnWrite = copyOnWrite;
+    }
+
+    public boolean isCopyOnWrite() {
+        return copyOnWrite;
+    }
+
+    /**
+     * Makes producers send the message with this delivery mode, priority and time to live instead of their own,
+     * for a message re-created from a copy that goes out as the original was sent.
+     */
+    public void setSendOptions(int deliveryMode, int priority, long timeToLive) {
+        this.sendOptions = true;
+        this.deliveryMode = deliveryMode;
+        this.priority = priority;
+        this.timeToLive = timeToLive;
+    }
+
+    boolean hasSendOptions() {
+        return sendOptions;
+    }
+
+    int getDeliveryMode() {
+        return deliveryMode;
+    }
+
+    int getPriority() {
+        return priority;
+    }
+
+    long getTimeToLive() {
+        return timeToLive;
+    }
+
+    @Override
+    public javax.jms.Message getWritableMessage() throws JMSException {
+        if (copyOnWrite) {
+            // clearing the properties is the only way JMS allows to make them writable again
+            Map<String, Object> properties = new HashMap<>();
+            Enumeration propertyNames = message.getPropertyNames();
+            while (propertyNames.hasMoreElements()) {
+                String name = (String) propertyNames.nextElement();
+                properties.put(name, message.getObjectProperty(name));
+            }
+            message.clearProperties();
+            for (Map.Entry<String, Object> property : properties.entrySet()) {
+                message.setObjectProperty(property.getKey(), property.getValue());
+            }
+            copyOnWrite = false;
+        }
+        return message;
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        return attributes != null ? attributes.get(name) : null;
+    }
+
+    @Override
+    public void setAttribute(String name, Object value) {
+        if (attributes == null) {
+            attributes = new HashMap<>(4);
+        }
+        attributes.put(name, value);
+    }
+
+    @Override
+    public Object removeAttribute(String name) {
+        return attributes != null ? attributes.remove(name) : null;
     }
 
     /*public javax.jms.Message reset(TransportService transportService , Message<javax.jms.Message> message) throws Exception {
@@ -7,25 +7,326 @@
 package com.fiorano.openesb.transport.impl.jms;
 
 import com.fiorano.openesb.transport.Producer;
+import com.fiorano.openesb.transport.SendCompletionListener;
+import com.fiorano.openesb.transport.bundle.Activator;
+import org.slf4j.LoggerFactory;
 
+import javax.jms.Destination;
 import javax.jms.JMSException;
 import javax.jms.MessageProducer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class JMSProducer implements Producer<JMSMessage> {
+    private static final int DEFAULT_MAX_IN_FLIGHT = 1024;
+    private static final AtomicInteger ASYNC_SESSIONS = new AtomicInteger();
+
     private MessageProducer producer;
+    // set when the producer is an anonymous producer shared by all users of its session
+    private Destination destination;
+
+    // bounds the messages handed to send(message, listener) that have not completed yet
+    private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+    private Semaphore inFlight = new Semaphore(DEFAULT_MAX_IN_FLIGHT);
+    // true when the provider itself sends without waiting for the broker, e.g. ActiveMQ useAsyncSend; only the
+    // session of asyncProducer is set up that way
+    private boolean providerAsync;
+    // sends on a transacted session must stay with the transaction, they are never handed to the executor
+    private boolean transacted;
+    // single thread so that messages are sent in order, created on the first asynchronous send
+    private ExecutorService executor;
+    // the executor sends on a session of its own, the session of the producer belongs to the thread that
+    // created it, which may be receiving on it; created by the executor and dropped on a reconnect
+    private volatile MessageProducer asyncProducer;
+    private String asyncSessionId;
+
+    // set for producers created by a transport service, which re-creates them after a reconnect
+    private AbstractJMSTransportService transportService;
+    private JMSPort port;
+    private JMSProducerConfiguration configuration;
+    private String sessionId;
+    // messages sent while the connection is down, null if sends are not buffered
+    private Deque<PendingSend> pending;
+    private int maxPending;
 
     public JMSProducer(MessageProducer producer) {
         this.producer = producer;
     }
 
+    public JMSProducer(MessageProducer anonymousProducer, Destination destination) {
+        this.producer = anonymousProducer;
+        this.destination = destination;
+    }
+
+    void configureAsyncSend(int maxInFlight, boolean providerAsync, boolean transacted) {
+        this.maxInFlight = maxInFlight > 0 ? maxInFlight : DEFAULT_MAX_IN_FLIGHT;
+        this.inFlight = new Semaphore(this.maxInFlight);
+        this.providerAsync = providerAsync;
+        this.transacted = transacted;
+    }
+
+    /**
+     * Registers the producer for re-creation after a reconnect. Messages sent while the connection is down are
+     * kept, up to maxPending, and sent once it is back. Transacted producers are never buffered, their
+     * transaction is lost with the connection and the broker redelivers what it consumed.
+     */
+    void configureRecovery(AbstractJMSTransportService transportService, JMSPort port,
+                           JMSProducerConfiguration configuration, String sessionId, int maxPending) {
+        this.transportService = transportService;
+        this.port = port;
+        this.configuration = configuration;
+        this.sessionId = sessionId;
+        this.asyncSessionId = sessionId + "__async__" + ASYNC_SESSIONS.incrementAndGet();
+        if (!configuration.isTransacted() && maxPending > 0) {
+            this.pending = new ArrayDeque<>();
+            this.maxPending = maxPending;
+        }
+    }
+
     public void send(JMSMessage message) throws JMSException {
-        producer.send(message.message);
+        sendOrBuffer(producer, message, null);
+    }
+
+    public void send(final JMSMessage message, final SendCompletionListener<JMSMessage> listener) throws InterruptedException {
+        inFlight.acquire();
+        // a producer not created by a transport service has no session of its own to send on
+        if (transacted || transportService == null) {
+            sendAndNotify(producer, message, listener);
+            return;
+        }
+        if (providerAsync) {
+            // the provider does not wait for the broker on the async session, no send thread is needed
+            sendAsync(message, listener);
+            return;
+        }
+        try {
+            getExecutor().execute(new Runnable() {
+                public void run() {
+                    sendAsync(message, listener);
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    private void sendAsync(JMSMessage message, SendCompletionListener<JMSMessage> listener) {
+        MessageProducer asyncProducer;
+        try {
+            asyncProducer = getAsyncProducer();
+        } catch (JMSException e) {
+            if (transportService.isRecovering()) {
+                // buffered until the connection is back, without touching the producer
+                sendAndNotify(producer, message, listener);
+                return;
+            }
+            inFlight.release();
+            notify(listener, message, e);
+            return;
+        }
+        sendAndNotify(asyncProducer, message, listener);
+    }
+
+    /**
+     * @return true if the message was sent, false if it was buffered until the connection is back
+     */
+    private synchronized boolean sendOrBuffer(MessageProducer producer, JMSMessage message, SendCompletionListener<JMSMessage> listener) throws JMSException {
+        // messages buffered earlier go first, so nothing overtakes them while they are flushed
+        if (pending != null && (transportService.isRecovering() || !pending.isEmpty())) {
+            buffer(message, listener);
+            return false;
+        }
+        try {
+            doSend(producer, message);
+            return true;
+        } catch (JMSException e) {
+            if (pending != null && transportService.isRecovering()) {
+                buffer(message, listener);
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    private void doSend(MessageProducer producer, JMSMessage message) throws JMSException {
+        // an anonymous producer is shared by all producers of its session
+        synchronized (producer) {
+            if (message.hasSendOptions()) {
+                if (destination != null) {
+                    producer.send(destination, message.message, message.getDeliveryMode(), message.getPriority(), message.getTimeToLive());
+                } else {
+                    producer.send(message.message, message.getDeliveryMode(), message.getPriority(), message.getTimeToLive());
+                }
+            } else if (destination != null) {
+                producer.send(destination, message.message);
+            } else {
+                producer.send(message.message);
+            }
+        }
+    }
+
+    private void buffer(JMSMessage message, SendCompletionListener<JMSMessage> listener) throws JMSException {
+        if (pending.size() >= maxPending) {
+            throw new JMSException("Connection to the JMS server is down and " + maxPending + " messages are already waiting to be sent");
+        }
+        pending.add(new PendingSend(message, listener));
+    }
+
+    private void sendAndNotify(MessageProducer producer, JMSMessage message, SendCompletionListener<JMSMessage> listener) {
+        try {
+            if (sendOrBuffer(producer, message, listener)) {
+                notify(listener, message, null);
+            }
+        } catch (Exception e) {
+            notify(listener, message, e);
+        } finally {
+            inFlight.release();
+        }
+    }
+
+    private static void notify(SendCompletionListener<JMSMessage> listener, JMSMessage message, Exception exception) {
+        try {
+            if (exception == null) {
+                listener.onCompletion(message);
+            } else {
+                listener.onException(message, exception);
+            }
+        } catch (RuntimeException e) {
+            LoggerFactory.getLogger(Activator.class).error("Send completion listener failed", e);
+        }
+    }
+
+    /**
+     * Re-creates the underlying producer on the current session of its session id.
+     */
+    synchronized void rebind() throws JMSException {
+        producer = transportService.createMessageProducer(port, configuration, sessionId);
+        // the executor re-creates its producer on its next send
+        asyncProducer = null;
+    }
+
+    /**
+     * @return the producer asynchronous sends go out on, on a session of its own. Called outside the lock of this
+     * producer which a reconnect takes with the lock of the transport.
+     */
+    private MessageProducer getAsyncProducer() throws JMSException {
+        MessageProducer asyncProducer = this.asyncProducer;
+        if (asyncProducer == null) {
+            asyncProducer = transportService.createAsyncMessageProducer(port, configuration, asyncSessionId);
+            this.asyncProducer = asyncProducer;
+        }
+        return asyncProducer;
+    }
+
+    /**
+     * Sends the messages buffered while the connection was down. Stops at the first failure if the connection
+     * went down again, the rest is sent by the next flush.
+     */
+    synchronized void flush() {
+        if (pending == null) {
+            return;
+        }
+        PendingSend send;
+        while ((send = pending.peek()) != null) {
+            Exception exception = null;
+            try {
+                doSend(producer, send.message);
+            } catch (JMSException e) {
+                if (transportService.isRecovering()) {
+                    return;
+                }
+                exception = e;
+            }
+            pending.poll();
+            if (send.listener != null) {
+                notify(send.listener, send.message, exception);
+            } else if (exception != null) {
+                LoggerFactory.getLogger(Activator.class).error("Could not send message buffered during reconnect", exception);
+            }
+        }
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "JMSProducer-AsyncSend");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * @return number of messages handed to send(message, listener) that have not completed yet
+     */
+    public int getInFlightCount() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    /**
+     * @return number of messages waiting for the connection to the JMS server to come back
+     */
+    public synchronized int getPendingCount() {
+        return pending != null ? pending.size() : 0;
     }
 
     @Override
     public void close() throws JMSException {
-        producer.close();
+        ExecutorService executor;
+        synchronized (this) {
+            executor = this.executor;
+            this.executor = null;
+        }
+        if (executor != null) {
+            // let the messages already accepted go out before the producer is closed
+            executor.shutdown();
+            try {
+                executor.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            if (transportService != null) {
+                transportService.unregister(this);
+            }
+            if (pending != null && !pending.isEmpty()) {
+                LoggerFactory.getLogger(Activator.class).error("Producer closed with " + pending.size()
+                        + " messages buffered during reconnect, they are not sent");
+                PendingSend send;
+                while ((send = pending.poll()) != null) {
+                    if (send.listener != null) {
+                        notify(send.listener, send.message, new JMSException("Producer closed before the message was sent"));
+                    }
+                }
+            }
+            // a shared anonymous producer is closed with its session
+            if (destination == null) {
+                producer.close();
+            }
+        }
+        if (transportService != null) {
+            transportService.closeSession(asyncSessionId);
+        }
     }
 
+    private static class PendingSend {
+        private final JMSMessage message;
+        private final SendCompletionListener<JMSMessage> listener;
 
+        private PendingSend(JMSMessage message, SendCompletionListener<JMSMessage> listener) {
+            this.message = message;
+            this.listener = listener;
+        }
+    }
 }
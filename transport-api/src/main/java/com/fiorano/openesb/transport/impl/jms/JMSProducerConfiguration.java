@@ -9,4 +9,42 @@ package com.fiorano.openesb.transport.impl.jms;
 import com.fiorano.openesb.transport.ProducerConfiguration;
 
 public class JMSProducerConfiguration implements ProducerConfiguration {
+    private boolean transacted;
+    private boolean anonymous;
+    // 0 takes the ASYNC_SEND_WINDOW of the transport
+    private int maxInFlight;
+
+    public JMSProducerConfiguration() {
+    }
+
+    public JMSProducerConfiguration(boolean transacted) {
+        this.transacted = transacted;
+    }
+
+    public boolean isTransacted() {
+        return transacted;
+    }
+
+    public boolean isAnonymous() {
+        return anonymous;
+    }
+
+    /**
+     * Sets whether the producer sends through the anonymous producer of its session, so that creating
+     * and closing producers for a session does not go to the broker.
+     */
+    public void setAnonymous(boolean anonymous) {
+        this.anonymous = anonymous;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * Sets how many messages sent with a completion listener may be outstanding before send blocks.
+     */
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
 }
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) Fiorano Software and affiliates. All rights reserved. http://www.fiorano.com
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.fiorano.openesb.transport.impl.jms;
+
+import com.fiorano.openesb.transport.bundle.Activator;
+import org.slf4j.LoggerFactory;
+
+import javax.jms.Connection;
+import javax.jms.JMSException;
+import javax.jms.Session;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of auto acknowledge sessions for short operations that are not tied to a route, such as
+ * creating destinations and messages. A borrowed session is used by one thread only until it is released.
+ * Sessions are spread over the connections of the transport in turn. The transport registers the pool as
+ * the MBean com.fiorano.openesb:type=SessionPool,transport=..
+ */
+public class SessionPool implements SessionPoolMBean {
+
+    private final List<Connection> connections;
+    private final BlockingQueue<Session> idleSessions;
+    private final int maxSize;
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicInteger nextConnection = new AtomicInteger();
+    private final AtomicInteger borrowed = new AtomicInteger();
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong waitCount = new AtomicLong();
+
+    public SessionPool(List<Connection> connections, int maxSize) {
+        this.connections = connections;
+        this.maxSize = Math.max(1, maxSize);
+        this.idleSessions = new ArrayBlockingQueue<>(this.maxSize);
+    }
+
+    public Session borrow() throws JMSException {
+        borrowCount.incrementAndGet();
+        Session session = idleSessions.poll();
+        if (session == null) {
+            if (size.incrementAndGet() <= maxSize) {
+                try {
+                    session = nextConnection().createSession(false, Session.AUTO_ACKNOWLEDGE);
+                } catch (JMSException e) {
+                    size.decrementAndGet();
+                    throw e;
+                }
+            } else {
+                size.decrementAndGet();
+                waitCount.incrementAndGet();
+                try {
+                    session = idleSessions.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new JMSException("Interrupted while waiting for a session");
+                }
+            }
+        }
+        borrowed.incrementAndGet();
+        return session;
+    }
+
+    public void release(Session session) {
+        borrowed.decrementAndGet();
+        idleSessions.offer(session);
+    }
+
+    public void close() {
+        Session session;
+        while ((session = idleSessions.poll()) != null) {
+            size.decrementAndGet();
+            try {
+                session.close();
+            } catch (JMSException e) {
+                LoggerFactory.getLogger(Activator.class).debug(e.getMessage(), e);
+            }
+        }
+    }
+
+    private Connection nextConnection() {
+        return connections.get((nextConnection.getAndIncrement() & Integer.MAX_VALUE) % connections.size());
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return number of sessions the pool has created and not closed
+     */
+    public int getSize() {
+        return size.get();
+    }
+
+    public int getIdleCount() {
+        return idleSessions.size();
+    }
+
+    public int getBorrowedCount() {
+        return borrowed.get();
+    }
+
+    /**
+     * @return number of times a session has been borrowed
+     */
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    /**
+     * @return number of times a thread had to wait because all sessions were in use
+     */
+    public long getWaitCount() {
+        return waitCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "SessionPool[size=" + getSize() + ", max=" + maxSize + ", idle=" + getIdleCount() + ", borrowed="
+                + getBorrowedCount() + ", borrows=" + getBorrowCount() + ", waits=" + getWaitCount() + "]";
+    }
+}
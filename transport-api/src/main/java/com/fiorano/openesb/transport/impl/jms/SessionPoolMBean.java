@@ -0,0 +1,16 @@
+/*
+ * Copyright (c) Fiorano Software and affiliates. All rights reserved. http://www.fiorano.com
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.fiorano.openesb.transport.impl.jms;
+
+public interface SessionPoolMBean {
+    int getMaxSize();
+    int getSize();
+    int getIdleCount();
+    int getBorrowedCount();
+    long getBorrowCount();
+    long getWaitCount();
+}
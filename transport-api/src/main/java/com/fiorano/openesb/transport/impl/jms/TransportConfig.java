@@ -16,7 +16,7 @@ import java.util.Properties;
 
 public class TransportConfig {
     private static TransportConfig CONFIGURATION_LOOKUP_HELPER = new TransportConfig();
-    private Properties properties;
+    private Properties properties = new Properties();
     private String userName = "karaf";
     private String password = "karaf";
     private String brokerURL ="tcp://localhost:61616?wireFormat.maxInactivityDuration=0";
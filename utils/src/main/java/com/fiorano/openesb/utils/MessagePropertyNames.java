@@ -119,6 +119,9 @@ public interface MessagePropertyNames
     // Object
     public final static String CARRY_FORWARD_CONTEXT = PROP_NAME_PREFIX + "CARRY_FORWARD_CONTEXT";
 
+    // String: the sources of the carry forward context as |app:version.service|..., lower case, for broker side selectors
+    public final static String SOURCE_CONTEXTS = PROP_NAME_PREFIX + "SOURCE_CONTEXTS";
+
     // Object: byte[]
     public final static String BYTES_DATA = PROP_NAME_PREFIX + "BYTES_DATA";
 
@@ -133,4 +136,22 @@ public interface MessagePropertyNames
 
     public final static String EXECUTING_INCR = PROP_NAME_PREFIX + "EXECUTING_INCR";
 
+    // String: set on messages a route sends to its error destination
+    public final static String ROUTE_NAME = PROP_NAME_PREFIX + "ROUTE_NAME";
+
+    // String: route operation that failed
+    public final static String ROUTE_ERROR_OPERATION = PROP_NAME_PREFIX + "ROUTE_ERROR_OPERATION";
+
+    // String: class of the exception the route operation failed with
+    public final static String ROUTE_ERROR_CLASS = PROP_NAME_PREFIX + "ROUTE_ERROR_CLASS";
+
+    // String: message of the exception the route operation failed with
+    public final static String ROUTE_ERROR_REASON = PROP_NAME_PREFIX + "ROUTE_ERROR_REASON";
+
+    // int: number of times the route operation was tried
+    public final static String ROUTE_ERROR_ATTEMPTS = PROP_NAME_PREFIX + "ROUTE_ERROR_ATTEMPTS";
+
+    // String: carry forward property of traced messages, trace id|last port|time in nanoseconds
+    public final static String TRACE = PROP_NAME_PREFIX + "TRACE";
+
 }